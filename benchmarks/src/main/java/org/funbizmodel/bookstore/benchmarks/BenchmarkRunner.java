@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled, so allocation
+ * rates are reported next to throughput and average time. Accepts the usual
+ * JMH command line options, e.g. {@code -p books=100000 ServiceBenchmark}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args)
+		throws CommandLineOptionException, RunnerException {
+
+		Options options = new OptionsBuilder().
+			parent(new CommandLineOptions(args)).
+			addProfiler(GCProfiler.class).
+			build();
+
+		new Runner(options).run();
+	}
+
+}
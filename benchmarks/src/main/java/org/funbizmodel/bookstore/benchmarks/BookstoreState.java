@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.model.book.BookIndex;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.funbizmodel.bookstore.service.EntityCache;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.PooledDataSource;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded H2 database seeded with {@link #books} books, each of them
+ * written by {@link #authorsPerBook} out of {@link #books} / 10 authors.
+ * Ids are assigned by auto increment on empty tables, so they range from
+ * one to the number of rows.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@State(Scope.Benchmark)
+public class BookstoreState {
+
+	@Param({"1000", "10000"})
+	public int books;
+
+	@Param({"2"})
+	public int authorsPerBook;
+
+	/**
+	 * Whether the schema is migrated up to its indexes or left at the bare
+	 * tables, to compare lookups with and without them.
+	 */
+	@Param({"true"})
+	public boolean indexed;
+
+	public PooledDataSource dataSource;
+	public AuthorService authorService;
+	public BookService bookService;
+	public BookService parallelBookService;
+	public AuthorService cachedAuthorService;
+	public BookService cachedBookService;
+	public BookService indexedBookService;
+	public UnitOfWork unitOfWork;
+	public PooledDataSource meteredDataSource;
+	public MetricsRegistry metricsRegistry;
+	public AuthorService meteredAuthorService;
+	public BookService meteredBookService;
+	public WriteBehindQueue writeBehindQueue;
+	public AuthorService writeBehindAuthorService;
+	public BookService writeBehindBookService;
+	public int authors;
+
+	private final AtomicLong _createdIsbns = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		JdbcDataSource h2DataSource = new JdbcDataSource();
+
+		h2DataSource.setURL(url());
+		h2DataSource.setUser("sa");
+		h2DataSource.setPassword("");
+
+		dataSource = new PooledDataSource(h2DataSource, poolSize());
+
+		BookstoreSchema.createSchemaMigrator(dataSource).migrate(
+			indexed ? BookstoreSchema.INDEXES_VERSION :
+				BookstoreSchema.TABLES_VERSION);
+
+		authors = Math.max(authorsPerBook, books / 10);
+
+		seed(
+			"INSERT INTO AUTHOR (name) values (?)", authors,
+			(preparedStatement, i) ->
+				preparedStatement.setString(1, "author" + i));
+
+		seed(
+			"INSERT INTO BOOK (isbn, title) values (?, ?)", books,
+			(preparedStatement, i) -> {
+				preparedStatement.setString(1, "isbn" + i);
+				preparedStatement.setString(2, "title" + i);
+			});
+
+		seed(
+			"INSERT INTO AUTHOR_BOOK (authorId, bookId) values (?, ?)",
+			books * authorsPerBook,
+			(preparedStatement, i) -> {
+				long bookId = ((i - 1) / authorsPerBook) + 1;
+				long authorId = ((bookId + i) % authors) + 1;
+
+				preparedStatement.setLong(1, authorId);
+				preparedStatement.setLong(2, bookId);
+			});
+
+		authorService = new AuthorService(dataSource);
+		bookService = new BookService(dataSource);
+
+		authorService.setBookService(bookService);
+		bookService.setAuthorService(authorService);
+
+		parallelBookService = new BookService(dataSource);
+
+		parallelBookService.setAuthorService(authorService);
+		parallelBookService.setParallelScan(true);
+
+		cachedAuthorService = new AuthorService(dataSource);
+		cachedBookService = new BookService(dataSource);
+
+		cachedAuthorService.setBookService(cachedBookService);
+		cachedAuthorService.setEntityCache(
+			new EntityCache<>(authors, 0, TimeUnit.SECONDS));
+		cachedBookService.setAuthorService(cachedAuthorService);
+		cachedBookService.setEntityCache(
+			new EntityCache<>(books, 0, TimeUnit.SECONDS));
+
+		indexedBookService = new BookService(dataSource);
+
+		indexedBookService.setAuthorService(authorService);
+		indexedBookService.setBookIndex(new BookIndex(dataSource));
+
+		unitOfWork = new UnitOfWork(dataSource);
+
+		meteredDataSource = new PooledDataSource(h2DataSource, poolSize());
+		metricsRegistry = new MetricsRegistry();
+
+		meteredDataSource.addStatementListener(metricsRegistry);
+
+		meteredAuthorService = new AuthorService(meteredDataSource);
+		meteredBookService = new BookService(meteredDataSource);
+
+		meteredAuthorService.setBookService(meteredBookService);
+		meteredAuthorService.setMetricsRegistry(metricsRegistry);
+		meteredBookService.setAuthorService(meteredAuthorService);
+		meteredBookService.setMetricsRegistry(metricsRegistry);
+
+		writeBehindQueue = new WriteBehindQueue(unitOfWork);
+
+		writeBehindAuthorService = new AuthorService(dataSource);
+		writeBehindBookService = new BookService(dataSource);
+
+		writeBehindAuthorService.setBookService(writeBehindBookService);
+		writeBehindAuthorService.setWriteBehindQueue(writeBehindQueue);
+		writeBehindBookService.setAuthorService(writeBehindAuthorService);
+		writeBehindBookService.setWriteBehindQueue(writeBehindQueue);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		writeBehindQueue.close();
+
+		try (Connection conn = dataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			statement.execute("SHUTDOWN");
+		}
+
+		meteredDataSource.close();
+		dataSource.close();
+	}
+
+	public String randomAuthorId() {
+		return Long.toString(ThreadLocalRandom.current().nextInt(authors) + 1);
+	}
+
+	public String randomBookId() {
+		return Long.toString(ThreadLocalRandom.current().nextInt(books) + 1);
+	}
+
+	public String randomTitle() {
+		return "title" + (ThreadLocalRandom.current().nextInt(books) + 1);
+	}
+
+	public String randomIsbn() {
+		return "isbn" + (ThreadLocalRandom.current().nextInt(books) + 1);
+	}
+
+	/**
+	 * Returns an ISBN no book has yet, for the books the benchmarks create.
+	 */
+	public String nextIsbn() {
+		return "created" + _createdIsbns.incrementAndGet();
+	}
+
+	/**
+	 * Returns the first characters of a random title, matching a tenth of
+	 * the titles or fewer.
+	 */
+	public String randomTitlePrefix() {
+		return "title" + (ThreadLocalRandom.current().nextInt(9) + 1);
+	}
+
+	protected String url() {
+		return "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+	}
+
+	protected int poolSize() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private void seed(String sql, int rows, RowSetter rowSetter)
+		throws SQLException {
+
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(sql)) {
+
+			for (int i = 1; i <= rows; i++) {
+				rowSetter.set(preparedStatement, i);
+
+				preparedStatement.addBatch();
+
+				if ((i % 1000) == 0) {
+					preparedStatement.executeBatch();
+				}
+			}
+
+			preparedStatement.executeBatch();
+		}
+	}
+
+	private interface RowSetter {
+
+		public void set(PreparedStatement preparedStatement, int row)
+			throws SQLException;
+
+	}
+
+}
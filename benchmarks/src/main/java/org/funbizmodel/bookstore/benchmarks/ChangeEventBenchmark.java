@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.service.ChangeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a burst of {@link #BURST_SIZE} remote changes to a cache, one
+ * invalidation per event or coalesced by a {@link
+ * org.funbizmodel.bookstore.service.CoalescingInvalidator}. Both invalidate
+ * locally, so the difference is what coalescing costs per event; what it
+ * saves is invalidating each hot id once per burst instead of once per
+ * event.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+public class ChangeEventBenchmark {
+
+	public static final int BURST_SIZE = 1000;
+
+	@Benchmark
+	public int invalidateEach(ChangeEventState state) {
+		for (int i = 0; i < BURST_SIZE; i++) {
+			ChangeEvent changeEvent = state.randomChangeEvent();
+
+			state.entityCache.invalidate(changeEvent.getId());
+		}
+
+		return state.entityCache.size();
+	}
+
+	@Benchmark
+	public int invalidateCoalesced(ChangeEventState state) {
+		for (int i = 0; i < BURST_SIZE; i++) {
+			state.changePublisher.publish(state.randomChangeEvent());
+		}
+
+		state.coalescingInvalidator.flush();
+
+		return state.entityCache.size();
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.service.ChangeEvent;
+import org.funbizmodel.bookstore.service.ChangePublisher;
+import org.funbizmodel.bookstore.service.CoalescingInvalidator;
+import org.funbizmodel.bookstore.service.EntityCache;
+import org.funbizmodel.bookstore.service.LocalChangeBus;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A node caching {@link #cached} authors that learns about the changes of
+ * another node through a {@link LocalChangeBus}. Changes hit one of
+ * {@link #hotIds} authors, as bursts of writes usually do.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@State(Scope.Benchmark)
+public class ChangeEventState {
+
+	@Param({"10000"})
+	public int cached;
+
+	@Param({"100"})
+	public int hotIds;
+
+	public EntityCache<Object> entityCache;
+	public CoalescingInvalidator coalescingInvalidator;
+	public ChangePublisher changePublisher;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		entityCache = new EntityCache<>(cached, 0, TimeUnit.SECONDS);
+
+		for (int i = 1; i <= cached; i++) {
+			entityCache.put(i, Integer.valueOf(i), entityCache.stamp(i));
+		}
+
+		// Flushed by the benchmarks, the delay never elapses
+
+		coalescingInvalidator = new CoalescingInvalidator(
+			TimeUnit.HOURS.toMillis(1), CoalescingInvalidator.DEFAULT_MAX_IDS);
+
+		coalescingInvalidator.addEntityCache(
+			AuthorService.ENTITY_NAME, entityCache);
+
+		LocalChangeBus localChangeBus = new LocalChangeBus();
+
+		localChangeBus.subscribe("reader", coalescingInvalidator);
+
+		changePublisher = localChangeBus.publisher("writer");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		coalescingInvalidator.close();
+	}
+
+	public ChangeEvent randomChangeEvent() {
+		return new ChangeEvent(
+			AuthorService.ENTITY_NAME,
+			ThreadLocalRandom.current().nextInt(hotIds) + 1,
+			ChangeEvent.Kind.UPDATED);
+	}
+
+}
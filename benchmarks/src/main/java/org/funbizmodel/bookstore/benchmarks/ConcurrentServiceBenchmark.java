@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Readers and writers sharing a file database through a pool. Compare the
+ * throughput across the {@code poolSize} parameter to see how it scales with
+ * the number of connections.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+public class ConcurrentServiceBenchmark {
+
+	@Benchmark
+	@Threads(8)
+	public String authorWithId(FileBookstoreState state) {
+		return state.authorService.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public List<String> booksFromAuthor(FileBookstoreState state) {
+		return state.authorService.withId(state.randomAuthorId()).map(
+			aq -> aq.books(BookQuerier::title).collect(Collectors.toList())).
+			get();
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(6)
+	public String read(FileBookstoreState state) {
+		return state.bookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(2)
+	public String write(FileBookstoreState state) {
+		return state.authorService.create(
+			ab -> ab.name("created")).map(AuthorQuerier::id).get();
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * A {@link BookstoreState} backed by a file database in a temporary
+ * directory and served through a pool of {@link #poolSize} connections.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@State(Scope.Benchmark)
+public class FileBookstoreState extends BookstoreState {
+
+	@Param({"1", "2", "4", "8"})
+	public int poolSize;
+
+	@Override
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		try {
+			_directory = Files.createTempDirectory("bookstore");
+		}
+		catch (IOException e) {
+			throw new SQLException(e);
+		}
+
+		super.setUp();
+	}
+
+	@Override
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		super.tearDown();
+
+		File[] files = _directory.toFile().listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+
+		_directory.toFile().delete();
+	}
+
+	@Override
+	protected String url() {
+		return "jdbc:h2:" + _directory.resolve("bookstore") + ";MULTI_THREADED=1";
+	}
+
+	@Override
+	protected int poolSize() {
+		return poolSize;
+	}
+
+	private Path _directory;
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.author.AuthorBuilder;
+import org.funbizmodel.bookstore.model.author.AuthorContext;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.funbizmodel.bookstore.service.AsyncResult;
+import org.funbizmodel.bookstore.service.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.funbizmodel.bookstore.model.author.AuthorService.update;
+
+/**
+ * Scans sum a value of every row rather than counting them, as counting a
+ * {@code SIZED} stream would skip the traversal.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+public class ServiceBenchmark {
+
+	public static final int CREATE_BATCH_SIZE = 100;
+
+	public static final int TITLES_LIMIT = 10;
+
+	@Benchmark
+	public String authorWithId(BookstoreState state) {
+		return state.authorService.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	public String bookWithId(BookstoreState state) {
+		return state.bookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+	}
+
+	/**
+	 * Same as {@link #authorWithId(BookstoreState)} with the service and the
+	 * statements of its pool recorded in a {@link
+	 * org.funbizmodel.bookstore.service.MetricsRegistry}.
+	 */
+	@Benchmark
+	public String authorWithIdMetered(BookstoreState state) {
+		return state.meteredAuthorService.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	public String bookWithIdMetered(BookstoreState state) {
+		return state.meteredBookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+	}
+
+	@Benchmark
+	public String authorWithIdCached(BookstoreState state) {
+		return state.cachedAuthorService.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	public String bookWithIdCached(BookstoreState state) {
+		return state.cachedBookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+	}
+
+	@Benchmark
+	public long bookFromTitles(BookstoreState state) {
+		return state.bookService.fromTitles(state.randomTitle()).count();
+	}
+
+	@Benchmark
+	public List<String> bookFromIsbns(BookstoreState state) {
+		return state.bookService.fromIsbns(state.randomIsbn()).map(
+			bc -> bc.map(BookQuerier::title).get()).collect(
+				Collectors.toList());
+	}
+
+	@Benchmark
+	public List<String> bookFromIsbnsIndexed(BookstoreState state) {
+		return state.indexedBookService.fromIsbns(state.randomIsbn()).map(
+			bc -> bc.map(BookQuerier::title).get()).collect(
+				Collectors.toList());
+	}
+
+	@Benchmark
+	public List<String> titlesStartingWith(BookstoreState state) {
+		return state.bookService.titlesStartingWith(
+			state.randomTitlePrefix(), TITLES_LIMIT);
+	}
+
+	@Benchmark
+	public List<String> titlesStartingWithIndexed(BookstoreState state) {
+		return state.indexedBookService.titlesStartingWith(
+			state.randomTitlePrefix(), TITLES_LIMIT);
+	}
+
+	@Benchmark
+	public List<String> authorsFromBook(BookstoreState state) {
+		BookContext bookContext = state.bookService.withId(
+			state.randomBookId());
+
+		return state.authorService.fromBook(bookContext).map(
+			ac -> ac.map(AuthorQuerier::name).get()).collect(
+				Collectors.toList());
+	}
+
+	@Benchmark
+	public List<String> booksFromAuthor(BookstoreState state) {
+		return state.authorService.withId(state.randomAuthorId()).map(
+			aq -> aq.books(BookQuerier::title).collect(Collectors.toList())).
+			get();
+	}
+
+	/**
+	 * Counts the books of the coauthors of an author. The books of the
+	 * author come with their authors resolved in one batch, but the books of
+	 * each coauthor are one more query.
+	 */
+	@Benchmark
+	public long coauthorBooks(BookstoreState state) {
+		return state.authorService.withId(state.randomAuthorId()).map(
+			aq -> aq.books(
+				bq -> bq.authors(ca -> ca.books(BookQuerier::id).count()).
+					mapToLong(Long::longValue).sum()).
+				mapToLong(Long::longValue).sum()).get();
+	}
+
+	/**
+	 * Same as {@link #coauthorBooks(BookstoreState)} loading the whole graph
+	 * with a fetch plan, one query per level.
+	 */
+	@Benchmark
+	public long coauthorBooksIncluded(BookstoreState state) {
+		return state.authorService.include("books.authors.books").withId(
+			state.randomAuthorId()).map(
+				aq -> aq.books(
+					bq -> bq.authors(ca -> ca.books(BookQuerier::id).count()).
+						mapToLong(Long::longValue).sum()).
+					mapToLong(Long::longValue).sum()).get();
+	}
+
+	@Benchmark
+	public int authorAndBooks(BookstoreState state) {
+		String name = state.authorService.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+		String title1 = state.bookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+		String title2 = state.bookService.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+
+		return name.length() + title1.length() + title2.length();
+	}
+
+	@Benchmark
+	public int authorAndBooksAsync(BookstoreState state) {
+		AsyncResult<String> name = state.authorService.withIdAsync(
+			state.randomAuthorId(), AuthorQuerier::name);
+		AsyncResult<String> title1 = state.bookService.withIdAsync(
+			state.randomBookId(), BookQuerier::title);
+		AsyncResult<String> title2 = state.bookService.withIdAsync(
+			state.randomBookId(), BookQuerier::title);
+
+		return name.get().length() + title1.get().length() +
+			title2.get().length();
+	}
+
+	@Benchmark
+	public long allBooks(BookstoreState state) {
+		return state.bookService.all().mapToLong(
+			bc -> bc.map(BookQuerier::isbn).get().length()).sum();
+	}
+
+	@Benchmark
+	public long allBooksMetered(BookstoreState state) {
+		return state.meteredBookService.all().mapToLong(
+			bc -> bc.map(BookQuerier::isbn).get().length()).sum();
+	}
+
+	/**
+	 * Same traversal as {@link #allBooks(BookstoreState)}, collecting the
+	 * results of every row into one with {@link Result#sequence} instead of
+	 * unwrapping them one by one.
+	 */
+	@Benchmark
+	public int allBooksSequenced(BookstoreState state) {
+		return Result.sequence(
+			state.bookService.all().map(bc -> bc.map(BookQuerier::isbn))).map(
+				List::size).get();
+	}
+
+	@Benchmark
+	public long allAuthors(BookstoreState state) {
+		return state.authorService.all().mapToLong(
+			ac -> ac.map(AuthorQuerier::name).get().length()).sum();
+	}
+
+	@Benchmark
+	public long allBooksWithAuthors(BookstoreState state) {
+		return state.bookService.all().mapToLong(
+			bc -> bc.map(bq -> bq.authors(AuthorQuerier::name).count()).get()).
+			sum();
+	}
+
+	@Benchmark
+	public long allBooksWithAuthorsParallel(BookstoreState state) {
+		return state.parallelBookService.all().mapToLong(
+			bc -> bc.map(bq -> bq.authors(AuthorQuerier::name).count()).get()).
+			sum();
+	}
+
+	@Benchmark
+	public String createAuthor(BookstoreState state) {
+		return state.authorService.create(
+			ab -> ab.name("created")).map(AuthorQuerier::id).get();
+	}
+
+	@Benchmark
+	public List<String> createAuthors(BookstoreState state) {
+		Stream<Consumer<AuthorBuilder>> consumers = IntStream.range(
+			0, CREATE_BATCH_SIZE).mapToObj(i -> ab -> ab.name("created" + i));
+
+		return state.authorService.create(consumers).map(
+			ac -> ac.map(AuthorQuerier::id).get()).collect(
+				Collectors.toList());
+	}
+
+	/**
+	 * Creates books, each with an author of its own, one at a time, as an
+	 * ingest loop would, and then maps them all.
+	 */
+	@Benchmark
+	public List<Long> createBooksEach(BookstoreState state) {
+		return _createBooksEach(
+			state, state.authorService, state.bookService);
+	}
+
+	@Benchmark
+	public List<Long> createBooksEachWriteBehind(BookstoreState state) {
+		return _createBooksEach(
+			state, state.writeBehindAuthorService,
+			state.writeBehindBookService);
+	}
+
+	@Benchmark
+	public String executeUpdate(BookstoreState state) {
+		String authorId = state.randomAuthorId();
+
+		return state.authorService.withId(authorId).execute(
+			update(au -> au.setNewName("author" + authorId))).map(
+				AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	public int executeUpdateEach(BookstoreState state) {
+		_randomAuthors(state).forEach(
+			ac -> ac.execute(update(au -> au.setNewName("renamed"))));
+
+		return CREATE_BATCH_SIZE;
+	}
+
+	@Benchmark
+	public int executeUpdateBulk(BookstoreState state) {
+		return state.authorService.execute(
+			_randomAuthors(state), update(au -> au.setNewName("renamed"))).
+			size();
+	}
+
+	private static List<Long> _createBooksEach(
+		BookstoreState state, AuthorService authorService,
+		BookService bookService) {
+
+		List<BookContext> bookContexts = IntStream.range(
+			0, CREATE_BATCH_SIZE).mapToObj(
+				i -> {
+					AuthorContext authorContext = authorService.create(
+						ab -> ab.name("created" + i));
+
+					String isbn = state.nextIsbn();
+
+					return bookService.create(
+						bb -> bb.isbn(isbn).title("created").addAuthors(
+							Stream.of(authorContext)));
+				}).collect(Collectors.toList());
+
+		return bookContexts.stream().map(
+			bc -> bc.map(BookQuerier::id).get()).collect(
+				Collectors.toList());
+	}
+
+	private static Stream<AuthorContext> _randomAuthors(BookstoreState state) {
+		return IntStream.range(0, CREATE_BATCH_SIZE).mapToObj(
+			i -> state.authorService.withId(state.randomAuthorId()));
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.funbizmodel.bookstore.model.author.AuthorService.update;
+
+/**
+ * Runs the lookups of {@link ServiceBenchmark} through the repositories, to
+ * compare the storages of {@link StorageState}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+public class StorageBenchmark {
+
+	@Benchmark
+	public String authorWithId(StorageState state) {
+		return state.authorRepository.withId(state.randomAuthorId()).map(
+			AuthorQuerier::name).get();
+	}
+
+	@Benchmark
+	public String bookWithId(StorageState state) {
+		return state.bookRepository.withId(state.randomBookId()).map(
+			BookQuerier::title).get();
+	}
+
+	@Benchmark
+	public List<String> bookFromTitles(StorageState state) {
+		return state.bookRepository.fromTitles(state.randomTitle()).map(
+			bc -> bc.map(BookQuerier::isbn).get()).collect(
+				Collectors.toList());
+	}
+
+	@Benchmark
+	public List<String> authorsFromBook(StorageState state) {
+		BookContext bookContext = state.bookRepository.withId(
+			state.randomBookId());
+
+		return state.authorRepository.fromBook(bookContext).map(
+			ac -> ac.map(AuthorQuerier::name).get()).collect(
+				Collectors.toList());
+	}
+
+	@Benchmark
+	public List<String> booksFromAuthor(StorageState state) {
+		return state.authorRepository.withId(state.randomAuthorId()).map(
+			aq -> aq.books(BookQuerier::title).collect(Collectors.toList())).
+			get();
+	}
+
+	@Benchmark
+	public long coauthorBooks(StorageState state) {
+		return state.authorRepository.include("books.authors.books").withId(
+			state.randomAuthorId()).map(
+				aq -> aq.books(
+					bq -> bq.authors(
+						ca -> ca.books(BookQuerier::id).count()).mapToLong(
+							Long::longValue).sum()).
+					mapToLong(Long::longValue).sum()).get();
+	}
+
+	@Benchmark
+	public long allBooks(StorageState state) {
+		return state.bookRepository.all().mapToLong(
+			bc -> bc.map(BookQuerier::isbn).get().length()).sum();
+	}
+
+	@Benchmark
+	public String executeUpdate(StorageState state) {
+		String authorId = state.randomAuthorId();
+
+		return state.authorRepository.withId(authorId).execute(
+			update(au -> au.setNewName("author" + authorId))).map(
+				AuthorQuerier::name).get();
+	}
+
+}
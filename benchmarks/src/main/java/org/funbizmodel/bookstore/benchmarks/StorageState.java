@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.CatalogSnapshot;
+import org.funbizmodel.bookstore.model.InMemoryBookstore;
+import org.funbizmodel.bookstore.model.author.AuthorRepository;
+import org.funbizmodel.bookstore.model.author.InMemoryAuthorService;
+import org.funbizmodel.bookstore.model.author.SnapshotAuthorService;
+import org.funbizmodel.bookstore.model.book.BookRepository;
+import org.funbizmodel.bookstore.model.book.InMemoryBookService;
+import org.funbizmodel.bookstore.model.book.SnapshotBookService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The same bookstore as {@link BookstoreState}, seeded in the given {@link
+ * #storage}: an embedded H2 database, an {@link InMemoryBookstore} or a
+ * {@link CatalogSnapshot} of the H2 database. All are reached through their
+ * repositories, so benchmarks run the same code against any of them.
+ * Snapshots are read-only, so they are left out by default.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@State(Scope.Benchmark)
+public class StorageState {
+
+	@Param({"1000", "10000"})
+	public int books;
+
+	@Param({"2"})
+	public int authorsPerBook;
+
+	@Param({"h2", "memory"})
+	public String storage;
+
+	public AuthorRepository authorRepository;
+	public BookRepository bookRepository;
+	public int authors;
+
+	private BookstoreState _bookstoreState;
+	private Path _snapshotPath;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		authors = Math.max(authorsPerBook, books / 10);
+
+		if (storage.equals("h2") || storage.equals("snapshot")) {
+			_bookstoreState = new BookstoreState();
+
+			_bookstoreState.books = books;
+			_bookstoreState.authorsPerBook = authorsPerBook;
+			_bookstoreState.indexed = true;
+
+			_bookstoreState.setUp();
+
+			authorRepository = _bookstoreState.authorService;
+			bookRepository = _bookstoreState.bookService;
+
+			if (storage.equals("snapshot")) {
+				_openSnapshot();
+			}
+
+			return;
+		}
+
+		if (!storage.equals("memory")) {
+			throw new IllegalArgumentException("Unknown storage " + storage);
+		}
+
+		InMemoryBookstore bookstore = new InMemoryBookstore(authors, books);
+
+		for (int i = 1; i <= authors; i++) {
+			bookstore.addAuthor("author" + i);
+		}
+
+		for (int i = 1; i <= books; i++) {
+			bookstore.addBook("isbn" + i, "title" + i);
+		}
+
+		for (int i = 1; i <= (books * authorsPerBook); i++) {
+			long bookId = ((i - 1) / authorsPerBook) + 1;
+
+			bookstore.link(((bookId + i) % authors) + 1, bookId);
+		}
+
+		InMemoryAuthorService authorService = new InMemoryAuthorService(
+			bookstore);
+		InMemoryBookService bookService = new InMemoryBookService(bookstore);
+
+		authorService.setBookService(bookService);
+		bookService.setAuthorService(authorService);
+
+		authorRepository = authorService;
+		bookRepository = bookService;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, SQLException {
+		if (_bookstoreState != null) {
+			_bookstoreState.tearDown();
+
+			_bookstoreState = null;
+		}
+
+		if (_snapshotPath != null) {
+			Files.delete(_snapshotPath);
+
+			_snapshotPath = null;
+		}
+	}
+
+	public String randomAuthorId() {
+		return Long.toString(ThreadLocalRandom.current().nextInt(authors) + 1);
+	}
+
+	public String randomBookId() {
+		return Long.toString(ThreadLocalRandom.current().nextInt(books) + 1);
+	}
+
+	public String randomTitle() {
+		return "title" + (ThreadLocalRandom.current().nextInt(books) + 1);
+	}
+
+	private void _openSnapshot() throws IOException, SQLException {
+		_snapshotPath = Files.createTempFile("catalog", ".snapshot");
+
+		CatalogSnapshot.write(_bookstoreState.dataSource, _snapshotPath);
+
+		CatalogSnapshot catalogSnapshot = CatalogSnapshot.open(_snapshotPath);
+
+		SnapshotAuthorService authorService = new SnapshotAuthorService(
+			catalogSnapshot);
+		SnapshotBookService bookService = new SnapshotBookService(
+			catalogSnapshot);
+
+		authorService.setBookService(bookService);
+		bookService.setAuthorService(authorService);
+
+		authorRepository = authorService;
+		bookRepository = bookService;
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.benchmarks;
+
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Creates an author with two books against a file database, committing
+ * every insert on its own or the whole creation at once.
+ *
+ * @author Carlos Sierra Andrés
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+public class UnitOfWorkBenchmark {
+
+	@Benchmark
+	public String createAuthorWithBooks(FileBookstoreState state) {
+		return _createAuthorWithBooks(state);
+	}
+
+	@Benchmark
+	public String createAuthorWithBooksInUnitOfWork(FileBookstoreState state) {
+		return state.unitOfWork.execute(
+			() -> _createAuthorWithBooks(state)).get();
+	}
+
+	private static String _createAuthorWithBooks(BookstoreState state) {
+		Stream<BookContext> books = state.bookService.create(
+			bb -> bb.isbn(UUID.randomUUID().toString()).title("title"),
+			bb -> bb.isbn(UUID.randomUUID().toString()).title("title"));
+
+		return state.authorService.create(
+			ab -> ab.name("created").books(books)).map(
+				AuthorQuerier::id).get();
+	}
+
+}
@@ -14,15 +14,25 @@
 
 package org.funbizmodel.bookstore;
 
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.InMemoryBookstore;
 import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.author.AuthorRepository;
 import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.model.author.InMemoryAuthorService;
 import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookRepository;
 import org.funbizmodel.bookstore.model.book.BookService;
+import org.funbizmodel.bookstore.model.book.InMemoryBookService;
+import org.funbizmodel.bookstore.service.PooledDataSource;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+import org.h2.jdbcx.JdbcDataSource;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,103 +44,154 @@ import static org.funbizmodel.bookstore.model.author.AuthorService.update;
  */
 public class Main {
 
-	public static void main(String[] args)
-		throws ClassNotFoundException, SQLException {
+	/**
+	 * Runs the demo against an H2 database, or in memory if the first
+	 * argument is {@code memory}.
+	 */
+	public static void main(String[] args) throws SQLException {
+		if ((args.length > 0) && args[0].equals("memory")) {
+			_runInMemory();
 
-		Class.forName("org.h2.Driver");
+			return;
+		}
+
+		JdbcDataSource h2DataSource = new JdbcDataSource();
 
-		try (Connection conn = DriverManager.getConnection(
-			"jdbc:h2:./bookstore", "sa", "")) {
+		h2DataSource.setURL("jdbc:h2:./bookstore");
+		h2DataSource.setUser("sa");
+		h2DataSource.setPassword("");
 
-			conn.prepareStatement(
-				"DROP TABLE AUTHOR IF EXISTS; " +
-				"DROP TABLE BOOK IF EXISTS; " +
-				"DROP TABLE AUTHOR_BOOK IF EXISTS;").
-			executeUpdate();
+		PooledDataSource dataSource = new PooledDataSource(
+			h2DataSource, Runtime.getRuntime().availableProcessors());
+
+		//The demo starts from an empty database every time
+		try (Connection conn = dataSource.getConnection()) {
+			conn.prepareStatement("DROP ALL OBJECTS").executeUpdate();
+		}
 
-			conn.prepareStatement(
-				"CREATE TABLE AUTHOR(id long primary key auto_increment, name varchar);" +
-				"CREATE TABLE BOOK(id long primary key auto_increment, isbn varchar, title varchar);" +
-				"CREATE TABLE AUTHOR_BOOK (authorId long, bookId long);").
-			executeUpdate();
+		BookstoreSchema.migrate(dataSource);
 
-			AuthorService author = new AuthorService(conn);
+		try {
+			AuthorService author = new AuthorService(dataSource);
 
-			BookService books = new BookService(conn);
+			BookService books = new BookService(dataSource);
 
 			author.setBookService(books);
 			books.setAuthorService(author);
 
-			String zutanoId = author.create(ab -> ab.name("Zutano")).map(AuthorQuerier::id).get();
+			UnitOfWork unitOfWork = new UnitOfWork(dataSource);
 
+			_runDemo(author, books, unitOfWork::execute);
+		}
+		finally {
+			dataSource.close();
+		}
+	}
+
+	private static void _runInMemory() {
+		InMemoryBookstore bookstore = new InMemoryBookstore();
+
+		InMemoryAuthorService author = new InMemoryAuthorService(bookstore);
+
+		InMemoryBookService books = new InMemoryBookService(bookstore);
+
+		author.setBookService(books);
+		books.setAuthorService(author);
+
+		_runDemo(author, books, bookstore::execute);
+	}
+
+	/**
+	 * The business code, which is the same whatever storage the repositories
+	 * use.
+	 */
+	private static void _runDemo(
+		AuthorRepository author, BookRepository books,
+		Transaction transaction) {
+
+		String zutanoId = transaction.execute(() -> {
+			String id = author.create(ab -> ab.name("Zutano")).map(AuthorQuerier::id).get();
 
 			//Create author and books... one book has one extra author
 			author.create(ab -> ab.
 					name("Federico").
 					books(books.create(
-							bb -> bb.isbn("oneisbn").title("onetitle").addAuthors(Stream.of(author.withId(zutanoId))),
+							bb -> bb.isbn("oneisbn").title("onetitle").addAuthors(Stream.of(author.withId(id))),
 							bb -> bb.isbn("anotherisbn").title("anothertitle")
 						)
 					)
-			).map(AuthorQuerier::id);
-
+			).map(AuthorQuerier::id).get();
 
-			//Get the authors of each of these two books
-			books.fromTitles("onetitle", "anothertitle").forEach(bc ->
-					author.fromBook(bc).forEach(
-						ac ->
-							System.out.println(ac.map(AuthorQuerier::name))
-					)
-			);
+			return id;
+		}).get();
 
-			//Create a new book and assign it a new author
-			books.create(
-				bb -> bb.isbn("thirdisbn").title("yetanothertitle").
-					addAuthors(Stream.of(author.create(ab -> ab.name("Fulano"))))).
-				map(BookQuerier::id);
 
-			//Create a view object from the query before
-			author.withId(zutanoId).map(
-				aq -> new AuthorWithBooks(
-					aq.name(), aq.books(BookQuerier::title).collect(Collectors.toList())
+		//Get the authors of each of these two books
+		books.fromTitles("onetitle", "anothertitle").forEach(bc ->
+				author.fromBook(bc).forEach(
+					ac ->
+						System.out.println(ac.map(AuthorQuerier::name))
 				)
-			).andThen(System.out::println);
-
-			//Update author changing his name and adding a book. Query the
-			// resulting books of that author
-
-			author.withId(zutanoId).execute(
-				update(au -> {
-					au.setNewName("Mengano");
-					au.addBooks(books.fromTitles("yetanothertitle"));
-				})).
-				map(aq -> aq.books(BookQuerier::title)).andThen(s -> s.forEach(System.out::println));
-
-			//Create a view object from the query after
-			author.withId(zutanoId).map(
-				aq -> new AuthorWithBooks(
-					aq.name(), aq.books(BookQuerier::title).collect(Collectors.toList())
+		);
+
+		//Create a new book and assign it a new author
+		transaction.execute(() -> books.create(
+			bb -> bb.isbn("thirdisbn").title("yetanothertitle").
+				addAuthors(Stream.of(author.create(ab -> ab.name("Fulano"))))).
+			map(BookQuerier::id).get());
+
+		//Create a view object from the query before
+		author.include("books").withId(zutanoId).map(
+			aq -> new AuthorWithBooks(
+				aq.name(), aq.books(BookQuerier::title).collect(Collectors.toList())
+			)
+		).andThen(System.out::println);
+
+		//Update author changing his name and adding a book. Query the
+		// resulting books of that author
+
+		author.withId(zutanoId).execute(
+			update(au -> {
+				au.setNewName("Mengano");
+				au.addBooks(
+					books.select("id").fromTitles("yetanothertitle"));
+			})).
+			map(aq -> aq.books(BookQuerier::title)).andThen(s -> s.forEach(System.out::println));
+
+		//Create a view object from the query after
+		author.include("books").withId(zutanoId).map(
+			aq -> new AuthorWithBooks(
+				aq.name(), aq.books(BookQuerier::title).collect(Collectors.toList())
+			)
+		).andThen(System.out::println);
+
+		//DELETE the author
+		author.withId(zutanoId).execute(DELETE);
+
+		//IT does not exist anymore
+		author.withId(zutanoId).map(AuthorQuerier::name).orElse(c -> System.out.println("DOES NOT EXIST!!"));
+
+		//Other authors still exist
+		books.all().map(
+			bc -> bc.map(
+				bq -> bq.authors(AuthorQuerier::name))).
+			forEach(
+				r -> System.out.println(
+					r.getOrElse(
+						e -> Stream.of("ERROR!")).collect(Collectors.toList())
 				)
-			).andThen(System.out::println);
-
-			//DELETE the author
-			author.withId(zutanoId).execute(DELETE);
-
-			//IT does not exist anymore
-			author.withId(zutanoId).map(AuthorQuerier::name).orElse(c -> System.out.println("DOES NOT EXIST!!"));
-
-			//Other authors still exist
-			books.all().map(
-				bc -> bc.map(
-					bq -> bq.authors(AuthorQuerier::name))).
-				forEach(
-					r -> System.out.println(
-						r.getOrElse(
-							e -> Stream.of("ERROR!")).collect(Collectors.toList())
-					)
-				);
+			);
+
+	}
+
+	/**
+	 * Runs work atomically, as {@link UnitOfWork#execute(Supplier)} and
+	 * {@link InMemoryBookstore#execute(Supplier)} do.
+	 */
+	private interface Transaction {
+
+		public <R> Result<R> execute(Supplier<R> work);
 
-		}
 	}
 
 	static class AuthorWithBooks {
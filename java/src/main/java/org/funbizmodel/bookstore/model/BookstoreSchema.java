@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model;
+
+import org.funbizmodel.bookstore.service.SchemaMigrator;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * The schema the author and book services work on. Migrating a database
+ * created before versioning was introduced is safe: the first version only
+ * creates the tables that are missing. The second one makes the ISBN
+ * unique, and refuses to run while books share an ISBN.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class BookstoreSchema {
+
+	public static final int TABLES_VERSION = 1;
+
+	public static final int INDEXES_VERSION = 2;
+
+	public static SchemaMigrator createSchemaMigrator(DataSource dataSource) {
+		SchemaMigrator schemaMigrator = new SchemaMigrator(dataSource);
+
+		schemaMigrator.addMigration(
+			TABLES_VERSION, "Author, book and author book tables",
+			"CREATE TABLE IF NOT EXISTS AUTHOR(" +
+				"id long primary key auto_increment, name varchar)",
+			"CREATE TABLE IF NOT EXISTS BOOK(" +
+				"id long primary key auto_increment, isbn varchar, " +
+					"title varchar)",
+			"CREATE TABLE IF NOT EXISTS AUTHOR_BOOK (" +
+				"authorId long, bookId long)");
+
+		schemaMigrator.addMigration(
+			INDEXES_VERSION, "Author book, isbn and title indexes",
+			"CREATE INDEX IF NOT EXISTS AUTHOR_BOOK_AUTHOR_BOOK ON " +
+				"AUTHOR_BOOK(authorId, bookId)",
+			"CREATE INDEX IF NOT EXISTS AUTHOR_BOOK_BOOK_AUTHOR ON " +
+				"AUTHOR_BOOK(bookId, authorId)",
+			"CREATE UNIQUE INDEX IF NOT EXISTS BOOK_ISBN ON BOOK(isbn)",
+			"CREATE INDEX IF NOT EXISTS BOOK_TITLE ON BOOK(title)");
+
+		schemaMigrator.addCheck(
+			INDEXES_VERSION,
+			"SELECT isbn FROM BOOK GROUP BY isbn HAVING count(*) > 1",
+			"books sharing these ISBNs must be merged or fixed before the " +
+				"ISBN becomes unique");
+
+		return schemaMigrator;
+	}
+
+	/**
+	 * Brings the schema of the database up to date.
+	 */
+	public static int migrate(DataSource dataSource) throws SQLException {
+		return createSchemaMigrator(dataSource).migrate();
+	}
+
+}
@@ -0,0 +1,703 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model;
+
+import org.funbizmodel.bookstore.service.LongList;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A read-only copy of the AUTHOR, BOOK and AUTHOR_BOOK tables in a file
+ * that is mapped in memory and read in place.
+ *
+ * <p>
+ * The file starts with a fixed width record per author and per book, in id
+ * order, so an id is found by binary search and a row by its position. The
+ * links are kept as the positions of the linked rows, grouped by row, and
+ * the books are also listed in title and in ISBN order. Strings are UTF-8
+ * bytes in a heap at the end of the file, addressed by offset and length
+ * from the records, and only decoded when asked for.
+ * </p>
+ *
+ * <p>
+ * As the file is mapped read-only, every process that opens the same file
+ * shares its pages through the operating system page cache. Snapshots are
+ * written to a temporary file that is then moved over the target, so
+ * processes that mapped an older snapshot keep reading it unchanged.
+ * Files are limited to 2GB.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class CatalogSnapshot {
+
+	public static final int MAGIC = 0x424B5331;
+
+	public static final int VERSION = 2;
+
+	private static final int _AUTHOR_SIZE = 24;
+
+	private static final int _BOOK_SIZE = 32;
+
+	private static final int _HEADER_SIZE = 24;
+
+	private static final int _ISBN_OFFSET = 8;
+
+	private static final int _TITLE_OFFSET = 16;
+
+	private final int _authorCount;
+	private final int _authorPositionsOffset;
+	private final int _authorsOffset;
+	private final int _bookCount;
+	private final int _bookPositionsOffset;
+	private final int _booksOffset;
+	private final ByteBuffer _buffer;
+	private final int _heapOffset;
+	private final int _isbnPositionsOffset;
+	private final int _titlePositionsOffset;
+
+	/**
+	 * Writes the rows the tables hold to the file. Links to rows that do not
+	 * exist are left out. The tables are read one after the other, so the
+	 * snapshot is only consistent if they are not written meanwhile.
+	 */
+	public static void write(DataSource dataSource, Path path)
+		throws IOException, SQLException {
+
+		LongList authorIds = new LongList();
+		List<String> names = new ArrayList<>();
+		LongList bookIds = new LongList();
+		List<String> isbns = new ArrayList<>();
+		List<String> titles = new ArrayList<>();
+		LongList linkAuthorIds = new LongList();
+		LongList linkBookIds = new LongList();
+
+		try (Connection conn = dataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			try (ResultSet resultSet = statement.executeQuery(
+					"SELECT id, name FROM AUTHOR ORDER BY id")) {
+
+				while (resultSet.next()) {
+					authorIds.add(resultSet.getLong(1));
+					names.add(resultSet.getString(2));
+				}
+			}
+
+			try (ResultSet resultSet = statement.executeQuery(
+					"SELECT id, isbn, title FROM BOOK ORDER BY id")) {
+
+				while (resultSet.next()) {
+					bookIds.add(resultSet.getLong(1));
+					isbns.add(resultSet.getString(2));
+					titles.add(resultSet.getString(3));
+				}
+			}
+
+			try (ResultSet resultSet = statement.executeQuery(
+					"SELECT authorId, bookId FROM AUTHOR_BOOK " +
+						"ORDER BY authorId, bookId")) {
+
+				while (resultSet.next()) {
+					linkAuthorIds.add(resultSet.getLong(1));
+					linkBookIds.add(resultSet.getLong(2));
+				}
+			}
+		}
+
+		new Writer(
+			authorIds.toArray(), names, bookIds.toArray(), isbns, titles,
+			linkAuthorIds.toArray(), linkBookIds.toArray()).write(path);
+	}
+
+	/**
+	 * Maps the snapshot in the file.
+	 *
+	 * @throws IOException if the file cannot be read or is not a snapshot of
+	 *         this version
+	 */
+	public static CatalogSnapshot open(Path path) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(
+				path, StandardOpenOption.READ)) {
+
+			MappedByteBuffer buffer = fileChannel.map(
+				FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+
+			if ((buffer.limit() < _HEADER_SIZE) ||
+				(buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)) {
+
+				throw new IOException(
+					path + " is not a catalog snapshot of version " +
+						VERSION);
+			}
+
+			return new CatalogSnapshot(buffer);
+		}
+	}
+
+	public int getAuthorCount() {
+		return _authorCount;
+	}
+
+	public int getBookCount() {
+		return _bookCount;
+	}
+
+	/**
+	 * Returns the position of the author, or -1 if it is not in the
+	 * snapshot.
+	 */
+	public int findAuthor(long authorId) {
+		return _find(_authorsOffset, _AUTHOR_SIZE, _authorCount, authorId);
+	}
+
+	public long getAuthorId(int authorPosition) {
+		return _buffer.getLong(_authorOffset(authorPosition));
+	}
+
+	public String getAuthorName(int authorPosition) {
+		int offset = _authorOffset(authorPosition);
+
+		return _decode(offset + 8);
+	}
+
+	/**
+	 * Returns the positions of the books of the author, in id order.
+	 */
+	public IntStream getBookPositions(int authorPosition) {
+		int offset = _authorOffset(authorPosition);
+
+		return _positions(
+			_bookPositionsOffset, _buffer.getInt(offset + 16),
+			_buffer.getInt(offset + 20));
+	}
+
+	/**
+	 * Returns the position of the book, or -1 if it is not in the snapshot.
+	 */
+	public int findBook(long bookId) {
+		return _find(_booksOffset, _BOOK_SIZE, _bookCount, bookId);
+	}
+
+	public long getBookId(int bookPosition) {
+		return _buffer.getLong(_bookOffset(bookPosition));
+	}
+
+	public String getIsbn(int bookPosition) {
+		return _decode(_bookOffset(bookPosition) + _ISBN_OFFSET);
+	}
+
+	public String getTitle(int bookPosition) {
+		return _decode(_bookOffset(bookPosition) + _TITLE_OFFSET);
+	}
+
+	/**
+	 * Returns the positions of the authors of the book, in id order.
+	 */
+	public IntStream getAuthorPositions(int bookPosition) {
+		int offset = _bookOffset(bookPosition);
+
+		return _positions(
+			_authorPositionsOffset, _buffer.getInt(offset + 24),
+			_buffer.getInt(offset + 28));
+	}
+
+	/**
+	 * Returns the position of the book with the ISBN, or -1 if it is not in
+	 * the snapshot.
+	 */
+	public int findBookWithIsbn(String isbn) {
+		byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+
+		int index = _lowerBound(_isbnPositionsOffset, _ISBN_OFFSET, key);
+
+		if (index < _bookCount) {
+			int bookPosition = _sortedPosition(_isbnPositionsOffset, index);
+
+			if (_compare(bookPosition, _ISBN_OFFSET, key, false) == 0) {
+				return bookPosition;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the positions of the books with the title, found by binary
+	 * search comparing the encoded title with the mapped bytes.
+	 */
+	public IntStream findBooksWithTitle(String title) {
+		byte[] key = title.getBytes(StandardCharsets.UTF_8);
+
+		int start = _lowerBound(_titlePositionsOffset, _TITLE_OFFSET, key);
+
+		int end = start;
+
+		while ((end < _bookCount) &&
+			   (_compare(
+				   _sortedPosition(_titlePositionsOffset, end), _TITLE_OFFSET,
+				   key, false) == 0)) {
+
+			end++;
+		}
+
+		return IntStream.range(start, end).map(
+			index -> _sortedPosition(_titlePositionsOffset, index));
+	}
+
+	/**
+	 * Returns up to {@code limit} distinct titles that start with the
+	 * prefix, in the order of their UTF-8 bytes. Only the titles returned
+	 * are decoded.
+	 */
+	public List<String> getTitlesStartingWith(String prefix, int limit) {
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+
+		List<String> titles = new ArrayList<>();
+
+		for (int index = _lowerBound(_titlePositionsOffset, _TITLE_OFFSET, key);
+			 (index < _bookCount) && (titles.size() < limit); index++) {
+
+			int bookPosition = _sortedPosition(_titlePositionsOffset, index);
+
+			if (_compare(bookPosition, _TITLE_OFFSET, key, true) != 0) {
+				break;
+			}
+
+			String title = getTitle(bookPosition);
+
+			if (titles.isEmpty() ||
+				!title.equals(titles.get(titles.size() - 1))) {
+
+				titles.add(title);
+			}
+		}
+
+		return titles;
+	}
+
+	private CatalogSnapshot(ByteBuffer buffer) {
+		_buffer = buffer;
+
+		_authorCount = buffer.getInt(8);
+		_bookCount = buffer.getInt(12);
+
+		int linkCount = buffer.getInt(16);
+
+		_authorsOffset = _HEADER_SIZE;
+		_booksOffset = _authorsOffset + (_authorCount * _AUTHOR_SIZE);
+		_bookPositionsOffset = _booksOffset + (_bookCount * _BOOK_SIZE);
+		_authorPositionsOffset = _bookPositionsOffset + (linkCount * 4);
+		_titlePositionsOffset = _authorPositionsOffset + (linkCount * 4);
+		_isbnPositionsOffset = _titlePositionsOffset + (_bookCount * 4);
+		_heapOffset = _isbnPositionsOffset + (_bookCount * 4);
+	}
+
+	private int _authorOffset(int authorPosition) {
+		return _authorsOffset + (authorPosition * _AUTHOR_SIZE);
+	}
+
+	private int _bookOffset(int bookPosition) {
+		return _booksOffset + (bookPosition * _BOOK_SIZE);
+	}
+
+	/**
+	 * Compares a string of the book with the encoded key by their unsigned
+	 * bytes, {@code null} first. As a prefix, strings starting with the key
+	 * compare as equal to it.
+	 */
+	private int _compare(
+		int bookPosition, int fieldOffset, byte[] key, boolean prefix) {
+
+		int offset = _bookOffset(bookPosition) + fieldOffset;
+
+		int heapOffset = _buffer.getInt(offset);
+
+		if (heapOffset < 0) {
+			return -1;
+		}
+
+		int start = _heapOffset + heapOffset;
+		int length = _buffer.getInt(offset + 4);
+
+		if (prefix) {
+			length = Math.min(length, key.length);
+		}
+
+		int common = Math.min(length, key.length);
+
+		for (int i = 0; i < common; i++) {
+			int difference =
+				(_buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+
+			if (difference != 0) {
+				return difference;
+			}
+		}
+
+		return length - key.length;
+	}
+
+	/**
+	 * Decodes the string whose heap offset and length are at the given
+	 * offset of the file.
+	 */
+	private String _decode(int offset) {
+		int heapOffset = _buffer.getInt(offset);
+
+		if (heapOffset < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[_buffer.getInt(offset + 4)];
+
+		ByteBuffer duplicate = _buffer.duplicate();
+
+		duplicate.position(_heapOffset + heapOffset);
+
+		duplicate.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int _find(int recordsOffset, int recordSize, int count, long id) {
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			long middleId = _buffer.getLong(
+				recordsOffset + (middle * recordSize));
+
+			if (middleId < id) {
+				low = middle + 1;
+			}
+			else if (middleId > id) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	private IntStream _positions(int positionsOffset, int start, int count) {
+		int offset = positionsOffset + (start * 4);
+
+		return IntStream.range(0, count).map(
+			i -> _buffer.getInt(offset + (i * 4)));
+	}
+
+	/**
+	 * Returns the first index of the books sorted by the given string that
+	 * does not compare below the key.
+	 */
+	private int _lowerBound(int positionsOffset, int fieldOffset, byte[] key) {
+		int low = 0;
+		int high = _bookCount;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (_compare(
+					_sortedPosition(positionsOffset, middle), fieldOffset, key,
+					false) < 0) {
+
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	private int _sortedPosition(int positionsOffset, int index) {
+		return _buffer.getInt(positionsOffset + (index * 4));
+	}
+
+	/**
+	 * Lays the rows out as {@link CatalogSnapshot} reads them.
+	 */
+	private static class Writer {
+
+		private final int[] _authorPositions;
+		private final int[] _authorStarts;
+		private final long[] _authorIds;
+		private final long[] _bookIds;
+		private final int[] _bookPositions;
+		private final int[] _bookStarts;
+		private final List<String> _isbns;
+		private final int _linkCount;
+		private final List<String> _names;
+		private final List<String> _titles;
+
+		public Writer(
+			long[] authorIds, List<String> names, long[] bookIds,
+			List<String> isbns, List<String> titles, long[] linkAuthorIds,
+			long[] linkBookIds) {
+
+			_authorIds = authorIds;
+			_names = names;
+			_bookIds = bookIds;
+			_isbns = isbns;
+			_titles = titles;
+
+			LongList linkAuthorPositions = new LongList(linkAuthorIds.length);
+			LongList linkBookPositions = new LongList(linkBookIds.length);
+
+			for (int i = 0; i < linkAuthorIds.length; i++) {
+				int authorPosition = Arrays.binarySearch(
+					authorIds, linkAuthorIds[i]);
+				int bookPosition = Arrays.binarySearch(
+					bookIds, linkBookIds[i]);
+
+				if ((authorPosition >= 0) && (bookPosition >= 0)) {
+					linkAuthorPositions.add(authorPosition);
+					linkBookPositions.add(bookPosition);
+				}
+			}
+
+			_linkCount = linkAuthorPositions.size();
+
+			_bookStarts = new int[authorIds.length + 1];
+			_bookPositions = _group(
+				linkAuthorPositions, linkBookPositions, _bookStarts);
+
+			_authorStarts = new int[bookIds.length + 1];
+			_authorPositions = _group(
+				linkBookPositions, linkAuthorPositions, _authorStarts);
+		}
+
+		public void write(Path path) throws IOException {
+			ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+			int[] nameOffsets = new int[_authorIds.length];
+			int[] nameLengths = new int[_authorIds.length];
+
+			for (int i = 0; i < _authorIds.length; i++) {
+				_encode(heap, _names.get(i), nameOffsets, nameLengths, i);
+			}
+
+			int[] isbnOffsets = new int[_bookIds.length];
+			int[] isbnLengths = new int[_bookIds.length];
+			int[] titleOffsets = new int[_bookIds.length];
+			int[] titleLengths = new int[_bookIds.length];
+
+			byte[][] encodedIsbns = new byte[_bookIds.length][];
+			byte[][] encodedTitles = new byte[_bookIds.length][];
+
+			for (int i = 0; i < _bookIds.length; i++) {
+				encodedIsbns[i] = _encode(
+					heap, _isbns.get(i), isbnOffsets, isbnLengths, i);
+
+				encodedTitles[i] = _encode(
+					heap, _titles.get(i), titleOffsets, titleLengths, i);
+			}
+
+			Integer[] isbnOrder = _order(encodedIsbns);
+			Integer[] titleOrder = _order(encodedTitles);
+
+			long size =
+				_HEADER_SIZE + ((long)_authorIds.length * _AUTHOR_SIZE) +
+					((long)_bookIds.length * _BOOK_SIZE) +
+						((long)_linkCount * 8) + ((long)_bookIds.length * 8) +
+							heap.size();
+
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(
+					"A catalog snapshot of " + size + " bytes is too large");
+			}
+
+			Path temporaryPath = Files.createTempFile(
+				path.toAbsolutePath().getParent(), "catalog", ".tmp");
+
+			try {
+				try (FileChannel fileChannel = FileChannel.open(
+						temporaryPath, StandardOpenOption.READ,
+						StandardOpenOption.WRITE)) {
+
+					MappedByteBuffer buffer = fileChannel.map(
+						FileChannel.MapMode.READ_WRITE, 0, size);
+
+					buffer.putInt(MAGIC);
+					buffer.putInt(VERSION);
+					buffer.putInt(_authorIds.length);
+					buffer.putInt(_bookIds.length);
+					buffer.putInt(_linkCount);
+					buffer.putInt(0);
+
+					for (int i = 0; i < _authorIds.length; i++) {
+						buffer.putLong(_authorIds[i]);
+						buffer.putInt(nameOffsets[i]);
+						buffer.putInt(nameLengths[i]);
+						buffer.putInt(_bookStarts[i]);
+						buffer.putInt(_bookStarts[i + 1] - _bookStarts[i]);
+					}
+
+					for (int i = 0; i < _bookIds.length; i++) {
+						buffer.putLong(_bookIds[i]);
+						buffer.putInt(isbnOffsets[i]);
+						buffer.putInt(isbnLengths[i]);
+						buffer.putInt(titleOffsets[i]);
+						buffer.putInt(titleLengths[i]);
+						buffer.putInt(_authorStarts[i]);
+						buffer.putInt(
+							_authorStarts[i + 1] - _authorStarts[i]);
+					}
+
+					for (int bookPosition : _bookPositions) {
+						buffer.putInt(bookPosition);
+					}
+
+					for (int authorPosition : _authorPositions) {
+						buffer.putInt(authorPosition);
+					}
+
+					for (Integer bookPosition : titleOrder) {
+						buffer.putInt(bookPosition);
+					}
+
+					for (Integer bookPosition : isbnOrder) {
+						buffer.putInt(bookPosition);
+					}
+
+					buffer.put(heap.toByteArray());
+
+					buffer.force();
+				}
+
+				Files.move(
+					temporaryPath, path, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(temporaryPath);
+			}
+		}
+
+		/**
+		 * Compares encoded strings by their unsigned bytes, {@code null}
+		 * first.
+		 */
+		private static int _compare(byte[] bytes1, byte[] bytes2) {
+			if ((bytes1 == null) || (bytes2 == null)) {
+				return Boolean.compare(bytes1 != null, bytes2 != null);
+			}
+
+			int common = Math.min(bytes1.length, bytes2.length);
+
+			for (int i = 0; i < common; i++) {
+				int difference = (bytes1[i] & 0xFF) - (bytes2[i] & 0xFF);
+
+				if (difference != 0) {
+					return difference;
+				}
+			}
+
+			return bytes1.length - bytes2.length;
+		}
+
+		/**
+		 * Appends the string to the heap, recording where it starts, or -1
+		 * for {@code null}, and how long it is. Returns its bytes.
+		 */
+		private static byte[] _encode(
+			ByteArrayOutputStream heap, String string, int[] offsets,
+			int[] lengths, int index) {
+
+			if (string == null) {
+				offsets[index] = -1;
+
+				return null;
+			}
+
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+			offsets[index] = heap.size();
+			lengths[index] = bytes.length;
+
+			heap.write(bytes, 0, bytes.length);
+
+			return bytes;
+		}
+
+		/**
+		 * Returns the indexes of the encoded strings in their order.
+		 */
+		private static Integer[] _order(byte[][] encodedStrings) {
+			Integer[] order = new Integer[encodedStrings.length];
+
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+
+			Arrays.sort(
+				order,
+				(i, j) -> _compare(encodedStrings[i], encodedStrings[j]));
+
+			return order;
+		}
+
+		/**
+		 * Groups the positions of the targets of the links by their
+		 * source, filling where the group of each source starts.
+		 */
+		private static int[] _group(
+			LongList sources, LongList targets, int[] starts) {
+
+			for (int i = 0; i < sources.size(); i++) {
+				starts[(int)sources.get(i) + 1]++;
+			}
+
+			for (int i = 1; i < starts.length; i++) {
+				starts[i] += starts[i - 1];
+			}
+
+			int[] next = Arrays.copyOf(starts, starts.length - 1);
+			int[] grouped = new int[sources.size()];
+
+			for (int i = 0; i < sources.size(); i++) {
+				grouped[next[(int)sources.get(i)]++] = (int)targets.get(i);
+			}
+
+			return grouped;
+		}
+
+	}
+
+}
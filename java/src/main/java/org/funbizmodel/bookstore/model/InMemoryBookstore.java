@@ -0,0 +1,446 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model;
+
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.LongHashMap;
+import org.funbizmodel.bookstore.service.LongList;
+import org.funbizmodel.bookstore.service.Result;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * The authors, books and author book links of a bookstore held in memory,
+ * as the rows of the tables in {@link BookstoreSchema}. Rows are kept in
+ * maps keyed by unboxed ids and every row holds the ids it is linked to in
+ * a {@link LongList}, so following a link is a lookup rather than a join.
+ *
+ * <p>
+ * Ids are assigned in sequence from one, as the auto increment columns of
+ * the schema do, and are never reused. As with the unique index of the
+ * schema, books with an ISBN are unique by it, and any number of books may
+ * have none. As with the AUTHOR_BOOK table, linking an author to a book
+ * twice links them twice.
+ * </p>
+ *
+ * <p>
+ * Readers share a lock and writers take it exclusively. Work run with
+ * {@link #execute(Supplier)} holds it exclusively until the end and is
+ * undone if it fails, as a {@link
+ * org.funbizmodel.bookstore.service.UnitOfWork} rolls back its transaction.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class InMemoryBookstore {
+
+	private final LongHashMap<AuthorRow> _authors;
+	private final LongHashMap<BookRow> _books;
+	private final Map<String, Long> _bookIdsByIsbn = new HashMap<>();
+	private final NavigableMap<String, LongList> _bookIdsByTitle =
+		new TreeMap<>();
+	private long _lastAuthorId;
+	private long _lastBookId;
+	private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+	private Deque<Runnable> _undoLog;
+
+	public InMemoryBookstore() {
+		this(16, 16);
+	}
+
+	public InMemoryBookstore(int expectedAuthors, int expectedBooks) {
+		_authors = new LongHashMap<>(expectedAuthors);
+		_books = new LongHashMap<>(expectedBooks);
+	}
+
+	/**
+	 * Runs the work holding the store exclusively, or as part of the work
+	 * already running on the calling thread, in which case failures are
+	 * thrown so that the outer work is undone. The changes of a failed work
+	 * are undone and the failure is returned as an {@link ErrorResult}.
+	 */
+	public <R> Result<R> execute(Supplier<R> work) {
+		Lock writeLock = _lock.writeLock();
+
+		writeLock.lock();
+
+		try {
+			if (_undoLog != null) {
+				return new CorrectResult<>(work.get());
+			}
+
+			_undoLog = new ArrayDeque<>();
+
+			try {
+				return new CorrectResult<>(work.get());
+			}
+			catch (RuntimeException e) {
+				Deque<Runnable> undoLog = _undoLog;
+
+				_undoLog = null;
+
+				undoLog.forEach(Runnable::run);
+
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError(String.valueOf(e.getMessage()));
+
+				return errorResult;
+			}
+			finally {
+				_undoLog = null;
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	public long addAuthor(String name) {
+		return _write(() -> {
+			long id = ++_lastAuthorId;
+
+			_authors.put(id, new AuthorRow(name));
+
+			_logUndo(() -> _authors.remove(id));
+
+			return id;
+		});
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the ISBN is not {@code null} and
+	 *         there is a book with it
+	 */
+	public long addBook(String isbn, String title) {
+		return _write(() -> {
+			if ((isbn != null) && _bookIdsByIsbn.containsKey(isbn)) {
+				throw new IllegalArgumentException(
+					"There is already a book with ISBN " + isbn);
+			}
+
+			long id = ++_lastBookId;
+
+			_books.put(id, new BookRow(isbn, title));
+
+			if (isbn != null) {
+				_bookIdsByIsbn.put(isbn, id);
+			}
+
+			if (title != null) {
+				_bookIdsByTitle.computeIfAbsent(
+					title, t -> new LongList(1)).add(id);
+			}
+
+			_logUndo(() -> {
+				_books.remove(id);
+				_bookIdsByIsbn.remove(isbn);
+
+				if (title != null) {
+					_bookIdsByTitle.get(title).remove(id);
+				}
+			});
+
+			return id;
+		});
+	}
+
+	/**
+	 * Links the author to the book, once more if they already are.
+	 *
+	 * @throws IllegalArgumentException if the author or the book does not
+	 *         exist
+	 */
+	public void link(long authorId, long bookId) {
+		_write(() -> {
+			AuthorRow authorRow = _authors.get(authorId);
+
+			if (authorRow == null) {
+				throw new IllegalArgumentException(
+					"No author with id " + authorId);
+			}
+
+			BookRow bookRow = _books.get(bookId);
+
+			if (bookRow == null) {
+				throw new IllegalArgumentException("No book with id " + bookId);
+			}
+
+			authorRow._bookIds.add(bookId);
+			bookRow._authorIds.add(authorId);
+
+			_logUndo(() -> {
+				authorRow._bookIds.remove(bookId);
+				bookRow._authorIds.remove(authorId);
+			});
+
+			return null;
+		});
+	}
+
+	/**
+	 * Returns whether the author exists.
+	 */
+	public boolean renameAuthor(long authorId, String name) {
+		return _write(() -> {
+			AuthorRow authorRow = _authors.get(authorId);
+
+			if (authorRow == null) {
+				return false;
+			}
+
+			String previousName = authorRow._name;
+
+			authorRow._name = name;
+
+			_logUndo(() -> authorRow._name = previousName);
+
+			return true;
+		});
+	}
+
+	/**
+	 * Removes the author and its links. Returns whether the author existed.
+	 */
+	public boolean deleteAuthor(long authorId) {
+		return _write(() -> {
+			AuthorRow authorRow = _authors.remove(authorId);
+
+			if (authorRow == null) {
+				return false;
+			}
+
+			long[] bookIds = authorRow._bookIds.toArray();
+
+			for (long bookId : bookIds) {
+				_books.get(bookId)._authorIds.remove(authorId);
+			}
+
+			_logUndo(() -> {
+				_authors.put(authorId, authorRow);
+
+				for (long bookId : bookIds) {
+					_books.get(bookId)._authorIds.add(authorId);
+				}
+			});
+
+			return true;
+		});
+	}
+
+	/**
+	 * Returns the name of the author, or {@code null} if it does not exist.
+	 */
+	public String getAuthorName(long authorId) {
+		return _read(() -> {
+			AuthorRow authorRow = _authors.get(authorId);
+
+			return (authorRow == null) ? null : authorRow._name;
+		});
+	}
+
+	/**
+	 * Returns the ids of the books of the author, in the order they were
+	 * linked, or none if it does not exist.
+	 */
+	public long[] getBookIds(long authorId) {
+		return _read(() -> {
+			AuthorRow authorRow = _authors.get(authorId);
+
+			return (authorRow == null) ? new long[0] :
+				authorRow._bookIds.toArray();
+		});
+	}
+
+	public boolean hasAuthor(long authorId) {
+		return _read(() -> _authors.containsKey(authorId));
+	}
+
+	public int getAuthorCount() {
+		return _read(_authors::size);
+	}
+
+	/**
+	 * Returns the highest id given to an author so far, deleted or not.
+	 */
+	public long getLastAuthorId() {
+		return _read(() -> _lastAuthorId);
+	}
+
+	/**
+	 * Returns the ids of the authors of the book, in the order they were
+	 * linked, or none if it does not exist.
+	 */
+	public long[] getAuthorIds(long bookId) {
+		return _read(() -> {
+			BookRow bookRow = _books.get(bookId);
+
+			return (bookRow == null) ? new long[0] :
+				bookRow._authorIds.toArray();
+		});
+	}
+
+	/**
+	 * Returns the ISBN of the book, or {@code null} if it does not exist.
+	 */
+	public String getIsbn(long bookId) {
+		return _read(() -> {
+			BookRow bookRow = _books.get(bookId);
+
+			return (bookRow == null) ? null : bookRow._isbn;
+		});
+	}
+
+	/**
+	 * Returns the title of the book, or {@code null} if it does not exist.
+	 */
+	public String getTitle(long bookId) {
+		return _read(() -> {
+			BookRow bookRow = _books.get(bookId);
+
+			return (bookRow == null) ? null : bookRow._title;
+		});
+	}
+
+	/**
+	 * Returns the ids of the books with the title, in the order they were
+	 * added.
+	 */
+	public long[] getBookIdsWithTitle(String title) {
+		return _read(() -> {
+			LongList bookIds = (title == null) ? null :
+				_bookIdsByTitle.get(title);
+
+			return (bookIds == null) ? new long[0] : bookIds.toArray();
+		});
+	}
+
+	/**
+	 * Returns the id of the book with the ISBN, or -1 if there is none.
+	 */
+	public long getBookIdWithIsbn(String isbn) {
+		return _read(() -> _bookIdsByIsbn.getOrDefault(isbn, -1L));
+	}
+
+	/**
+	 * Returns up to {@code limit} distinct titles that start with the
+	 * prefix, in order.
+	 */
+	public List<String> getTitlesStartingWith(String prefix, int limit) {
+		return _read(() -> {
+			List<String> titles = new ArrayList<>();
+
+			for (Map.Entry<String, LongList> entry :
+					_bookIdsByTitle.tailMap(prefix, true).entrySet()) {
+
+				String title = entry.getKey();
+
+				if ((titles.size() >= limit) || !title.startsWith(prefix)) {
+					break;
+				}
+
+				if (!entry.getValue().isEmpty()) {
+					titles.add(title);
+				}
+			}
+
+			return titles;
+		});
+	}
+
+	public boolean hasBook(long bookId) {
+		return _read(() -> _books.containsKey(bookId));
+	}
+
+	public int getBookCount() {
+		return _read(_books::size);
+	}
+
+	/**
+	 * Returns the highest id given to a book so far.
+	 */
+	public long getLastBookId() {
+		return _read(() -> _lastBookId);
+	}
+
+	private void _logUndo(Runnable undo) {
+		if (_undoLog != null) {
+			_undoLog.push(undo);
+		}
+	}
+
+	private <R> R _read(Supplier<R> supplier) {
+		Lock readLock = _lock.readLock();
+
+		readLock.lock();
+
+		try {
+			return supplier.get();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	private <R> R _write(Supplier<R> supplier) {
+		Lock writeLock = _lock.writeLock();
+
+		writeLock.lock();
+
+		try {
+			return supplier.get();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	private static class AuthorRow {
+
+		private final LongList _bookIds = new LongList(2);
+		private String _name;
+
+		public AuthorRow(String name) {
+			_name = name;
+		}
+
+	}
+
+	private static class BookRow {
+
+		private final LongList _authorIds = new LongList(2);
+		private final String _isbn;
+		private final String _title;
+
+		public BookRow(String isbn, String title) {
+			_isbn = isbn;
+			_title = title;
+		}
+
+	}
+
+}
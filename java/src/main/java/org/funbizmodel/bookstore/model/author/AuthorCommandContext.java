@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.service.SqlCommandContext;
+
+/**
+ * The operations of the commands of {@link AuthorService}, which {@link
+ * AuthorService#DELETE} and {@link AuthorService#update} add through {@link
+ * #of(SqlCommandContext)}. Storages other than the database implement them
+ * directly instead of parsing the statements; on the database they add the
+ * statements in {@link AuthorService}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface AuthorCommandContext extends SqlCommandContext {
+
+	/**
+	 * Returns the context itself if it runs author operations, or one that
+	 * adds their statements to it otherwise.
+	 */
+	public static AuthorCommandContext of(
+		SqlCommandContext sqlCommandContext) {
+
+		if (sqlCommandContext instanceof AuthorCommandContext) {
+			return (AuthorCommandContext)sqlCommandContext;
+		}
+
+		return new SqlAuthorCommandContext(sqlCommandContext);
+	}
+
+	/**
+	 * Links the author to the book. Like an insert into AUTHOR_BOOK, linking
+	 * twice adds the link twice.
+	 */
+	public void addBook(long bookId);
+
+	public void delete();
+
+	public void rename(String name);
+
+}
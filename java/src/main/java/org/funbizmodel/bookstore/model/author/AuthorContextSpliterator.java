@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.service.ResultSetCursor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Streams the authors of a result set. When the service has a fetch plan,
+ * rows are read in batches and the relationships of a whole batch are
+ * loaded together.
+ *
+* @author Carlos Sierra Andrés
+*/
+class AuthorContextSpliterator implements Spliterator<AuthorContext> {
+
+	private final AuthorService _authorService;
+	private final ResultSetCursor _cursor;
+	private final ResultSet _resultSet;
+	private final LongAdder _rows;
+	private final int _batchSize;
+	private final Deque<AuthorContext> _buffer = new ArrayDeque<>();
+
+	public AuthorContextSpliterator(
+		AuthorService authorService, Connection conn,
+		PreparedStatement preparedStatement, ResultSet resultSet) {
+
+		_authorService = authorService;
+		_cursor = new ResultSetCursor(conn, preparedStatement, resultSet);
+		_resultSet = resultSet;
+		AuthorServiceSettings settings = authorService.settings();
+
+		_rows = (settings._metricsRegistry == null) ? null :
+			settings._metricsRegistry.counter("author.rows");
+		_batchSize = authorService.fetchPlan.isEmpty() ? 1 :
+			Math.max(settings._booksBatchSize, 1);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super AuthorContext> action) {
+		if (_batchSize > 1) {
+			if (_buffer.isEmpty()) {
+				_fillBuffer();
+			}
+
+			AuthorContext authorContext = _buffer.poll();
+
+			if (authorContext == null) {
+				close();
+
+				return false;
+			}
+
+			action.accept(authorContext);
+
+			return true;
+		}
+
+		try {
+			if (!_resultSet.next())  {
+				close();
+
+				return false;
+			}
+
+			if (_rows != null) {
+				_rows.increment();
+			}
+
+			AuthorQuerierFromRow authorQuerier = _read();
+
+			_authorService.preload(
+				Collections.singletonList(authorQuerier),
+				_authorService.fetchPlan);
+
+			action.accept(
+				new AuthorService.AuthorContextFromQuerier(
+					_authorService, authorQuerier));
+		}
+		catch (SQLException e) {
+			close();
+
+			throw new RuntimeException(e);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the cursor read by this spliterator, which closes by itself
+	 * once the rows are exhausted.
+	 */
+	public ResultSetCursor getCursor() {
+		return _cursor;
+	}
+
+	/**
+	 * Closes the cursor and gives the connection back. Called when the rows
+	 * are exhausted or reading them fails.
+	 */
+	public void close() {
+		_cursor.close();
+	}
+
+	private void _fillBuffer() {
+		List<AuthorQuerierFromRow> authorQueriers = new ArrayList<>(
+			_batchSize);
+
+		try {
+			while ((authorQueriers.size() < _batchSize) && _resultSet.next()) {
+				authorQueriers.add(_read());
+			}
+		}
+		catch (SQLException e) {
+			close();
+
+			throw new RuntimeException(e);
+		}
+
+		if (authorQueriers.isEmpty()) {
+			return;
+		}
+
+		if (_rows != null) {
+			_rows.add(authorQueriers.size());
+		}
+
+		_authorService.preload(authorQueriers, _authorService.fetchPlan);
+
+		for (AuthorQuerierFromRow authorQuerier : authorQueriers) {
+			_buffer.add(
+				new AuthorService.AuthorContextFromQuerier(
+					_authorService, authorQuerier));
+		}
+	}
+
+	private AuthorQuerierFromRow _read() throws SQLException {
+		return new AuthorQuerierFromRow(
+			_authorService, _resultSet.getLong("id"),
+			_resultSet.getString("name"));
+	}
+
+	@Override
+	public Spliterator<AuthorContext> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return IMMUTABLE;
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.service.ChangeEvent;
+import org.funbizmodel.bookstore.service.LongList;
+import org.funbizmodel.bookstore.service.MultiRowInsert;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Creation contexts that are inserted together the first time any of them
+ * is mapped: all the AUTHOR rows with multi-row inserts, then all their
+ * AUTHOR_BOOK links with a single JDBC batch.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class AuthorCreationBatch {
+
+	private static final MultiRowInsert _INSERT_AUTHORS = new MultiRowInsert(
+		"AUTHOR", "name");
+
+	/**
+	 * The most contexts a batch is meant to hold, as many as rows are
+	 * inserted by a single statement.
+	 */
+	static final int MAX_SIZE = _INSERT_AUTHORS.getMaxRows();
+
+	private final AuthorService _authorService;
+	private final List<AuthorCreationContext> _authorCreationContexts =
+		new ArrayList<>();
+	private boolean _flushed;
+	private SQLException _exception;
+
+	public AuthorCreationBatch(AuthorService authorService) {
+		_authorService = authorService;
+	}
+
+	public AuthorContext add(Consumer<AuthorBuilder> consumer) {
+		AuthorCreationContext authorCreationContext =
+			new AuthorCreationContext(_authorService, consumer, this);
+
+		_authorCreationContexts.add(authorCreationContext);
+
+		return authorCreationContext;
+	}
+
+	public List<AuthorContext> addAll(List<Consumer<AuthorBuilder>> consumers) {
+		List<AuthorContext> contexts = new ArrayList<>(consumers.size());
+
+		for (Consumer<AuthorBuilder> consumer : consumers) {
+			contexts.add(add(consumer));
+		}
+
+		return contexts;
+	}
+
+	public synchronized void flush() throws SQLException {
+		if (!_flushed) {
+			_flushed = true;
+
+			UnitOfWork.afterRollback(this::_reset);
+
+			try {
+				_insert();
+			}
+			catch (SQLException e) {
+				_exception = e;
+			}
+			catch (RuntimeException e) {
+				_exception = new SQLException(e.getMessage(), e);
+			}
+		}
+
+		if (_exception != null) {
+			throw _exception;
+		}
+	}
+
+	/**
+	 * Forgets the rows inserted by a unit of work that rolled back, so that
+	 * mapping any of the contexts inserts them again.
+	 */
+	private synchronized void _reset() {
+		_flushed = false;
+		_exception = null;
+
+		for (AuthorCreationContext authorCreationContext :
+				_authorCreationContexts) {
+
+			authorCreationContext.created(-1);
+		}
+	}
+
+	/**
+	 * Inserts the authors and their links. The books of every author are
+	 * resolved first, so that a book that fails to resolve fails the batch
+	 * before any row is inserted.
+	 */
+	private void _insert() throws SQLException {
+		List<List<Long>> bookIds = new ArrayList<>();
+		List<Object[]> rows = new ArrayList<>();
+
+		for (AuthorCreationContext authorCreationContext :
+				_authorCreationContexts) {
+
+			AuthorBuilder authorBuilder = authorCreationContext.build();
+
+			bookIds.add(_bookIds(authorBuilder));
+			rows.add(new Object[] {authorBuilder.name});
+		}
+
+		try (Connection conn = _authorService.dataSource.getConnection()) {
+			long[] ids = _INSERT_AUTHORS.execute(conn, rows);
+
+			for (int i = 0; i < ids.length; i++) {
+				_authorCreationContexts.get(i).created(ids[i]);
+
+				_authorService.invalidate(ids[i]);
+				_authorService.changed(ids[i], ChangeEvent.Kind.CREATED);
+			}
+
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					"INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
+						"values (?, ?)")) {
+
+				LongList links = new LongList();
+
+				for (int i = 0; i < ids.length; i++) {
+					long authorId = ids[i];
+
+					for (long bookId : bookIds.get(i)) {
+						preparedStatement.setLong(1, authorId);
+						preparedStatement.setLong(2, bookId);
+
+						preparedStatement.addBatch();
+
+						links.add(authorId);
+						links.add(bookId);
+					}
+				}
+
+				preparedStatement.executeBatch();
+
+				for (int i = 0; i < links.size(); i += 2) {
+					_authorService.linked(links.get(i), links.get(i + 1));
+				}
+			}
+		}
+	}
+
+	private static List<Long> _bookIds(AuthorBuilder authorBuilder) {
+		List<Long> bookIds = new ArrayList<>();
+
+		authorBuilder.books.forEach(
+			bc -> bookIds.add(bc.select("id").map(BookQuerier::id).get()));
+
+		return bookIds;
+	}
+
+}
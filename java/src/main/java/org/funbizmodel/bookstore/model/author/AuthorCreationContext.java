@@ -15,10 +15,14 @@
 package org.funbizmodel.bookstore.model.author;
 
 import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.service.ChangeEvent;
 import org.funbizmodel.bookstore.service.CorrectResult;
 import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.QueryBudget;
 import org.funbizmodel.bookstore.service.Result;
 import org.funbizmodel.bookstore.service.SqlCommand;
+import org.funbizmodel.bookstore.service.UnitOfWork;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -34,21 +38,49 @@ import java.util.stream.Stream;
 */
 class AuthorCreationContext implements AuthorContext {
 
-	private Connection _conn;
+	private AuthorService _authorService;
 	private final Consumer<AuthorBuilder> _consumer;
 	private AuthorBuilder _authorBuilder;
 	private volatile long _createdId = -1;
 	private SQLException _exception;
+	private AuthorCreationBatch _authorCreationBatch;
 
 	public AuthorCreationContext(
-		Connection conn, Consumer<AuthorBuilder> consumer) {
-		_conn = conn;
+		AuthorService authorService, Consumer<AuthorBuilder> consumer) {
+		_authorService = authorService;
 
 		_consumer = consumer;
 	}
 
+	public AuthorCreationContext(
+		AuthorService authorService, Consumer<AuthorBuilder> consumer,
+		AuthorCreationBatch authorCreationBatch) {
+
+		this(authorService, consumer);
+
+		_authorCreationBatch = authorCreationBatch;
+	}
+
 	@Override
 	public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+		return QueryBudget.run(
+			_authorService.settings()._queryBudget, () -> _meteredMap(mapper));
+	}
+
+	private <R> Result<R> _meteredMap(Function<AuthorQuerier, R> mapper) {
+		MetricsRegistry metricsRegistry =
+			_authorService.settings()._metricsRegistry;
+
+		if (metricsRegistry == null) {
+			return _map(mapper);
+		}
+
+		long start = System.nanoTime();
+
+		return metricsRegistry.recordSince("author.create", start, _map(mapper));
+	}
+
+	private <R> Result<R> _map(Function<AuthorQuerier, R> mapper) {
 		try {
 			if (_exception != null) {
 				throw _exception;
@@ -69,54 +101,78 @@ class AuthorCreationContext implements AuthorContext {
 		}
 	}
 
+	AuthorBuilder build() {
+		_authorBuilder = new AuthorBuilder();
+
+		_consumer.accept(_authorBuilder);
+
+		return _authorBuilder;
+	}
+
+	void created(long id) {
+		_createdId = id;
+	}
+
 	private long doInsert() throws SQLException {
-		if (_createdId == -1) {
-			_authorBuilder = new AuthorBuilder();
+		if (_authorCreationBatch != null) {
+			_authorCreationBatch.flush();
 
-			_consumer.accept(_authorBuilder);
+			return _createdId;
+		}
+
+		if (_createdId == -1) {
+			build();
 
 			String sql = createSQL(_authorBuilder);
 
-			PreparedStatement preparedStatement =
-				_conn.prepareStatement(
-					sql, Statement.RETURN_GENERATED_KEYS);
+			try (Connection conn = _authorService.dataSource.getConnection();
+				 PreparedStatement preparedStatement = conn.prepareStatement(
+					 sql, Statement.RETURN_GENERATED_KEYS)) {
 
-			int affectedRows = preparedStatement.executeUpdate();
+				int affectedRows = preparedStatement.executeUpdate();
 
-			if (affectedRows == 0) {
-				throw new SQLException("Failed to execute " + sql);
-			}
+				if (affectedRows == 0) {
+					throw new SQLException("Failed to execute " + sql);
+				}
 
-			try (ResultSet keysResult =
-					 preparedStatement.getGeneratedKeys()) {
+				try (ResultSet keysResult =
+						 preparedStatement.getGeneratedKeys()) {
 
-				keysResult.next();
+					keysResult.next();
 
-				_createdId = keysResult.getLong(1);
-			}
+					_createdId = keysResult.getLong(1);
+				}
 
-			Stream<Result<Long>> resultStream =
-				_authorBuilder.books.map(bc -> bc.map(BookQuerier::id));
+				UnitOfWork.afterRollback(() -> _createdId = -1);
 
-			resultStream.forEach(r -> {
-				Long bookId = r.get();
+				_authorService.invalidate(_createdId);
+				_authorService.changed(_createdId, ChangeEvent.Kind.CREATED);
 
-				PreparedStatement addBookStatement =
-					null;
-				try {
-					addBookStatement = _conn.prepareStatement(
-						"INSERT INTO AUTHOR_BOOK (authorId, bookId) values " +
-							"(?,?)");
-					addBookStatement.setLong(1, _createdId);
-					addBookStatement.setLong(2, bookId);
+				Stream<Result<Long>> resultStream =
+					_authorBuilder.books.map(
+						bc -> bc.select("id").map(BookQuerier::id));
 
-					addBookStatement.executeUpdate();
-				}
-				catch (SQLException e) {
-					throw new RuntimeException(e);
-				}
+				resultStream.forEach(r -> {
+					Long bookId = r.get();
+
+					try (PreparedStatement addBookStatement =
+							 conn.prepareStatement(
+								 "INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
+									 "values (?,?)")) {
 
-			});
+						addBookStatement.setLong(1, _createdId);
+						addBookStatement.setLong(2, bookId);
+
+						addBookStatement.executeUpdate();
+
+						_authorService.linked(_createdId, bookId);
+					}
+					catch (SQLException e) {
+						throw new RuntimeException(e);
+					}
+
+				});
+			}
 		}
 
 		return _createdId;
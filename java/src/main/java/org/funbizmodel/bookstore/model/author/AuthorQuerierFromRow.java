@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * An author row. A querier built from the id alone fetches the name the
+ * first time it is asked for. The books are either loaded together with the
+ * row, as asked by the fetch plan of the service, or queried on demand.
+ *
+* @author Carlos Sierra Andrés
+*/
+class AuthorQuerierFromRow implements AuthorQuerier {
+
+	private static final String _UNFETCHED = new String();
+
+	private final AuthorService _authorService;
+	private final long _id;
+	private volatile String _name;
+	private List<BookContext> _bookContexts;
+
+	public AuthorQuerierFromRow(AuthorService authorService, long id) {
+		this(authorService, id, _UNFETCHED);
+	}
+
+	public AuthorQuerierFromRow(
+		AuthorService authorService, long id, String name) {
+
+		_authorService = authorService;
+		_id = id;
+		_name = name;
+	}
+
+	@Override
+	public String id() {
+		return Long.toString(_id);
+	}
+
+	@Override
+	public String name() {
+		String name = _name;
+
+		if (name == _UNFETCHED) {
+			name = _authorService.fetchColumn(_id, "name");
+
+			_name = name;
+		}
+
+		return name;
+	}
+
+	@Override
+	public <R> Stream<R> books(Function<BookQuerier, R> function) {
+		if (_bookContexts != null) {
+			return _bookContexts.stream().map(bc -> bc.map(function).get());
+		}
+
+		try {
+			return _authorService.settings()._bookService.fromAuthor(
+				new AuthorService.AuthorContextFromQuerier(
+					_authorService, this)).
+				map(bc -> bc.map(function).get());
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Sets the books loaded together with the row. Must be called before the
+	 * querier is handed out.
+	 */
+	void setBookContexts(List<BookContext> bookContexts) {
+		_bookContexts = bookContexts;
+	}
+}
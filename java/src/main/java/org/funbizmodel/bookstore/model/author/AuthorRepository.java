@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.service.Service;
+
+import java.util.stream.Stream;
+
+/**
+ * The queries on authors that business code can run on any storage: the
+ * database behind {@link AuthorService}, the memory behind {@link
+ * InMemoryAuthorService} or the file behind {@link SnapshotAuthorService}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface AuthorRepository
+	extends Service<AuthorBuilder, AuthorQuerier, AuthorContext> {
+
+	public Stream<AuthorContext> fromBook(BookContext bookContext);
+
+	/**
+	 * Returns a view of this repository whose authors come with the
+	 * relationships in the given paths already loaded. Storages that answer
+	 * relationships from memory anyway return themselves.
+	 */
+	public default AuthorRepository include(String... paths) {
+		return this;
+	}
+
+}
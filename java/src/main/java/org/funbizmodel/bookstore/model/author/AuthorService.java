@@ -17,72 +17,383 @@ package org.funbizmodel.bookstore.model.author;
 import org.funbizmodel.bookstore.model.book.BookContext;
 import org.funbizmodel.bookstore.model.book.BookQuerier;
 import org.funbizmodel.bookstore.model.book.BookService;
+import org.funbizmodel.bookstore.service.ChangeEvent;
+import org.funbizmodel.bookstore.service.ChangePublisher;
+import org.funbizmodel.bookstore.service.ChunkSpliterator;
 import org.funbizmodel.bookstore.service.Context;
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.CursorTracker;
+import org.funbizmodel.bookstore.service.EntityCache;
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.FetchPlan;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.PendingWrite;
+import org.funbizmodel.bookstore.service.QueryBudget;
 import org.funbizmodel.bookstore.service.Result;
-import org.funbizmodel.bookstore.service.Service;
 import org.funbizmodel.bookstore.service.SqlCommand;
 import org.funbizmodel.bookstore.service.SqlCommandContext;
+import org.funbizmodel.bookstore.service.SqlCommandPlan;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Spliterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * @author Carlos Sierra Andrés
  */
-public class AuthorService
-	implements Service<AuthorBuilder, AuthorQuerier, AuthorContext> {
+public class AuthorService implements AuthorRepository {
+
+	public static final List<String> COLUMNS = Arrays.asList("id", "name");
+
+	public static final int DEFAULT_BOOKS_BATCH_SIZE = 100;
+
+	/**
+	 * The entity that change events of authors name.
+	 */
+	public static final String ENTITY_NAME = "author";
+
+	public static final List<String> RELATIONS = Arrays.asList("books");
+
+	/**
+	 * The statements of the operations of {@link AuthorCommandContext} on
+	 * the database.
+	 */
+	public static final String DELETE_SQL = "DELETE FROM AUTHOR";
+
+	public static final String INSERT_BOOK_SQL =
+		"INSERT INTO AUTHOR_BOOK (authorid, bookid)\n" +
+			"SELECT id, ? from AUTHOR";
+
+	public static final String UPDATE_NAME_SQL = "UPDATE AUTHOR SET NAME=?";
+
+	final DataSource dataSource;
+	final FetchPlan fetchPlan;
+
+	private final AtomicReference<AuthorServiceSettings> _settings;
+
+	/**
+	 * Checks that the plan only names relationships of authors, and of the
+	 * entities they lead to.
+	 *
+	 * @throws IllegalArgumentException if it names any other
+	 */
+	public static void checkFetchPlan(FetchPlan fetchPlan) {
+		if (fetchPlan.isEmpty()) {
+			return;
+		}
+
+		fetchPlan.checkRelations(RELATIONS);
+
+		BookService.checkFetchPlan(fetchPlan.get("books"));
+	}
 
-	BookService bookService;
-	Connection conn;
-	
 	public void setBookService(BookService bookService) {
-		this.bookService = bookService;
+		_configure(settings -> settings._bookService = bookService);
+	}
+
+	/**
+	 * Publishes a {@link ChangeEvent} for every author created, updated or
+	 * deleted, and for both ends of every link added to a book, through the
+	 * given publisher, once the write commits.
+	 */
+	public void setChangePublisher(ChangePublisher changePublisher) {
+		_configure(settings -> settings._changePublisher = changePublisher);
+	}
+
+	/**
+	 * Sets how many authors streamed by a service with a fetch plan get
+	 * their relationships loaded together.
+	 */
+	public void setBooksBatchSize(int booksBatchSize) {
+		_configure(settings -> settings._booksBatchSize = booksBatchSize);
+	}
+
+	/**
+	 * Serves the rows of the contexts returned by {@link #withId(String)}
+	 * from the given cache, filling it on misses. Executing a command on an
+	 * author or creating one invalidates its id.
+	 */
+	public void setEntityCache(EntityCache<AuthorQuerier> entityCache) {
+		_configure(settings -> settings._entityCache = entityCache);
+	}
+
+	/**
+	 * Sets the JDBC fetch size of the forward only, read only cursors behind
+	 * the streams of this service. Zero leaves the driver default.
+	 */
+	public void setFetchSize(int fetchSize) {
+		_configure(settings -> settings._fetchSize = fetchSize);
+	}
+
+	/**
+	 * Records the latency of the lookups, commands and creations of this
+	 * service, and the rows it reads, in the given registry. Nothing is
+	 * recorded without one.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		_configure(settings -> settings._metricsRegistry = metricsRegistry);
+	}
+
+	/**
+	 * Runs every top level {@code map} and {@code execute} of the contexts of
+	 * this service, and {@link #execute(Stream, SqlCommand)}, as a pipeline
+	 * of the given budget.
+	 */
+	public void setQueryBudget(QueryBudget queryBudget) {
+		_configure(settings -> settings._queryBudget = queryBudget);
+	}
+
+	/**
+	 * Tracks the cursors behind the streams of this service with the given
+	 * tracker instead of the {@link CursorTracker#getDefault() default} one,
+	 * e.g. to record where leaked streams were opened.
+	 */
+	public void setCursorTracker(CursorTracker cursorTracker) {
+		_configure(settings -> settings._cursorTracker = cursorTracker);
 	}
 
-	public AuthorService(Connection conn) {
-		this.conn = conn;
+	/**
+	 * Queues the authors created from now on in the given queue, which
+	 * inserts them in the background, in batches shared with the other
+	 * services writing behind to the same queue. Mapping a queued author
+	 * waits for its batch to be committed. The builders run on the flusher
+	 * thread of the queue, and the authors are not part of any unit of work
+	 * of the creating thread. Without a queue authors are inserted when
+	 * first mapped.
+	 */
+	public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+		_configure(settings -> settings._writeBehindQueue = writeBehindQueue);
+	}
+
+	public AuthorService(DataSource dataSource) {
+		this(
+			dataSource, new AtomicReference<>(new AuthorServiceSettings()),
+			FetchPlan.NONE);
+
+		_configure(
+			settings -> settings._pendingAuthorsBatcher =
+				pendingAuthorContexts -> PendingAuthorContext.write(
+					this, pendingAuthorContexts));
+	}
+
+	private AuthorService(
+		DataSource dataSource, AtomicReference<AuthorServiceSettings> settings,
+		FetchPlan fetchPlan) {
+
+		this.dataSource = dataSource;
+		this.fetchPlan = fetchPlan;
+
+		_settings = settings;
+	}
+
+	/**
+	 * Returns a view of this service whose authors come with the
+	 * relationships in the given paths, e.g. {@code "books"} or {@code
+	 * "books.authors"}, already loaded, so that their queriers answer them
+	 * from memory. Each level costs a single join per lookup, or per batch
+	 * of streamed authors, however many entities it holds. Authors loaded
+	 * this way bypass the entity cache.
+	 *
+	 * <p>
+	 * The view shares the settings of this service, so setters called on
+	 * either apply to both.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if a path names an unknown
+	 *         relationship
+	 */
+	@Override
+	public AuthorService include(String... paths) {
+		FetchPlan fetchPlan = FetchPlan.of(paths);
+
+		checkFetchPlan(fetchPlan);
+
+		return new AuthorService(dataSource, _settings, fetchPlan);
 	}
 
 	@Override
 	public AuthorContext create(Consumer<AuthorBuilder> consumer) {
+		if (settings()._writeBehindQueue != null) {
+			return _createBehind(consumer);
+		}
 
-		return new AuthorCreationContext(conn, consumer);
+		return new AuthorCreationContext(this, consumer);
 	}
 
 	@Override
 	public Stream<AuthorContext> create(Consumer<AuthorBuilder>... consumers) {
-		return Stream.of(consumers).map(this::create);
+		return create(Stream.of(consumers));
 	}
 
+	/**
+	 * Creates the authors in batches as large as a single multi-row insert,
+	 * as soon as any of the contexts of a batch is mapped, or queues them
+	 * all if writing behind. The consumers of a batch are only read once the
+	 * contexts of the previous one are consumed from the returned stream.
+	 */
 	@Override
 	public Stream<AuthorContext> create(
 		Stream<Consumer<AuthorBuilder>> consumers) {
 
-		return consumers.map(this::create);
+		if (settings()._writeBehindQueue != null) {
+			return consumers.map(this::_createBehind).collect(
+				Collectors.toList()).stream();
+		}
+
+		return ChunkSpliterator.map(
+			consumers, AuthorCreationBatch.MAX_SIZE,
+			chunk -> new AuthorCreationBatch(this).addAll(chunk));
+	}
+
+	private AuthorContext _createBehind(Consumer<AuthorBuilder> consumer) {
+		PendingAuthorContext pendingAuthorContext = new PendingAuthorContext(
+			this, consumer);
+
+		settings()._writeBehindQueue.add(pendingAuthorContext);
+
+		return pendingAuthorContext;
 	}
 
 	@Override
 	public AuthorContext withId(String id) {
-		return new OnlyAuthorContext(conn, bookService, id);
+		return new OnlyAuthorContext(this, id);
 	}
 
 	@Override
 	public Stream<AuthorContext> all() {
-		return null;
+		return MetricsRegistry.timeStream(
+			settings()._metricsRegistry, "author.all", this::_all);
+	}
+
+	private Stream<AuthorContext> _all() {
+		try {
+			return _query("SELECT * FROM AUTHOR", ps -> {});
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Executes the command over all the given authors at once, in one
+	 * transaction. Each of its statements runs over whole chunks of ids
+	 * rather than once per author; see {@link
+	 * SqlCommandPlan#execute(Connection, long[])}. Returns a result per
+	 * context, in stream order: the refreshed author, or the error that made
+	 * its id unreadable or the transaction roll back.
+	 *
+	 * <p>
+	 * Inside a {@link UnitOfWork} the statements join its transaction, and a
+	 * failure is thrown so that the whole unit rolls back.
+	 * </p>
+	 */
+	public List<Result<AuthorContext>> execute(
+		Stream<AuthorContext> authorContexts, SqlCommand command) {
+
+		return QueryBudget.run(
+			settings()._queryBudget,
+			() -> MetricsRegistry.time(
+				settings()._metricsRegistry, "author.executeAll",
+				() -> _execute(authorContexts, command)));
+	}
+
+	private List<Result<AuthorContext>> _execute(
+		Stream<AuthorContext> authorContexts, SqlCommand command) {
+
+		List<Result<String>> idResults = authorContexts.map(
+			this::_id).collect(Collectors.toList());
+
+		long[] ids = idResults.stream().filter(
+			r -> r.getErrors().isEmpty()).mapToLong(
+				r -> Long.parseLong(r.get())).toArray();
+
+		SqlCommandPlan sqlCommandPlan = SqlCommandPlan.compile(command);
+
+		List<String> errors = Collections.emptyList();
+		boolean joined = false;
+
+		try (Connection conn = dataSource.getConnection()) {
+			joined = !conn.getAutoCommit();
+
+			if (joined) {
+				sqlCommandPlan.execute(conn, ids);
+			}
+			else {
+				conn.setAutoCommit(false);
+
+				try {
+					sqlCommandPlan.execute(conn, ids);
+
+					conn.commit();
+				}
+				catch (SQLException | RuntimeException e) {
+					conn.rollback();
+
+					throw e;
+				}
+				finally {
+					conn.setAutoCommit(true);
+				}
+			}
+		}
+		catch (SQLException | RuntimeException e) {
+			if (joined) {
+				throw (e instanceof RuntimeException) ?
+					(RuntimeException)e : new RuntimeException(e);
+			}
+
+			errors = Collections.singletonList(String.valueOf(e.getMessage()));
+		}
+		finally {
+			for (long id : ids) {
+				invalidate(id);
+			}
+		}
+
+		if (errors.isEmpty()) {
+			changed(ids, sqlCommandPlan);
+		}
+
+		List<Result<AuthorContext>> results = new ArrayList<>(
+			idResults.size());
+
+		for (Result<String> idResult : idResults) {
+			if (!idResult.getErrors().isEmpty()) {
+				results.add(_errorResult(idResult.getErrors()));
+			}
+			else if (!errors.isEmpty()) {
+				results.add(_errorResult(errors));
+			}
+			else {
+				results.add(new CorrectResult<>(withId(idResult.get())));
+			}
+		}
+
+		return results;
 	}
 
 	public static SqlCommand DELETE = cc -> {
-		cc.addSql("DELETE FROM AUTHOR");
+		AuthorCommandContext.of(cc).delete();
 	};
 
 	public static SqlCommand update(
@@ -95,21 +406,21 @@ public class AuthorService
 		SqlCommand command = (cc) -> {};
 
 		if (authorUpdater.newName != null) {
-			command = command.andThen(cc -> {
-				//FIXME: little bobby tables
-				cc.addSql(
-					"UPDATE AUTHOR SET NAME='" + authorUpdater.newName+"'");
-			});
+			command = command.andThen(
+				cc -> AuthorCommandContext.of(cc).rename(
+					authorUpdater.newName));
 		}
 
 		Stream<BookContext> addedBooks = authorUpdater.addedBooks;
 
 		if (addedBooks != null) {
 			command = command.andThen(cc -> {
+				AuthorCommandContext authorCommandContext =
+					AuthorCommandContext.of(cc);
+
 				addedBooks.forEach(bc ->
-					cc.addSql("INSERT INTO AUTHOR_BOOK (authorid, bookid)\n" +
-						"SELECT id," + bc.map(BookQuerier::id).get() +
-							" from AUTHOR")
+					authorCommandContext.addBook(
+						bc.select("id").map(BookQuerier::id).get())
 				);
 			});
 		}
@@ -117,61 +428,143 @@ public class AuthorService
 		return command;
 	}
 
+	@Override
 	public Stream<AuthorContext> fromBook(BookContext bookContext) {
-		Result<Long> idResult = bookContext.map(BookQuerier::id);
+		return MetricsRegistry.timeStream(
+			settings()._metricsRegistry, "author.fromBook",
+			() -> _fromBook(bookContext));
+	}
+
+	private Stream<AuthorContext> _fromBook(BookContext bookContext) {
+		Result<Long> idResult = bookContext.select("id").map(
+			BookQuerier::id);
 
 		if (idResult.getErrors().size() > 0) {
 			return Stream.<AuthorContext>empty();
 		}
 
 		try {
-
-			PreparedStatement preparedStatement = conn.prepareStatement(
+			return _query(
 				"SELECT * FROM AUTHOR A INNER JOIN AUTHOR_BOOK AB ON " +
-					"A.id=AB.authorId WHERE AB.bookId = ?");
+					"A.id=AB.authorId WHERE AB.bookId = ?",
+				ps -> ps.setLong(1, idResult.get()));
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Streams the authors returned by the query through a cursor. The
+	 * statement is closed and the borrowed connection given back once the
+	 * stream is exhausted or closed, or by the cursor tracker if the stream
+	 * is dropped before.
+	 */
+	private Stream<AuthorContext> _query(
+			String sql, ParameterSetter parameterSetter)
+		throws SQLException {
+
+		Connection conn = dataSource.getConnection();
+		PreparedStatement preparedStatement = null;
+
+		try {
+			preparedStatement = conn.prepareStatement(
+				sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			int fetchSize = settings()._fetchSize;
+
+			if (fetchSize > 0) {
+				preparedStatement.setFetchSize(fetchSize);
+			}
 
-			preparedStatement.setLong(1, idResult.get());
+			parameterSetter.set(preparedStatement);
+
+			AuthorContextSpliterator authorContextSpliterator =
+				new AuthorContextSpliterator(
+					this, conn, preparedStatement,
+					preparedStatement.executeQuery());
+
+			return settings()._cursorTracker.track(
+				StreamSupport.stream(authorContextSpliterator, false),
+				authorContextSpliterator,
+				authorContextSpliterator.getCursor());
+		}
+		catch (SQLException | RuntimeException e) {
+			if (preparedStatement != null) {
+				preparedStatement.close();
+			}
+
+			conn.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Resolves the authors of all the given books with a single join, keyed
+	 * by book id. Books without authors are absent from the returned map.
+	 */
+	public Map<Long, List<AuthorContext>> fromBooks(Collection<Long> bookIds) {
+		return fromBooks(bookIds, FetchPlan.NONE);
+	}
+
+	/**
+	 * Resolves the authors of all the given books as {@link
+	 * #fromBooks(Collection)} does, loading the relationships of the plan
+	 * for all of them with a single join per level.
+	 */
+	public Map<Long, List<AuthorContext>> fromBooks(
+		Collection<Long> bookIds, FetchPlan fetchPlan) {
+
+		return MetricsRegistry.time(
+			settings()._metricsRegistry, "author.fromBooks",
+			() -> _fromBooks(bookIds, fetchPlan));
+	}
+
+	private Map<Long, List<AuthorContext>> _fromBooks(
+		Collection<Long> bookIds, FetchPlan fetchPlan) {
+
+		Map<Long, List<AuthorContext>> authorContexts = new HashMap<>();
+
+		if (bookIds.isEmpty()) {
+			return authorContexts;
+		}
+
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "SELECT AB.bookId, A.* FROM TABLE(X BIGINT=?) T " +
+					 "INNER JOIN AUTHOR_BOOK AB ON T.X=AB.bookId " +
+					 "INNER JOIN AUTHOR A ON A.id=AB.authorId")) {
+
+			preparedStatement.setObject(1, bookIds.toArray(new Long[0]));
 
 			ResultSet resultSet = preparedStatement.executeQuery();
 
-			return StreamSupport.stream(new Spliterator<AuthorContext>() {
-				@Override
-				public boolean tryAdvance(
-					Consumer<? super AuthorContext> action) {
-
-					try {
-						if (!resultSet.next())  {
-							return false;
-						}
-						action.accept(
-							new OnlyAuthorContext(
-									conn, bookService,
-									Long.toString(resultSet.getLong("id"))));
-					}
-					catch (SQLException e) {
-						e.printStackTrace();
-
-						return false;
-					}
-
-					return true;
-				}
+			List<AuthorQuerierFromRow> authorQueriers = new ArrayList<>();
 
-				@Override
-				public Spliterator<AuthorContext> trySplit() {
-					return null;
-				}
+			MetricsRegistry metricsRegistry = settings()._metricsRegistry;
 
-				@Override
-				public long estimateSize() {
-					return -1;
-				}
+			while (resultSet.next()) {
+				AuthorQuerierFromRow authorQuerier = new AuthorQuerierFromRow(
+					this, resultSet.getLong("id"),
+					resultSet.getString("name"));
+
+				authorQueriers.add(authorQuerier);
+
+				authorContexts.computeIfAbsent(
+					resultSet.getLong("bookId"), id -> new ArrayList<>()).
+					add(new AuthorContextFromQuerier(this, authorQuerier));
 
-				@Override
-				public int characteristics() {
-					return IMMUTABLE;
+				if (metricsRegistry != null) {
+					metricsRegistry.increment("author.rows");
 				}
-			}, false);
+			}
+
+			preload(authorQueriers, fetchPlan);
+
+			return authorContexts;
 		}
 		catch (SQLException e) {
 			e.printStackTrace();
@@ -180,20 +573,217 @@ public class AuthorService
 		}
 	}
 
-	private static class DefaultSqlCommandContext
-		implements SqlCommandContext {
+	/**
+	 * Reads a single column of an author, for queriers whose projection left
+	 * it out.
+	 */
+	String fetchColumn(long id, String column) {
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select " + column + " from AUTHOR where id=?")) {
+
+			preparedStatement.setLong(1, id);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					throw new IllegalStateException(
+						"No author with id " + id);
+				}
+
+				return resultSet.getString(1);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the id of the context, without a query for those created by
+	 * {@link #withId(String)}.
+	 */
+	private Result<String> _id(AuthorContext authorContext) {
+		if (authorContext instanceof OnlyAuthorContext) {
+			return new CorrectResult<>(
+				((OnlyAuthorContext)authorContext).getId());
+		}
+
+		return authorContext.select("id").map(AuthorQuerier::id);
+	}
 
-		List<String> sqls = new ArrayList<>();
-		List<String> inserts = new ArrayList<>();
+	private static <R> Result<R> _errorResult(List<String> errors) {
+		ErrorResult<R> errorResult = new ErrorResult<>();
+
+		errorResult.addErrors(errors);
+
+		return errorResult;
+	}
+
+	/**
+	 * Loads the relationships of the plan for all the given authors, with a
+	 * single join per level.
+	 */
+	void preload(
+		List<AuthorQuerierFromRow> authorQueriers, FetchPlan fetchPlan) {
+
+		if (!fetchPlan.includes("books") || authorQueriers.isEmpty()) {
+			return;
+		}
+
+		Set<Long> ids = new LinkedHashSet<>();
+
+		for (AuthorQuerierFromRow authorQuerier : authorQueriers) {
+			ids.add(Long.parseLong(authorQuerier.id()));
+		}
+
+		Map<Long, List<BookContext>> bookContexts =
+			settings()._bookService.fromAuthors(ids, fetchPlan.get("books"));
+
+		for (AuthorQuerierFromRow authorQuerier : authorQueriers) {
+			authorQuerier.setBookContexts(
+				bookContexts.getOrDefault(
+					Long.parseLong(authorQuerier.id()),
+					Collections.emptyList()));
+		}
+	}
+
+	/**
+	 * Returns the settings of this service as they are now.
+	 */
+	AuthorServiceSettings settings() {
+		return _settings.get();
+	}
+
+	/**
+	 * Publishes the change of the author once the unit of work running, if
+	 * any, commits.
+	 */
+	void changed(long id, ChangeEvent.Kind kind) {
+		_publish(ENTITY_NAME, id, kind);
+	}
+
+	/**
+	 * Publishes what the command changed on each of the authors: the
+	 * statements of {@link #DELETE} delete them, those of {@link
+	 * #update(Consumer)} adding books link them, and any other updates them.
+	 */
+	void changed(long[] ids, SqlCommandPlan sqlCommandPlan) {
+		if (settings()._changePublisher != null) {
+			sqlCommandPlan.replay(new ChangedCommandContext(ids));
+		}
+	}
+
+	/**
+	 * Evicts the author from the entity cache right away, and again once
+	 * the unit of work running, if any, commits, as a concurrent read may
+	 * cache the row as it was until then.
+	 */
+	void invalidate(long id) {
+		EntityCache<AuthorQuerier> entityCache = settings()._entityCache;
+
+		if (entityCache != null) {
+			entityCache.invalidate(id);
+
+			UnitOfWork.afterCommit(() -> entityCache.invalidate(id));
+		}
+	}
+
+	void linked(long authorId, long bookId) {
+		_publish(ENTITY_NAME, authorId, ChangeEvent.Kind.LINKED);
+		_publish(BookService.ENTITY_NAME, bookId, ChangeEvent.Kind.LINKED);
+	}
+
+	/**
+	 * Replaces the settings this service shares with its views with a copy
+	 * changed by the consumer.
+	 */
+	private void _configure(Consumer<AuthorServiceSettings> consumer) {
+		_settings.updateAndGet(settings -> settings.with(consumer));
+	}
+
+	private void _publish(String entity, long id, ChangeEvent.Kind kind) {
+		ChangePublisher changePublisher = settings()._changePublisher;
+
+		if (changePublisher == null) {
+			return;
+		}
+
+		ChangeEvent changeEvent = new ChangeEvent(entity, id, kind);
+
+		UnitOfWork.afterCommit(() -> changePublisher.publish(changeEvent));
+	}
+
+	private class ChangedCommandContext implements SqlCommandContext {
+
+		private final long[] _ids;
+
+		public ChangedCommandContext(long[] ids) {
+			_ids = ids;
+		}
 
 		@Override
-		public void addSql(String sql) {
-			sqls.add(sql);
+		public void addSql(String template, Object... parameters) {
+			for (long id : _ids) {
+				if (template.equals(DELETE_SQL)) {
+					changed(id, ChangeEvent.Kind.DELETED);
+				}
+				else if (template.equals(INSERT_BOOK_SQL)) {
+					linked(id, ((Number)parameters[0]).longValue());
+				}
+				else {
+					changed(id, ChangeEvent.Kind.UPDATED);
+				}
+			}
+		}
+
+		@Override
+		public void addInsertSql(String template, Object... parameters) {
+			for (long id : _ids) {
+				changed(id, ChangeEvent.Kind.UPDATED);
+			}
+		}
+
+	}
+
+	private interface ParameterSetter {
+
+		public void set(PreparedStatement preparedStatement)
+			throws SQLException;
+
+	}
+
+	static class AuthorContextFromQuerier implements AuthorContext {
+		private final AuthorService _authorService;
+		private final AuthorQuerier _querier;
+
+		public AuthorContextFromQuerier(
+			AuthorService authorService, AuthorQuerier querier) {
+
+			_authorService = authorService;
+			_querier = querier;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+			QueryBudget queryBudget = _authorService.settings()._queryBudget;
+
+			if (queryBudget == null) {
+				return new CorrectResult<>(mapper.apply(_querier));
+			}
+
+			return queryBudget.run(
+				() -> new CorrectResult<>(mapper.apply(_querier)));
 		}
 
 		@Override
-		public void addInsertSql(String sql) {
-			inserts.add(sql);
+		public AuthorContext execute(SqlCommand command) {
+			AuthorContext authorContext = _authorService.withId(_querier.id());
+
+			authorContext.execute(command);
+
+			return authorContext;
 		}
+
 	}
+
 }
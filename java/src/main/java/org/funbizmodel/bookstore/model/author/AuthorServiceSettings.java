@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.funbizmodel.bookstore.service.ChangePublisher;
+import org.funbizmodel.bookstore.service.CursorTracker;
+import org.funbizmodel.bookstore.service.EntityCache;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.PendingWrite;
+import org.funbizmodel.bookstore.service.QueryBudget;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
+
+import java.util.function.Consumer;
+
+/**
+ * The configuration of an {@link AuthorService}, shared by reference with
+ * the views derived from it.
+ *
+ * <p>
+ * Settings are never changed once a service holds them: configuring a
+ * service, or any of its views, replaces the settings they share with a
+ * changed copy, see {@link #with(Consumer)}, so every lookup reads a
+ * consistent configuration.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+class AuthorServiceSettings implements Cloneable {
+
+	BookService _bookService;
+	int _booksBatchSize = AuthorService.DEFAULT_BOOKS_BATCH_SIZE;
+	ChangePublisher _changePublisher;
+	CursorTracker _cursorTracker = CursorTracker.getDefault();
+	EntityCache<AuthorQuerier> _entityCache;
+	int _fetchSize;
+	MetricsRegistry _metricsRegistry;
+	PendingWrite.Batcher<PendingAuthorContext> _pendingAuthorsBatcher;
+	QueryBudget _queryBudget;
+	WriteBehindQueue _writeBehindQueue;
+
+	/**
+	 * Returns a copy of these settings changed by the consumer.
+	 */
+	public AuthorServiceSettings with(
+		Consumer<AuthorServiceSettings> consumer) {
+
+		AuthorServiceSettings authorServiceSettings;
+
+		try {
+			authorServiceSettings = (AuthorServiceSettings)clone();
+		}
+		catch (CloneNotSupportedException cnse) {
+			throw new IllegalStateException(cnse);
+		}
+
+		consumer.accept(authorServiceSettings);
+
+		return authorServiceSettings;
+	}
+
+}
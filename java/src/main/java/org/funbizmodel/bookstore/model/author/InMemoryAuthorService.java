@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.InMemoryBookstore;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.InMemoryBookService;
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * The authors of an {@link InMemoryBookstore}, answering the same queries
+ * as {@link AuthorService} without a database.
+ *
+ * <p>
+ * Commands run the operations of {@link AuthorCommandContext} that {@link
+ * AuthorService#DELETE} and {@link AuthorService#update(Consumer)} add, all
+ * of a command at once. Commands adding their own SQL are not supported,
+ * as there is no database to run it on. Contexts read the
+ * store every time they are mapped, so they always see its latest state.
+ * As with {@link AuthorService}, creations happen the first time a created
+ * context is mapped and authors are listed in id order.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class InMemoryAuthorService implements AuthorRepository {
+
+	private InMemoryBookService _bookService;
+	private final InMemoryBookstore _bookstore;
+
+	public InMemoryAuthorService(InMemoryBookstore bookstore) {
+		_bookstore = bookstore;
+	}
+
+	public void setBookService(InMemoryBookService bookService) {
+		_bookService = bookService;
+	}
+
+	@Override
+	public AuthorContext create(Consumer<AuthorBuilder> consumer) {
+		return new AuthorCreationContextInMemory(consumer);
+	}
+
+	@Override
+	public Stream<AuthorContext> create(Consumer<AuthorBuilder>... consumers) {
+		return create(Stream.of(consumers));
+	}
+
+	@Override
+	public Stream<AuthorContext> create(
+		Stream<Consumer<AuthorBuilder>> consumers) {
+
+		return consumers.map(this::create).collect(
+			Collectors.toList()).stream();
+	}
+
+	@Override
+	public AuthorContext withId(String id) {
+		return new StoredAuthorContext(Long.parseLong(id));
+	}
+
+	@Override
+	public Stream<AuthorContext> all() {
+		return _contexts(
+			LongStream.rangeClosed(1, _bookstore.getLastAuthorId()).filter(
+				_bookstore::hasAuthor));
+	}
+
+	@Override
+	public Stream<AuthorContext> fromBook(BookContext bookContext) {
+		Result<Long> idResult = bookContext.select("id").map(BookQuerier::id);
+
+		if (idResult.getErrors().size() > 0) {
+			return Stream.empty();
+		}
+
+		return _contexts(
+			LongStream.of(_bookstore.getAuthorIds(idResult.get())));
+	}
+
+	/**
+	 * Returns the author as it is now, or {@code null} if it does not exist.
+	 */
+	public AuthorQuerier read(long authorId) {
+		String name = _bookstore.getAuthorName(authorId);
+
+		if (name == null) {
+			return null;
+		}
+
+		return new StoredAuthorQuerier(authorId, name);
+	}
+
+	private Stream<AuthorContext> _contexts(LongStream authorIds) {
+		return authorIds.mapToObj(StoredAuthorContext::new);
+	}
+
+	private class AuthorCreationContextInMemory implements AuthorContext {
+
+		private final Consumer<AuthorBuilder> _consumer;
+		private Result<Long> _idResult;
+
+		public AuthorCreationContextInMemory(Consumer<AuthorBuilder> consumer) {
+			_consumer = consumer;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+			return _create().flatMap(
+				id -> new StoredAuthorContext(id).map(mapper));
+		}
+
+		@Override
+		public AuthorContext execute(SqlCommand command) {
+			return this;
+		}
+
+		private synchronized Result<Long> _create() {
+			if (_idResult == null) {
+				_idResult = _bookstore.execute(() -> {
+					AuthorBuilder authorBuilder = new AuthorBuilder();
+
+					_consumer.accept(authorBuilder);
+
+					long authorId = _bookstore.addAuthor(authorBuilder.name);
+
+					authorBuilder.books.forEach(
+						bc -> _bookstore.link(
+							authorId,
+							bc.select("id").map(BookQuerier::id).get()));
+
+					return authorId;
+				});
+			}
+
+			return _idResult;
+		}
+
+	}
+
+	private class StoredAuthorContext implements AuthorContext {
+
+		private final long _authorId;
+
+		public StoredAuthorContext(long authorId) {
+			_authorId = authorId;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+			AuthorQuerier authorQuerier = read(_authorId);
+
+			if (authorQuerier == null) {
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError("No author with id " + _authorId);
+
+				return errorResult;
+			}
+
+			return new CorrectResult<>(mapper.apply(authorQuerier));
+		}
+
+		/**
+		 * Runs all the operations of the command or, if one fails, none.
+		 *
+		 * @throws RuntimeException if an operation fails
+		 * @throws UnsupportedOperationException if the command adds SQL
+		 */
+		@Override
+		public AuthorContext execute(SqlCommand command) {
+			_bookstore.execute(() -> {
+				command.accept(new StoreCommandContext(_authorId));
+
+				return null;
+			}).get();
+
+			return this;
+		}
+
+	}
+
+	private class StoredAuthorQuerier implements AuthorQuerier {
+
+		private final long _id;
+		private final String _name;
+
+		public StoredAuthorQuerier(long id, String name) {
+			_id = id;
+			_name = name;
+		}
+
+		@Override
+		public String id() {
+			return String.valueOf(_id);
+		}
+
+		@Override
+		public String name() {
+			return _name;
+		}
+
+		@Override
+		public <R> Stream<R> books(Function<BookQuerier, R> function) {
+			return LongStream.of(_bookstore.getBookIds(_id)).mapToObj(
+				_bookService::read).filter(Objects::nonNull).map(function);
+		}
+
+	}
+
+	/**
+	 * Runs each operation of a command on the author as soon as it is added.
+	 * Like their restricted SQL counterparts, operations on an author that
+	 * no longer exists do nothing.
+	 */
+	private class StoreCommandContext implements AuthorCommandContext {
+
+		private final long _authorId;
+
+		public StoreCommandContext(long authorId) {
+			_authorId = authorId;
+		}
+
+		@Override
+		public void addBook(long bookId) {
+			if (_bookstore.hasAuthor(_authorId)) {
+				_bookstore.link(_authorId, bookId);
+			}
+		}
+
+		@Override
+		public void delete() {
+			_bookstore.deleteAuthor(_authorId);
+		}
+
+		@Override
+		public void rename(String name) {
+			_bookstore.renameAuthor(_authorId, name);
+		}
+
+		@Override
+		public void addSql(String template, Object... parameters) {
+			throw new UnsupportedOperationException(
+				"The in-memory bookstore cannot run " + template);
+		}
+
+		@Override
+		public void addInsertSql(String template, Object... parameters) {
+			throw new UnsupportedOperationException(
+				"The in-memory bookstore cannot run " + template);
+		}
+
+	}
+
+}
@@ -14,48 +14,84 @@
 
 package org.funbizmodel.bookstore.model.author;
 
-import org.funbizmodel.bookstore.model.book.BookQuerier;
-import org.funbizmodel.bookstore.model.book.BookService;
 import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.EntityCache;
 import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.FetchPlan;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.Projection;
+import org.funbizmodel.bookstore.service.QueryBudget;
 import org.funbizmodel.bookstore.service.Result;
 import org.funbizmodel.bookstore.service.SqlCommand;
-import org.funbizmodel.bookstore.service.SqlCommandContext;
+import org.funbizmodel.bookstore.service.SqlCommandPlan;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 /**
+ * An author known by id. The row is read the first time the context is
+ * mapped and kept as an immutable snapshot for later mappings, until a
+ * command is executed on the context. Only the columns of its projection are
+ * read; the rest are fetched if a mapping asks for them.
+ *
 * @author Carlos Sierra Andrés
 */
 class OnlyAuthorContext implements AuthorContext {
 	private String _id;
-	private Connection _conn;
-	private BookService _bookService;
+	private AuthorService _authorService;
+	private DataSource _dataSource;
+	private final Projection _projection;
+	private volatile AuthorQuerier _authorQuerier;
+
+	public OnlyAuthorContext(AuthorService authorService, String id) {
+		this(authorService, id, Projection.ALL);
+	}
 
 	public OnlyAuthorContext(
-		Connection conn, BookService bookService, String id) {
-		_conn = conn;
-		_bookService = bookService;
+		AuthorService authorService, String id, Projection projection) {
+
+		_authorService = authorService;
+		_dataSource = authorService.dataSource;
 		_id = id;
+		_projection = projection;
 	}
 
 	@Override
 	public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+		return QueryBudget.run(
+			_authorService.settings()._queryBudget, () -> _meteredMap(mapper));
+	}
+
+	private <R> Result<R> _meteredMap(Function<AuthorQuerier, R> mapper) {
+		MetricsRegistry metricsRegistry =
+			_authorService.settings()._metricsRegistry;
+
+		if (metricsRegistry == null) {
+			return _map(mapper);
+		}
+
+		long start = System.nanoTime();
+
+		return metricsRegistry.recordSince("author.map", start, _map(mapper));
+	}
+
+	private <R> Result<R> _map(Function<AuthorQuerier, R> mapper) {
 
 		try {
-			return new CorrectResult<R>(
-				withResultSet(
-					(resultSet) ->
-						mapper.apply(
-							new AuthorQuerierFromResult(resultSet))));
+			AuthorQuerier authorQuerier = _authorQuerier;
+
+			if (authorQuerier == null) {
+				authorQuerier = _load();
+
+				_authorQuerier = authorQuerier;
+			}
+
+			return new CorrectResult<R>(mapper.apply(authorQuerier));
 		}
 		catch (Exception e) {
 
@@ -67,114 +103,107 @@ class OnlyAuthorContext implements AuthorContext {
 		}
 	}
 
-	@Override
-	public AuthorContext execute(SqlCommand command) {
+	String getId() {
+		return _id;
+	}
 
-		List<String> sqls = new ArrayList<>();
-		List<String> inserts = new ArrayList<>();
+	/**
+	 * Returns a context reading only the given columns of {@link
+	 * AuthorService#COLUMNS}, or this context if its row is already read.
+	 */
+	@Override
+	public AuthorContext select(String... columns) {
+		if (_authorQuerier != null) {
+			return this;
+		}
 
-		command.accept(new SqlCommandContext() {
-			@Override
-			public void addSql(String sql) {
-				sqls.add(sql);
-			}
+		return new OnlyAuthorContext(
+			_authorService, _id,
+			Projection.of(AuthorService.COLUMNS, columns));
+	}
 
-			@Override
-			public void addInsertSql(String sql) {
-				inserts.add(sql);
-			}
-		});
+	@Override
+	public AuthorContext execute(SqlCommand command) {
+		return QueryBudget.run(
+			_authorService.settings()._queryBudget,
+			() -> MetricsRegistry.time(
+				_authorService.settings()._metricsRegistry, "author.execute",
+				() -> _execute(command)));
+	}
 
-		for (String sql : sqls) {
-			String query = sql + " WHERE id = " + _id;
+	private AuthorContext _execute(SqlCommand command) {
+		SqlCommandPlan sqlCommandPlan = SqlCommandPlan.compile(command);
 
-			try {
-				PreparedStatement preparedStatement =
-					_conn.prepareStatement(query);
+		long id = Long.parseLong(_id);
 
-				preparedStatement.executeUpdate();
-			}
-			catch (SQLException e) {
-				//TODO: append errors to context
-				throw new RuntimeException(e);
-			}
+		try (Connection conn = _dataSource.getConnection()) {
+			sqlCommandPlan.execute(conn, id);
 		}
+		catch (SQLException e) {
+			//TODO: append errors to context
+			throw new RuntimeException(e);
+		}
+		finally {
+			_authorQuerier = null;
 
-		for (String insert : inserts) {
-			try {
-				Statement statement = _conn.createStatement();
-
-				statement.execute(insert);
-			}
-			catch (SQLException e) {
-				//TODO: append errors to context
-				throw new RuntimeException(e);
-			}
+			_authorService.invalidate(id);
 		}
 
+		_authorService.changed(new long[] {id}, sqlCommandPlan);
+
 		return this;
 	}
 
-	private <T> T withResultSet(
-			Function<ResultSet, T> mapping)
-		throws SQLException {
+	/**
+	 * Reads the row, unless the entity cache has it. A connection is only
+	 * borrowed on a miss.
+	 */
+	private AuthorQuerier _load() throws SQLException {
+		long id = Long.parseLong(_id);
 
-		String sql = "select * from author where id=" + _id;
+		FetchPlan fetchPlan = _authorService.fetchPlan;
 
-		PreparedStatement preparedStatement =
-			_conn.prepareStatement(sql);
+		EntityCache<AuthorQuerier> entityCache = fetchPlan.isEmpty() ?
+			_authorService.settings()._entityCache : null;
 
-		ResultSet resultSet = preparedStatement.executeQuery();
+		if (entityCache != null) {
+			AuthorQuerier authorQuerier = entityCache.get(id);
 
-		return mapping.apply(resultSet);
+			if (authorQuerier != null) {
+				return authorQuerier;
+			}
+		}
 
-	}
+		long stamp = (entityCache == null) ? 0 : entityCache.stamp(id);
 
-	private class AuthorQuerierFromResult implements AuthorQuerier {
-		private ResultSet _resultSet;
+		try (Connection conn = _dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select " + _projection.toSql("A") +
+					 " from author A where A.id=?")) {
 
-		public AuthorQuerierFromResult(ResultSet resultSet) {
+			preparedStatement.setLong(1, id);
 
-			_resultSet = resultSet;
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					throw new SQLException("No author with id " + _id);
+				}
 
-			try {
-				_resultSet.next();
-			}
-			catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		}
+				if (!_projection.includes("name")) {
+					return new AuthorQuerierFromRow(_authorService, id);
+				}
 
-		@Override
-		public String id() {
-			try {
-				return Long.toString(_resultSet.getLong("id"));
-			}
-			catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		}
+				AuthorQuerierFromRow authorQuerier = new AuthorQuerierFromRow(
+					_authorService, id, resultSet.getString("name"));
 
-		@Override
-		public String name() {
-			try {
-				return _resultSet.getString("name");
-			}
-			catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		}
+				_authorService.preload(
+					Collections.singletonList(authorQuerier), fetchPlan);
 
-		@Override
-		public <R> Stream<R> books(Function<BookQuerier, R> function) {
-			try {
-				return _bookService.fromAuthor(
-					new OnlyAuthorContext(_conn, _bookService, id())).map(bc -> bc.map(function).get());
-			}
-			catch (SQLException e) {
-				return Stream.empty();
+				if (entityCache != null) {
+					entityCache.put(id, authorQuerier, stamp);
+				}
+
+				return authorQuerier;
 			}
 		}
-
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.PendingWrite;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An author queued for creation in a {@link WriteBehindQueue}. Mapping it
+ * waits for its batch to be committed and then maps the created author, as
+ * an {@link AuthorCreationContext} would, without querying it again.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class PendingAuthorContext extends PendingWrite implements AuthorContext {
+
+	private volatile AuthorContext _authorContext;
+	private final Consumer<AuthorBuilder> _consumer;
+	private final WriteBehindQueue _writeBehindQueue;
+
+	public PendingAuthorContext(
+		AuthorService authorService, Consumer<AuthorBuilder> consumer) {
+
+		super(authorService.settings()._pendingAuthorsBatcher);
+
+		_consumer = consumer;
+		_writeBehindQueue = authorService.settings()._writeBehindQueue;
+	}
+
+	/**
+	 * Inserts the authors with a single {@link AuthorCreationBatch}.
+	 */
+	static void write(
+			AuthorService authorService,
+			List<PendingAuthorContext> pendingAuthorContexts)
+		throws SQLException {
+
+		AuthorCreationBatch authorCreationBatch = new AuthorCreationBatch(
+			authorService);
+
+		for (PendingAuthorContext pendingAuthorContext :
+				pendingAuthorContexts) {
+
+			pendingAuthorContext._authorContext = authorCreationBatch.add(
+				pendingAuthorContext._consumer);
+		}
+
+		authorCreationBatch.flush();
+	}
+
+	@Override
+	public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+		try {
+			_writeBehindQueue.await(this);
+		}
+		catch (SQLException e) {
+			ErrorResult<R> errorResult = new ErrorResult<>();
+
+			errorResult.addError(e.getMessage());
+
+			return errorResult;
+		}
+
+		return _authorContext.map(mapper);
+	}
+
+	@Override
+	public AuthorContext execute(SqlCommand command) {
+		return this;
+	}
+
+}
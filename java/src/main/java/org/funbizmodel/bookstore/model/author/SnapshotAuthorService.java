@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.model.CatalogSnapshot;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.SnapshotBookService;
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The authors of a {@link CatalogSnapshot}, answering the queries of {@link
+ * AuthorService} from the mapped file. Queriers read the id in place and
+ * decode the name the first time it is asked for.
+ *
+ * <p>
+ * The snapshot is read-only: creating authors or executing commands on
+ * them throws {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class SnapshotAuthorService implements AuthorRepository {
+
+	private SnapshotBookService _bookService;
+	private final CatalogSnapshot _catalogSnapshot;
+
+	public SnapshotAuthorService(CatalogSnapshot catalogSnapshot) {
+		_catalogSnapshot = catalogSnapshot;
+	}
+
+	public void setBookService(SnapshotBookService bookService) {
+		_bookService = bookService;
+	}
+
+	@Override
+	public AuthorContext create(Consumer<AuthorBuilder> consumer) {
+		throw new UnsupportedOperationException(
+			"The catalog snapshot is read-only");
+	}
+
+	@Override
+	public Stream<AuthorContext> create(Consumer<AuthorBuilder>... consumers) {
+		return create(Stream.of(consumers));
+	}
+
+	@Override
+	public Stream<AuthorContext> create(
+		Stream<Consumer<AuthorBuilder>> consumers) {
+
+		throw new UnsupportedOperationException(
+			"The catalog snapshot is read-only");
+	}
+
+	@Override
+	public AuthorContext withId(String id) {
+		long authorId = Long.parseLong(id);
+
+		return new SnapshotAuthorContext(
+			authorId, _catalogSnapshot.findAuthor(authorId));
+	}
+
+	@Override
+	public Stream<AuthorContext> all() {
+		return _contexts(
+			IntStream.range(0, _catalogSnapshot.getAuthorCount()));
+	}
+
+	@Override
+	public Stream<AuthorContext> fromBook(BookContext bookContext) {
+		Result<Long> idResult = bookContext.select("id").map(BookQuerier::id);
+
+		if (idResult.getErrors().size() > 0) {
+			return Stream.empty();
+		}
+
+		int bookPosition = _catalogSnapshot.findBook(idResult.get());
+
+		if (bookPosition < 0) {
+			return Stream.empty();
+		}
+
+		return _contexts(_catalogSnapshot.getAuthorPositions(bookPosition));
+	}
+
+	/**
+	 * Returns the author at the given position of the snapshot.
+	 */
+	public AuthorQuerier readAt(int authorPosition) {
+		return new SnapshotAuthorQuerier(authorPosition);
+	}
+
+	private Stream<AuthorContext> _contexts(IntStream authorPositions) {
+		return authorPositions.mapToObj(
+			authorPosition -> new SnapshotAuthorContext(
+				_catalogSnapshot.getAuthorId(authorPosition), authorPosition));
+	}
+
+	private class SnapshotAuthorContext implements AuthorContext {
+
+		private final long _authorId;
+		private final int _authorPosition;
+
+		public SnapshotAuthorContext(long authorId, int authorPosition) {
+			_authorId = authorId;
+			_authorPosition = authorPosition;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+			if (_authorPosition < 0) {
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError("No author with id " + _authorId);
+
+				return errorResult;
+			}
+
+			return new CorrectResult<>(mapper.apply(readAt(_authorPosition)));
+		}
+
+		@Override
+		public AuthorContext execute(SqlCommand command) {
+			throw new UnsupportedOperationException(
+				"The catalog snapshot is read-only");
+		}
+
+	}
+
+	private class SnapshotAuthorQuerier implements AuthorQuerier {
+
+		private final int _authorPosition;
+		private String _name;
+
+		public SnapshotAuthorQuerier(int authorPosition) {
+			_authorPosition = authorPosition;
+		}
+
+		@Override
+		public String id() {
+			return String.valueOf(
+				_catalogSnapshot.getAuthorId(_authorPosition));
+		}
+
+		@Override
+		public String name() {
+			if (_name == null) {
+				_name = _catalogSnapshot.getAuthorName(_authorPosition);
+			}
+
+			return _name;
+		}
+
+		@Override
+		public <R> Stream<R> books(Function<BookQuerier, R> function) {
+			return _catalogSnapshot.getBookPositions(_authorPosition).mapToObj(
+				_bookService::readAt).map(function);
+		}
+
+	}
+
+}
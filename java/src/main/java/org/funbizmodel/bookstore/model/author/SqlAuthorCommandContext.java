@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.author;
+
+import org.funbizmodel.bookstore.service.SqlCommandContext;
+
+/**
+ * Adds the statements of the author operations to the context of a command
+ * run on the database.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class SqlAuthorCommandContext implements AuthorCommandContext {
+
+	private final SqlCommandContext _sqlCommandContext;
+
+	public SqlAuthorCommandContext(SqlCommandContext sqlCommandContext) {
+		_sqlCommandContext = sqlCommandContext;
+	}
+
+	@Override
+	public void addBook(long bookId) {
+		_sqlCommandContext.addSql(AuthorService.INSERT_BOOK_SQL, bookId);
+	}
+
+	@Override
+	public void delete() {
+		_sqlCommandContext.addSql(AuthorService.DELETE_SQL);
+	}
+
+	@Override
+	public void rename(String name) {
+		_sqlCommandContext.addSql(AuthorService.UPDATE_NAME_SQL, name);
+	}
+
+	@Override
+	public void addSql(String template, Object... parameters) {
+		_sqlCommandContext.addSql(template, parameters);
+	}
+
+	@Override
+	public void addInsertSql(String template, Object... parameters) {
+		_sqlCommandContext.addInsertSql(template, parameters);
+	}
+
+}
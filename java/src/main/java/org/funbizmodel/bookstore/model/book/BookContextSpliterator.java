@@ -14,36 +14,165 @@
 
 package org.funbizmodel.bookstore.model.book;
 
+import org.funbizmodel.bookstore.model.author.AuthorContext;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.ResultSetCursor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.util.Optional;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
+ * Streams the books of a result set. When the service has an authors batch
+ * size greater than one and its projection asks for authors, rows are read
+ * in chunks and the authors of the whole chunk are resolved with a single
+ * query, together with whatever the fetch plan of the service asks of
+ * them.
+ *
 * @author Carlos Sierra Andrés
 */
-class BookContextSpliterator
-	implements Spliterator<BookContext> {
+class BookContextSpliterator implements Spliterator<BookContext> {
 
 	private BookService _bookService;
+	private final ResultSetCursor _cursor;
 	private final ResultSet _resultSet;
+	private final int _batchSize;
+	private final Deque<BookContext> _buffer = new ArrayDeque<>();
+	private final LongAdder _rows;
+
+	public BookContextSpliterator(
+		BookService bookService, Connection conn,
+		PreparedStatement preparedStatement, ResultSet resultSet) {
 
-	public BookContextSpliterator(BookService bookService, ResultSet resultSet) {
 		_bookService = bookService;
+		_cursor = new ResultSetCursor(conn, preparedStatement, resultSet);
 		_resultSet = resultSet;
+		_batchSize = bookService._preloadAuthors ?
+			bookService.settings()._authorsBatchSize : 1;
+
+		MetricsRegistry metricsRegistry =
+			bookService.settings()._metricsRegistry;
+
+		_rows = (metricsRegistry == null) ? null :
+			metricsRegistry.counter("book.rows");
 	}
 
 	@Override
 	public boolean tryAdvance(Consumer<? super BookContext> action) {
-		Optional<BookQuerier> maybeQuerier =
-			BookQuerier.fromResultSet(
-				_bookService._authorService, _bookService, _resultSet);
+		if (_batchSize > 1) {
+			if (_buffer.isEmpty()) {
+				_fillBuffer();
+			}
+
+			BookContext bookContext = _buffer.poll();
+
+			if (bookContext == null) {
+				close();
+
+				return false;
+			}
+
+			action.accept(bookContext);
+
+			return true;
+		}
+
+		BookQuerierFromRow bookQuerier = null;
+
+		try {
+			if (_resultSet.next()) {
+				bookQuerier = BookQuerierFromRow.read(_bookService, _resultSet);
+			}
+		}
+		catch (SQLException e) {
+			close();
+
+			throw new RuntimeException(e);
+		}
+
+		if (bookQuerier == null) {
+			close();
+
+			return false;
+		}
+
+		if (_rows != null) {
+			_rows.increment();
+		}
+
+		_bookService.preload(Collections.singletonList(bookQuerier));
+
+		action.accept(new BookService.BookContextFromQuerier(
+			_bookService, bookQuerier));
+
+		return true;
+	}
+
+	/**
+	 * Returns the cursor read by this spliterator, which closes by itself
+	 * once the rows are exhausted.
+	 */
+	public ResultSetCursor getCursor() {
+		return _cursor;
+	}
+
+	/**
+	 * Closes the cursor and gives the connection back. Called when the rows
+	 * are exhausted or reading them fails.
+	 */
+	public void close() {
+		_cursor.close();
+	}
+
+	private void _fillBuffer() {
+		List<Long> ids = new ArrayList<>(_batchSize);
+		List<BookQuerierFromRow> bookQueriers = new ArrayList<>(_batchSize);
+
+		try {
+			while ((ids.size() < _batchSize) && _resultSet.next()) {
+				BookQuerierFromRow bookQuerier = BookQuerierFromRow.read(
+					_bookService, _resultSet);
+
+				ids.add(bookQuerier.id());
+				bookQueriers.add(bookQuerier);
+			}
+		}
+		catch (SQLException e) {
+			close();
+
+			throw new RuntimeException(e);
+		}
+
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		if (_rows != null) {
+			_rows.add(ids.size());
+		}
+
+		Map<Long, List<AuthorContext>> authorContexts =
+			_bookService.settings()._authorService.fromBooks(
+				ids, _bookService._fetchPlan.get("authors"));
 
-		maybeQuerier.ifPresent(
-			querier -> action.accept(
-				new BookService.BookContextFromQuerier(querier)));
+		for (BookQuerierFromRow bookQuerier : bookQueriers) {
+			bookQuerier.setAuthorContexts(
+				authorContexts.getOrDefault(
+					bookQuerier.id(), Collections.emptyList()));
 
-		return maybeQuerier.isPresent();
+			_buffer.add(new BookService.BookContextFromQuerier(
+				_bookService, bookQuerier));
+		}
 	}
 
 	@Override
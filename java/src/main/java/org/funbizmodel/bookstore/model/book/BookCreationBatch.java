@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.service.LongList;
+import org.funbizmodel.bookstore.service.MultiRowInsert;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Creation contexts that are inserted together the first time any of them
+ * is mapped: all the BOOK rows with multi-row inserts, then all their
+ * AUTHOR_BOOK links with a single JDBC batch.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class BookCreationBatch {
+
+	private static final MultiRowInsert _INSERT_BOOKS = new MultiRowInsert(
+		"BOOK", "isbn", "title");
+
+	/**
+	 * The most contexts a batch is meant to hold, as many as rows are
+	 * inserted by a single statement.
+	 */
+	static final int MAX_SIZE = _INSERT_BOOKS.getMaxRows();
+
+	private final BookService _bookService;
+	private final List<BookCreationContext> _bookCreationContexts =
+		new ArrayList<>();
+	private boolean _flushed;
+	private SQLException _exception;
+
+	public BookCreationBatch(BookService bookService) {
+		_bookService = bookService;
+	}
+
+	public BookContext add(Consumer<BookBuilder> consumer) {
+		BookCreationContext bookCreationContext = new BookCreationContext(
+			_bookService, consumer, this);
+
+		_bookCreationContexts.add(bookCreationContext);
+
+		return bookCreationContext;
+	}
+
+	public List<BookContext> addAll(List<Consumer<BookBuilder>> consumers) {
+		List<BookContext> contexts = new ArrayList<>(consumers.size());
+
+		for (Consumer<BookBuilder> consumer : consumers) {
+			contexts.add(add(consumer));
+		}
+
+		return contexts;
+	}
+
+	public synchronized void flush() throws SQLException {
+		if (!_flushed) {
+			_flushed = true;
+
+			UnitOfWork.afterRollback(this::_reset);
+
+			try {
+				_insert();
+			}
+			catch (SQLException e) {
+				_exception = e;
+			}
+			catch (RuntimeException e) {
+				_exception = new SQLException(e.getMessage(), e);
+			}
+		}
+
+		if (_exception != null) {
+			throw _exception;
+		}
+	}
+
+	/**
+	 * Forgets the rows inserted by a unit of work that rolled back, so that
+	 * mapping any of the contexts inserts them again.
+	 */
+	private synchronized void _reset() {
+		_flushed = false;
+		_exception = null;
+
+		for (BookCreationContext bookCreationContext : _bookCreationContexts) {
+			bookCreationContext.created(-1);
+		}
+	}
+
+	/**
+	 * Inserts the books and their links. The authors of every book are
+	 * resolved first, so that an author that fails to resolve fails the
+	 * batch before any row is inserted.
+	 */
+	private void _insert() throws SQLException {
+		List<BookBuilder> bookBuilders = new ArrayList<>();
+		List<List<Long>> authorIds = new ArrayList<>();
+		List<Object[]> rows = new ArrayList<>();
+
+		for (BookCreationContext bookCreationContext : _bookCreationContexts) {
+			BookBuilder bookBuilder = bookCreationContext.build();
+
+			bookBuilders.add(bookBuilder);
+			authorIds.add(_authorIds(bookBuilder));
+			rows.add(new Object[] {bookBuilder._isbn, bookBuilder._title});
+		}
+
+		try (Connection conn = _bookService._dataSource.getConnection()) {
+			long[] ids = _INSERT_BOOKS.execute(conn, rows);
+
+			for (int i = 0; i < ids.length; i++) {
+				_bookCreationContexts.get(i).created(ids[i]);
+
+				_bookService.created(ids[i], bookBuilders.get(i));
+			}
+
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					"INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
+						"values (?, ?)")) {
+
+				LongList links = new LongList();
+
+				for (int i = 0; i < ids.length; i++) {
+					long bookId = ids[i];
+
+					for (long authorId : authorIds.get(i)) {
+						preparedStatement.setLong(1, authorId);
+						preparedStatement.setLong(2, bookId);
+
+						preparedStatement.addBatch();
+
+						links.add(authorId);
+						links.add(bookId);
+					}
+				}
+
+				preparedStatement.executeBatch();
+
+				for (int i = 0; i < links.size(); i += 2) {
+					_bookService.linked(links.get(i), links.get(i + 1));
+				}
+			}
+		}
+	}
+
+	private static List<Long> _authorIds(BookBuilder bookBuilder) {
+		List<Long> authorIds = new ArrayList<>();
+
+		bookBuilder._authorContexts.forEach(
+			ac -> authorIds.add(
+				Long.parseLong(
+					ac.select("id").map(AuthorQuerier::id).get())));
+
+		return authorIds;
+	}
+
+}
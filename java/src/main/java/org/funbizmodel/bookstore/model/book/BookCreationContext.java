@@ -17,8 +17,11 @@ package org.funbizmodel.bookstore.model.book;
 import org.funbizmodel.bookstore.model.author.AuthorQuerier;
 import org.funbizmodel.bookstore.service.CorrectResult;
 import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.QueryBudget;
 import org.funbizmodel.bookstore.service.Result;
 import org.funbizmodel.bookstore.service.SqlCommand;
+import org.funbizmodel.bookstore.service.UnitOfWork;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -38,15 +41,45 @@ class BookCreationContext implements BookContext {
 	private BookBuilder _bookBuilder;
 	private volatile long _createdId = -1;
 	private SQLException _exception;
-	private Connection _conn;
+	private BookService _bookService;
+	private BookCreationBatch _bookCreationBatch;
 
-	public BookCreationContext(Connection conn, Consumer<BookBuilder> consumer) {
-		_conn = conn;
+	public BookCreationContext(
+		BookService bookService, Consumer<BookBuilder> consumer) {
+
+		_bookService = bookService;
 		_consumer = consumer;
 	}
 
+	public BookCreationContext(
+		BookService bookService, Consumer<BookBuilder> consumer,
+		BookCreationBatch bookCreationBatch) {
+
+		this(bookService, consumer);
+
+		_bookCreationBatch = bookCreationBatch;
+	}
+
 	@Override
 	public <R> Result<R> map(Function<BookQuerier, R> mapper) {
+		return QueryBudget.run(
+			_bookService.settings()._queryBudget, () -> _meteredMap(mapper));
+	}
+
+	private <R> Result<R> _meteredMap(Function<BookQuerier, R> mapper) {
+		MetricsRegistry metricsRegistry =
+			_bookService.settings()._metricsRegistry;
+
+		if (metricsRegistry == null) {
+			return _map(mapper);
+		}
+
+		long start = System.nanoTime();
+
+		return metricsRegistry.recordSince("book.create", start, _map(mapper));
+	}
+
+	private <R> Result<R> _map(Function<BookQuerier, R> mapper) {
 		try {
 			if (_exception != null) {
 				throw _exception;
@@ -67,56 +100,79 @@ class BookCreationContext implements BookContext {
 		}
 	}
 
+	BookBuilder build() {
+		_bookBuilder = new BookBuilder();
+
+		_consumer.accept(_bookBuilder);
+
+		return _bookBuilder;
+	}
+
+	void created(long id) {
+		_createdId = id;
+	}
+
 	private long _doInsert() throws SQLException {
-		if (_createdId == -1) {
-			_bookBuilder = new BookBuilder();
+		if (_bookCreationBatch != null) {
+			_bookCreationBatch.flush();
+
+			return _createdId;
+		}
 
-			_consumer.accept(_bookBuilder);
+		if (_createdId == -1) {
+			build();
 
 			//Merge validation errors
 
 			String sql = createSQL();
 
-			PreparedStatement preparedStatement =
-				_conn.prepareStatement(
-					sql, Statement.RETURN_GENERATED_KEYS);
+			try (Connection conn = _bookService._dataSource.getConnection();
+				 PreparedStatement preparedStatement = conn.prepareStatement(
+					 sql, Statement.RETURN_GENERATED_KEYS)) {
 
-			int affectedRows = preparedStatement.executeUpdate();
+				int affectedRows = preparedStatement.executeUpdate();
 
-			if (affectedRows == 0) {
-				throw new SQLException("Failed to execute " + sql);
-			}
+				if (affectedRows == 0) {
+					throw new SQLException("Failed to execute " + sql);
+				}
+
+				try (ResultSet keysResult =
+						 preparedStatement.getGeneratedKeys()) {
 
-			try (ResultSet keysResult =
-					 preparedStatement.getGeneratedKeys()) {
+					keysResult.next();
 
-				keysResult.next();
+					_createdId = keysResult.getLong(1);
+				}
 
-				_createdId = keysResult.getLong(1);
+				UnitOfWork.afterRollback(() -> _createdId = -1);
+
+				_bookService.created(_createdId, _bookBuilder);
 
 				_bookBuilder._authorContexts.forEach(ac -> {
-					Result<String> authorId = ac.map(AuthorQuerier::id);
+					Result<String> authorId = ac.select("id").map(
+						AuthorQuerier::id);
+
+					try (PreparedStatement authorAddStatement =
+							 conn.prepareStatement(
+								 "INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
+									 "values (?, ?)")) {
 
-					try {
-						PreparedStatement authorAddStatement =
-							_conn.prepareStatement(
-							"INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
-								"values (?, ?)");
 						authorAddStatement.setLong(
 							1, Long.parseLong(authorId.get()));
 
 						authorAddStatement.setLong(2, _createdId);
 
 						authorAddStatement.executeUpdate();
-					}
 
+						_bookService.linked(
+							Long.parseLong(authorId.get()), _createdId);
+					}
 					catch (SQLException e) {
-						e.printStackTrace();
+						throw new RuntimeException(e);
 					}
 
 				});
 			}
-
 		}
 
 		return _createdId;
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.service.Invalidatable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The ISBN and the title of every book, kept in memory so that {@link
+ * BookService#fromIsbns(String...)} and {@link
+ * BookService#titlesStartingWith(String, int)} are answered without going to
+ * the database. Books are found by ISBN in a hash map and titles are kept
+ * sorted in a skip list, where a prefix is a range.
+ *
+ * <p>
+ * The index reads every book the first time it is used, and is then kept
+ * up to date by the creations of the services it is set on. Books written
+ * by other means are not seen until the index is invalidated, which a
+ * {@link org.funbizmodel.bookstore.service.UnitOfWork} given the index does
+ * when it rolls back.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class BookIndex implements Invalidatable {
+
+	private final DataSource _dataSource;
+	private final ConcurrentHashMap<String, Entry> _entries =
+		new ConcurrentHashMap<>();
+	private volatile boolean _loaded;
+	private final ConcurrentSkipListSet<String> _titles =
+		new ConcurrentSkipListSet<>();
+
+	public BookIndex(DataSource dataSource) {
+		_dataSource = dataSource;
+	}
+
+	/**
+	 * Drops the index, to be read again from the database on next use.
+	 */
+	@Override
+	public synchronized void invalidateAll() {
+		_loaded = false;
+
+		_entries.clear();
+		_titles.clear();
+	}
+
+	public int size() {
+		_load();
+
+		return _entries.size();
+	}
+
+	/**
+	 * Returns up to {@code limit} distinct titles that start with the
+	 * prefix, in order.
+	 */
+	public List<String> titlesStartingWith(String prefix, int limit) {
+		_load();
+
+		List<String> titles = new ArrayList<>();
+
+		for (String title : _titles.tailSet(prefix)) {
+			if ((titles.size() >= limit) || !title.startsWith(prefix)) {
+				break;
+			}
+
+			titles.add(title);
+		}
+
+		return titles;
+	}
+
+	void add(long id, String isbn, String title) {
+		if (isbn != null) {
+			_entries.put(isbn, new Entry(id, isbn, title));
+		}
+
+		if (title != null) {
+			_titles.add(title);
+		}
+	}
+
+	/**
+	 * Returns the book with the ISBN, or {@code null} if there is none.
+	 */
+	Entry get(String isbn) {
+		_load();
+
+		return _entries.get(isbn);
+	}
+
+	/**
+	 * Reads every book, unless the index is already loaded. Books created
+	 * meanwhile are added as usual, so none is lost whether the read sees
+	 * them or not.
+	 */
+	private void _load() {
+		if (_loaded) {
+			return;
+		}
+
+		synchronized (this) {
+			if (_loaded) {
+				return;
+			}
+
+			try (Connection conn = _dataSource.getConnection();
+				 Statement statement = conn.createStatement();
+				 ResultSet resultSet = statement.executeQuery(
+					 "SELECT id, isbn, title FROM BOOK")) {
+
+				while (resultSet.next()) {
+					add(
+						resultSet.getLong(1), resultSet.getString(2),
+						resultSet.getString(3));
+				}
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+
+			_loaded = true;
+		}
+	}
+
+	static class Entry {
+
+		final long id;
+		final String isbn;
+		final String title;
+
+		Entry(long id, String isbn, String title) {
+			this.id = id;
+			this.isbn = isbn;
+			this.title = title;
+		}
+
+	}
+
+}
@@ -67,7 +67,9 @@ public interface BookQuerier {
 					Function<AuthorQuerier, R> function) {
 
 					return authorService.fromBook(
-						bookService.withId(Long.toString(id()))).map(ac -> ac.map(function).get());
+						new BookService.BookContextFromQuerier(
+							bookService, this)).
+						map(ac -> ac.map(function).get());
 				}
 			});
 		}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.model.author.AuthorContext;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.service.Projection;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A book row read through the projection of its service. Columns left out
+ * of the projection are fetched by id the first time they are asked for.
+ * The authors are either resolved together with the row, so that {@link
+ * #authors(Function)} does not go back to the database, or queried on
+ * demand.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class BookQuerierFromRow implements BookQuerier {
+
+	private static final String _UNFETCHED = new String();
+
+	private final BookService _bookService;
+	private final long _id;
+	private volatile String _isbn;
+	private volatile String _title;
+	private List<AuthorContext> _authorContexts;
+
+	private BookQuerierFromRow(
+		BookService bookService, long id, String isbn, String title) {
+
+		_bookService = bookService;
+		_id = id;
+		_isbn = isbn;
+		_title = title;
+	}
+
+	/**
+	 * Returns a querier over a whole row already known.
+	 */
+	public static BookQuerierFromRow of(
+		BookService bookService, long id, String isbn, String title) {
+
+		return new BookQuerierFromRow(bookService, id, isbn, title);
+	}
+
+	public static BookQuerierFromRow read(
+			BookService bookService, ResultSet resultSet)
+		throws SQLException {
+
+		Projection projection = bookService._projection;
+
+		return new BookQuerierFromRow(
+			bookService, resultSet.getLong("id"),
+			projection.includes("isbn") ?
+				resultSet.getString("isbn") : _UNFETCHED,
+			projection.includes("title") ?
+				resultSet.getString("title") : _UNFETCHED);
+	}
+
+	@Override
+	public long id() {
+		return _id;
+	}
+
+	@Override
+	public String isbn() {
+		String isbn = _isbn;
+
+		if (isbn == _UNFETCHED) {
+			isbn = _bookService.fetchColumn(_id, "isbn");
+
+			_isbn = isbn;
+		}
+
+		return isbn;
+	}
+
+	@Override
+	public String title() {
+		String title = _title;
+
+		if (title == _UNFETCHED) {
+			title = _bookService.fetchColumn(_id, "title");
+
+			_title = title;
+		}
+
+		return title;
+	}
+
+	@Override
+	public <R> Stream<R> authors(Function<AuthorQuerier, R> function) {
+		if (_authorContexts == null) {
+			return _bookService.settings()._authorService.fromBook(
+				new BookService.BookContextFromQuerier(_bookService, this)).
+				map(ac -> ac.map(function).get());
+		}
+
+		return _authorContexts.stream().map(ac -> ac.map(function).get());
+	}
+
+	/**
+	 * Sets the authors resolved together with the row. Must be called before
+	 * the querier is handed out.
+	 */
+	void setAuthorContexts(List<AuthorContext> authorContexts) {
+		_authorContexts = authorContexts;
+	}
+}
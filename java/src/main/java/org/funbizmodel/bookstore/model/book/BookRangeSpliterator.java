@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.service.CursorTracker;
+import org.funbizmodel.bookstore.service.ResultSetCursor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Streams the books of a query whose ids fall within a range. Splitting
+ * halves the range, counting the rows of each half to estimate the size of
+ * every split. Rows written after the counts make the estimates wrong, so
+ * the spliterator does not report itself as sized. Each split opens its own
+ * cursor, on a connection borrowed by the thread traversing it, the first
+ * time it is advanced. The cursors of a spliterator and all the ones split
+ * from it are tracked together as {@link #getCursor()}, read by {@link
+ * #getReader()}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class BookRangeSpliterator implements Spliterator<BookContext> {
+
+	public static final long MIN_SPLIT_SIZE = 1024;
+
+	private final BookService _bookService;
+	private final String _from;
+	private final String _where;
+	private final Object[] _parameters;
+	private final OpenedCursors _openedCursors;
+	private final Object _reader;
+	private long _minId;
+	private final long _maxId;
+	private long _size;
+	private BookContextSpliterator _bookContextSpliterator;
+
+	/**
+	 * Creates a spliterator over the rows of {@code select B.<columns> from
+	 * <from> where <where>}, where {@code B} must be the alias of the BOOK
+	 * table, the columns are those of the projection of the service and
+	 * {@code where} may be empty.
+	 */
+	public static BookRangeSpliterator create(
+			BookService bookService, String from, String where,
+			Object... parameters)
+		throws SQLException {
+
+		try (Connection conn = bookService._dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select count(*), min(B.id), max(B.id) from " + from +
+					 _where(where, false))) {
+
+			_setParameters(preparedStatement, parameters);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+
+				return new BookRangeSpliterator(
+					bookService, from, where, parameters,
+					new OpenedCursors(), new Object(), resultSet.getLong(2),
+					resultSet.getLong(3), resultSet.getLong(1));
+			}
+		}
+	}
+
+	private BookRangeSpliterator(
+		BookService bookService, String from, String where,
+		Object[] parameters, OpenedCursors openedCursors, Object reader,
+		long minId, long maxId, long size) {
+
+		_bookService = bookService;
+		_from = from;
+		_where = where;
+		_parameters = parameters;
+		_openedCursors = openedCursors;
+		_reader = reader;
+		_minId = minId;
+		_maxId = maxId;
+		_size = size;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super BookContext> action) {
+		if (_size == 0) {
+			return false;
+		}
+
+		if (_bookContextSpliterator == null) {
+			try {
+				_open();
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		return _bookContextSpliterator.tryAdvance(action);
+	}
+
+	@Override
+	public Spliterator<BookContext> trySplit() {
+		if ((_bookContextSpliterator != null) ||
+			(_size < (2 * MIN_SPLIT_SIZE)) || (_minId >= _maxId)) {
+
+			return null;
+		}
+
+		long middleId = _minId + ((_maxId - _minId) / 2);
+
+		long prefixSize;
+
+		try {
+			prefixSize = _count(_minId, middleId);
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+
+		BookRangeSpliterator prefix = new BookRangeSpliterator(
+			_bookService, _from, _where, _parameters, _openedCursors, _reader,
+			_minId, middleId, prefixSize);
+
+		_minId = middleId + 1;
+		_size -= prefixSize;
+
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return _size;
+	}
+
+	@Override
+	public int characteristics() {
+		return IMMUTABLE | NONNULL;
+	}
+
+	/**
+	 * Returns the cursors opened by this spliterator and all the ones split
+	 * from it.
+	 */
+	public CursorTracker.Cursor getCursor() {
+		return _openedCursors;
+	}
+
+	/**
+	 * Returns an object held by this spliterator and all the ones split
+	 * from it, and by nothing else, which is garbage collected once they
+	 * all are.
+	 */
+	public Object getReader() {
+		return _reader;
+	}
+
+	private long _count(long minId, long maxId) throws SQLException {
+		try (Connection conn = _bookService._dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select count(*) from " + _from + _where(_where, true))) {
+
+			int index = _setParameters(preparedStatement, _parameters);
+
+			preparedStatement.setLong(index++, minId);
+			preparedStatement.setLong(index, maxId);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+
+				return resultSet.getLong(1);
+			}
+		}
+	}
+
+	private void _open() throws SQLException {
+		Connection conn = _bookService._dataSource.getConnection();
+		PreparedStatement preparedStatement = null;
+
+		try {
+			preparedStatement = _bookService.prepareCursor(
+				conn,
+				"select " + _bookService._projection.toSql("B") + " from " +
+					_from + _where(_where, true));
+
+			int index = _setParameters(preparedStatement, _parameters);
+
+			preparedStatement.setLong(index++, _minId);
+			preparedStatement.setLong(index, _maxId);
+
+			_bookContextSpliterator = new BookContextSpliterator(
+				_bookService, conn, preparedStatement,
+				preparedStatement.executeQuery());
+
+			_openedCursors._cursors.add(_bookContextSpliterator.getCursor());
+		}
+		catch (SQLException | RuntimeException e) {
+			if (preparedStatement != null) {
+				preparedStatement.close();
+			}
+
+			conn.close();
+
+			throw e;
+		}
+	}
+
+	private static int _setParameters(
+			PreparedStatement preparedStatement, Object[] parameters)
+		throws SQLException {
+
+		int index = 1;
+
+		for (Object parameter : parameters) {
+			preparedStatement.setObject(index++, parameter);
+		}
+
+		return index;
+	}
+
+	private static String _where(String where, boolean range) {
+		if (!range) {
+			return where.isEmpty() ? "" : " where " + where;
+		}
+
+		if (where.isEmpty()) {
+			return " where B.id between ? and ?";
+		}
+
+		return " where " + where + " and B.id between ? and ?";
+	}
+
+	private static class OpenedCursors implements CursorTracker.Cursor {
+
+		private final Queue<ResultSetCursor> _cursors =
+			new ConcurrentLinkedQueue<>();
+
+		/**
+		 * Returns whether all the cursors opened so far are closed.
+		 */
+		@Override
+		public boolean isClosed() {
+			for (ResultSetCursor resultSetCursor : _cursors) {
+				if (!resultSetCursor.isClosed()) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Closes the cursors opened so far that are still open.
+		 */
+		@Override
+		public void close() {
+			ResultSetCursor resultSetCursor;
+
+			while ((resultSetCursor = _cursors.poll()) != null) {
+				resultSetCursor.close();
+			}
+		}
+
+	}
+
+}
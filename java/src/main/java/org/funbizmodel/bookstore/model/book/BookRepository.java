@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.service.ReadOnlyContext;
+import org.funbizmodel.bookstore.service.Service;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The queries on books that business code can run on any storage: the
+ * database behind {@link BookService}, the memory behind {@link
+ * InMemoryBookService} or the file behind {@link SnapshotBookService}.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface BookRepository
+	extends Service<BookBuilder, BookQuerier, BookContext> {
+
+	public Stream<BookContext> fromTitles(String... titles);
+
+	/**
+	 * Returns the books with the given ISBNs, in the order of the ISBNs that
+	 * are found.
+	 */
+	public Stream<BookContext> fromIsbns(String... isbns);
+
+	/**
+	 * Returns up to {@code limit} distinct titles that start with the
+	 * prefix, in order.
+	 */
+	public List<String> titlesStartingWith(String prefix, int limit);
+
+	public Stream<BookContext> fromAuthor(
+		ReadOnlyContext<AuthorQuerier> authorContext) throws SQLException;
+
+	/**
+	 * Returns a view of this repository that only needs to read the given
+	 * columns. Like {@link ReadOnlyContext#select(String...)} this is only a
+	 * hint, which storages holding whole rows ignore.
+	 */
+	public default BookRepository select(String... columns) {
+		return this;
+	}
+
+	/**
+	 * Returns a view of this repository whose books come with the
+	 * relationships in the given paths already loaded. Storages that answer
+	 * relationships from memory anyway return themselves.
+	 */
+	public default BookRepository include(String... paths) {
+		return this;
+	}
+
+}
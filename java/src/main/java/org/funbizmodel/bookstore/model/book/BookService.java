@@ -14,66 +14,399 @@
 
 package org.funbizmodel.bookstore.model.book;
 
+import org.funbizmodel.bookstore.model.author.AuthorContext;
 import org.funbizmodel.bookstore.model.author.AuthorQuerier;
 import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.service.ChangeEvent;
+import org.funbizmodel.bookstore.service.ChangePublisher;
+import org.funbizmodel.bookstore.service.ChunkSpliterator;
 import org.funbizmodel.bookstore.service.Context;
 import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.CursorTracker;
+import org.funbizmodel.bookstore.service.EntityCache;
+import org.funbizmodel.bookstore.service.FetchPlan;
+import org.funbizmodel.bookstore.service.MetricsRegistry;
+import org.funbizmodel.bookstore.service.PendingWrite;
+import org.funbizmodel.bookstore.service.Projection;
+import org.funbizmodel.bookstore.service.QueryBudget;
 import org.funbizmodel.bookstore.service.ReadOnlyContext;
 import org.funbizmodel.bookstore.service.Result;
-import org.funbizmodel.bookstore.service.Service;
 import org.funbizmodel.bookstore.service.SqlCommand;
+import org.funbizmodel.bookstore.service.UnitOfWork;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * @author Carlos Sierra Andrés
  */
-public class BookService
-	implements Service<BookBuilder, BookQuerier, BookContext>{
+public class BookService implements BookRepository {
 
-	Connection _conn;
-	AuthorService _authorService;
+	public static final List<String> COLUMNS = Arrays.asList(
+		"id", "isbn", "title");
+
+	public static final int DEFAULT_AUTHORS_BATCH_SIZE = 100;
+
+	/**
+	 * The entity that change events of books name.
+	 */
+	public static final String ENTITY_NAME = "book";
+
+	public static final List<String> RELATIONS = Arrays.asList("authors");
+
+	final DataSource _dataSource;
+	final FetchPlan _fetchPlan;
+	final boolean _preloadAuthors;
+	final Projection _projection;
+
+	private final AtomicReference<BookServiceSettings> _settings;
+
+	/**
+	 * Checks that the plan only names relationships of books, and of the
+	 * entities they lead to.
+	 *
+	 * @throws IllegalArgumentException if it names any other
+	 */
+	public static void checkFetchPlan(FetchPlan fetchPlan) {
+		if (fetchPlan.isEmpty()) {
+			return;
+		}
+
+		fetchPlan.checkRelations(RELATIONS);
+
+		AuthorService.checkFetchPlan(fetchPlan.get("authors"));
+	}
 
 	public void setAuthorService(AuthorService authorService) {
-		_authorService = authorService;
+		_configure(settings -> settings._authorService = authorService);
+	}
+
+	/**
+	 * Sets how many books streamed from {@link #all()}, {@link
+	 * #fromTitles(String...)} or {@link #fromAuthor(ReadOnlyContext)} get
+	 * their authors resolved together. Batching only happens in the views
+	 * returned by {@link #select(String...)} with {@code "authors"}, or by
+	 * {@link #include(String...)} with a path through the authors. A value
+	 * of one or less disables it and every book queries its own authors on
+	 * demand.
+	 */
+	public void setAuthorsBatchSize(int authorsBatchSize) {
+		_configure(settings -> settings._authorsBatchSize = authorsBatchSize);
+	}
+
+	/**
+	 * When enabled, {@link #all()} and {@link #fromAuthor(ReadOnlyContext)}
+	 * return parallel streams that split the scanned books into id ranges,
+	 * each of them read through its own connection. The sizes of the ranges
+	 * are counted up front, but only as estimates, since books may be
+	 * written while the stream runs.
+	 */
+	public void setParallelScan(boolean parallelScan) {
+		_configure(settings -> settings._parallelScan = parallelScan);
+	}
+
+	/**
+	 * Serves {@link #withId(String)} from the given cache, filling it on
+	 * misses. Creating a book invalidates its id.
+	 */
+	public void setEntityCache(EntityCache<BookQuerier> entityCache) {
+		_configure(settings -> settings._entityCache = entityCache);
+	}
+
+	/**
+	 * Answers {@link #fromIsbns(String...)} and {@link
+	 * #titlesStartingWith(String, int)} from the given index instead of the
+	 * database. Creating a book adds it to the index.
+	 */
+	public void setBookIndex(BookIndex bookIndex) {
+		_configure(settings -> settings._bookIndex = bookIndex);
+	}
+
+	/**
+	 * Sets the JDBC fetch size of the forward only, read only cursors behind
+	 * the streams of this service. Zero leaves the driver default.
+	 */
+	public void setFetchSize(int fetchSize) {
+		_configure(settings -> settings._fetchSize = fetchSize);
+	}
+
+	/**
+	 * Publishes a {@link ChangeEvent} for every book created, and for both
+	 * ends of every link added to an author, through the given publisher,
+	 * once the write commits.
+	 */
+	public void setChangePublisher(ChangePublisher changePublisher) {
+		_configure(settings -> settings._changePublisher = changePublisher);
+	}
+
+	/**
+	 * Records the latency of the lookups and creations of this service, and
+	 * the rows it reads, in the given registry. Nothing is recorded without
+	 * one.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		_configure(settings -> settings._metricsRegistry = metricsRegistry);
+	}
+
+	/**
+	 * Runs every top level {@code map} of the contexts of this service as a
+	 * pipeline of the given budget.
+	 */
+	public void setQueryBudget(QueryBudget queryBudget) {
+		_configure(settings -> settings._queryBudget = queryBudget);
+	}
+
+	/**
+	 * Tracks the cursors behind the streams of this service with the given
+	 * tracker instead of the {@link CursorTracker#getDefault() default} one,
+	 * e.g. to record where leaked streams were opened.
+	 */
+	public void setCursorTracker(CursorTracker cursorTracker) {
+		_configure(settings -> settings._cursorTracker = cursorTracker);
 	}
 
-	public BookService(Connection conn) {
-		_conn = conn;
+	/**
+	 * Queues the books created from now on in the given queue, which
+	 * inserts them, and their links to authors, in the background. Mapping
+	 * a queued book waits for its batch to be committed. The builders run
+	 * on the flusher thread of the queue, and the books are not part of any
+	 * unit of work of the creating thread.
+	 */
+	public void setWriteBehindQueue(WriteBehindQueue writeBehindQueue) {
+		_configure(settings -> settings._writeBehindQueue = writeBehindQueue);
+	}
+
+	public BookService(DataSource dataSource) {
+		this(
+			dataSource, new AtomicReference<>(new BookServiceSettings()),
+			Projection.ALL, false, FetchPlan.NONE);
+
+		_configure(
+			settings -> settings._pendingBooksBatcher =
+				pendingBookContexts -> PendingBookContext.write(
+					this, pendingBookContexts));
+	}
+
+	/**
+	 * Creates a view sharing the given settings.
+	 */
+	private BookService(
+		DataSource dataSource, AtomicReference<BookServiceSettings> settings,
+		Projection projection, boolean preloadAuthors, FetchPlan fetchPlan) {
+
+		_dataSource = dataSource;
+		_settings = settings;
+		_projection = projection;
+		_preloadAuthors = preloadAuthors;
+		_fetchPlan = fetchPlan;
+	}
+
+	/**
+	 * Returns a view of this service whose queries only read the given
+	 * columns of {@link #COLUMNS}, plus the id. Other columns are fetched one
+	 * by one if a querier asks for them. Batch resolution of authors only
+	 * happens if {@code "authors"} is among the selected names.
+	 *
+	 * <p>
+	 * The view shares the settings of this service, so setters called on
+	 * either apply to both.
+	 * </p>
+	 */
+	@Override
+	public BookService select(String... columns) {
+		List<String> names = new ArrayList<>(Arrays.asList(columns));
+
+		boolean preloadAuthors =
+			names.remove("authors") || _fetchPlan.includes("authors");
+
+		return new BookService(
+			_dataSource, _settings,
+			Projection.of(COLUMNS, names.toArray(new String[names.size()])),
+			preloadAuthors, _fetchPlan);
+	}
+
+	/**
+	 * Returns a view of this service whose books come with the
+	 * relationships in the given paths, e.g. {@code "authors"} or {@code
+	 * "authors.books"}, already loaded, so that their queriers answer them
+	 * from memory. Each level costs a single join per lookup, or per batch
+	 * of streamed books, however many entities it holds. Books loaded this
+	 * way bypass the entity cache.
+	 *
+	 * <p>
+	 * The view shares the settings of this service, so setters called on
+	 * either apply to both.
+	 * </p>
+	 *
+	 * @throws IllegalArgumentException if a path names an unknown
+	 *         relationship
+	 */
+	@Override
+	public BookService include(String... paths) {
+		FetchPlan fetchPlan = FetchPlan.of(paths);
+
+		checkFetchPlan(fetchPlan);
+
+		return new BookService(
+			_dataSource, _settings, _projection,
+			_preloadAuthors || fetchPlan.includes("authors"), fetchPlan);
 	}
 
 	public BookContext create(Consumer<BookBuilder> consumer) {
-		return new BookCreationContext(_conn, consumer);
+		if (settings()._writeBehindQueue != null) {
+			return _createBehind(consumer);
+		}
+
+		return new BookCreationContext(this, consumer);
 	}
 
 	public Stream<BookContext> create(Consumer<BookBuilder> ... consumers) {
-		return Stream.of(consumers).map(this::create);
+		return create(Stream.of(consumers));
 	}
 
+	/**
+	 * Creates the books in batches as large as a single multi-row insert,
+	 * as soon as any of the contexts of a batch is mapped, or queues them
+	 * all if writing behind. The consumers of a batch are only read once the
+	 * contexts of the previous one are consumed from the returned stream.
+	 */
 	public Stream<BookContext> create(Stream<Consumer<BookBuilder>> consumers) {
-		return consumers.map(this::create);
+		if (settings()._writeBehindQueue != null) {
+			return consumers.map(this::_createBehind).collect(
+				Collectors.toList()).stream();
+		}
+
+		return ChunkSpliterator.map(
+			consumers, BookCreationBatch.MAX_SIZE,
+			chunk -> new BookCreationBatch(this).addAll(chunk));
+	}
+
+	private BookContext _createBehind(Consumer<BookBuilder> consumer) {
+		PendingBookContext pendingBookContext = new PendingBookContext(
+			this, consumer);
+
+		settings()._writeBehindQueue.add(pendingBookContext);
+
+		return pendingBookContext;
 	}
 
 	public BookContext withId(String id) {
+		return MetricsRegistry.time(
+			settings()._metricsRegistry, "book.withId", () -> _withId(id));
+	}
+
+	@Override
+	public Stream<BookContext> all() {
+		return MetricsRegistry.timeStream(
+			settings()._metricsRegistry, "book.all", this::_all);
+	}
+
+	@Override
+	public Stream<BookContext> fromTitles(String ... titles) {
+		return MetricsRegistry.timeStream(
+			settings()._metricsRegistry, "book.fromTitles",
+			() -> _fromTitles(titles));
+	}
+
+	@Override
+	public Stream<BookContext> fromIsbns(String... isbns) {
+		return MetricsRegistry.timeStream(
+			settings()._metricsRegistry, "book.fromIsbns",
+			() -> _fromIsbns(isbns));
+	}
+
+	@Override
+	public List<String> titlesStartingWith(String prefix, int limit) {
+		return MetricsRegistry.time(
+			settings()._metricsRegistry, "book.titlesStartingWith",
+			() -> _titlesStartingWith(prefix, limit));
+	}
+
+	@Override
+	public Stream<BookContext> fromAuthor(
+		ReadOnlyContext<AuthorQuerier> authorContext) throws SQLException {
+
+		MetricsRegistry metricsRegistry = settings()._metricsRegistry;
+
+		if (metricsRegistry == null) {
+			return _fromAuthor(authorContext);
+		}
+
+		long start = System.nanoTime();
+
+		Stream<BookContext> stream;
+
 		try {
-			PreparedStatement preparedStatement =
-				_conn.prepareStatement(
-					"select * from BOOK WHERE ID=?");
+			stream = _fromAuthor(authorContext);
+		}
+		catch (SQLException e) {
+			metricsRegistry.recordSince("book.fromAuthor", start);
+
+			throw e;
+		}
+
+		return MetricsRegistry.timeStream(
+			metricsRegistry, "book.fromAuthor", () -> stream);
+	}
 
-			preparedStatement.setLong(1, Long.parseLong(id));
+	private BookContext _withId(String id) {
+		long bookId = Long.parseLong(id);
 
-			ResultSet resultSet = preparedStatement.executeQuery();
+		EntityCache<BookQuerier> entityCache = _fetchPlan.isEmpty() ?
+			settings()._entityCache : null;
 
-			return BookQuerier.fromResultSet(
-				_authorService, this, resultSet).
-				map(BookService.BookContextFromQuerier::new).get();
+		if (entityCache != null) {
+			BookQuerier bookQuerier = entityCache.get(bookId);
+
+			if (bookQuerier != null) {
+				return new BookContextFromQuerier(this, bookQuerier);
+			}
+		}
+
+		long stamp = (entityCache == null) ? 0 : entityCache.stamp(bookId);
+
+		try (Connection conn = _dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select " + _projection.toSql("B") +
+					 " from BOOK B WHERE B.ID=?")) {
+
+			preparedStatement.setLong(1, bookId);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					return null;
+				}
+
+				BookQuerierFromRow bookQuerier = BookQuerierFromRow.read(
+					this, resultSet);
+
+				preload(Collections.singletonList(bookQuerier));
+
+				if ((entityCache != null) && _projection.isAll()) {
+					entityCache.put(bookId, bookQuerier, stamp);
+				}
+
+				return new BookContextFromQuerier(this, bookQuerier);
+			}
 		}
 		catch (SQLException e) {
 
@@ -81,62 +414,371 @@ public class BookService
 		return null;
 	}
 
-	@Override
-	public Stream<BookContext> all() {
+	private Stream<BookContext> _all() {
 		try {
-			PreparedStatement preparedStatement =
-				_conn.prepareStatement(
-					"select * from BOOK");
+			if (settings()._parallelScan) {
+				return _rangeQuery("BOOK B", "");
+			}
 
-			ResultSet resultSet = preparedStatement.executeQuery();
+			return _query(
+				"select " + _projection.toSql("B") + " from BOOK B", ps -> {});
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Stream<BookContext> _fromIsbns(String... isbns) {
+		BookIndex bookIndex = settings()._bookIndex;
+
+		if (bookIndex != null) {
+			List<BookQuerierFromRow> bookQueriers = new ArrayList<>();
+
+			for (String isbn : isbns) {
+				BookIndex.Entry entry = bookIndex.get(isbn);
+
+				if (entry != null) {
+					bookQueriers.add(
+						BookQuerierFromRow.of(
+							this, entry.id, entry.isbn, entry.title));
+				}
+			}
 
-			return StreamSupport.stream(
-				new BookContextSpliterator(this, resultSet), false);
+			preload(bookQueriers);
+
+			return bookQueriers.stream().map(
+				bookQuerier -> new BookContextFromQuerier(this, bookQuerier));
+		}
+
+		try {
+			return _query(
+				"select " + _projection.toSql("B") +
+					" from TABLE(X varchar=?) T inner join BOOK B on " +
+						"T.x=B.isbn",
+				ps -> ps.setObject(1, isbns));
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public Stream<BookContext> fromTitles(String ... titles) {
+	private List<String> _titlesStartingWith(String prefix, int limit) {
+		BookIndex bookIndex = settings()._bookIndex;
+
+		if (bookIndex != null) {
+			return bookIndex.titlesStartingWith(prefix, limit);
+		}
+
+		try (Connection conn = _dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "SELECT DISTINCT title FROM BOOK WHERE title LIKE ? " +
+					 "ESCAPE '\\' ORDER BY title LIMIT ?")) {
+
+			preparedStatement.setString(
+				1, prefix.replaceAll("([\\\\%_])", "\\\\$1") + "%");
+			preparedStatement.setInt(2, limit);
+
+			List<String> titles = new ArrayList<>();
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					titles.add(resultSet.getString(1));
+				}
+			}
+
+			return titles;
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Stream<BookContext> _fromTitles(String ... titles) {
 		try {
-			PreparedStatement preparedStatement =
-				_conn.prepareStatement(
-					"select * from TABLE(X varchar=?) T inner join BOOK on " +
-						"T.x=Book.title");
-			preparedStatement.setObject(1, (String[])titles);
+			return _query(
+				"select " + _projection.toSql("B") +
+					" from TABLE(X varchar=?) T inner join BOOK B on " +
+						"T.x=B.title",
+				ps -> ps.setObject(1, titles));
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Stream<BookContext> _fromAuthor(
+			ReadOnlyContext<AuthorQuerier> authorContext)
+		throws SQLException {
+
+		long authorId = Long.parseLong(
+			authorContext.select("id").map(AuthorQuerier::id).get());
+
+		if (settings()._parallelScan) {
+			return _rangeQuery(
+				"BOOK B INNER JOIN AUTHOR_BOOK AB ON B.id=AB.bookId",
+				"AB.authorId=?", authorId);
+		}
 
-			ResultSet resultSet = preparedStatement.executeQuery();
+		return _query(
+			"select " + _projection.toSql("B") +
+				" from BOOK B INNER JOIN AUTHOR_BOOK AB ON " +
+					"B.id=AB.bookId where AB.authorId=?",
+			ps -> ps.setLong(1, authorId));
+	}
+
+	/**
+	 * Resolves the books of all the given authors with a single join, keyed
+	 * by author id, loading the relationships of the plan for all of them
+	 * with a single join per level. Authors without books are absent from
+	 * the returned map.
+	 */
+	public Map<Long, List<BookContext>> fromAuthors(
+		Collection<Long> authorIds, FetchPlan fetchPlan) {
 
-			return StreamSupport.stream(
-				new BookContextSpliterator(this, resultSet), false);
+		Map<Long, List<BookContext>> bookContexts = new HashMap<>();
+
+		if (authorIds.isEmpty()) {
+			return bookContexts;
+		}
+
+		try (Connection conn = _dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "SELECT AB.authorId, " + _projection.toSql("B") +
+					 " FROM TABLE(X BIGINT=?) T INNER JOIN AUTHOR_BOOK AB " +
+						 "ON T.X=AB.authorId INNER JOIN BOOK B ON " +
+							 "B.id=AB.bookId")) {
+
+			preparedStatement.setObject(1, authorIds.toArray(new Long[0]));
+
+			List<BookQuerierFromRow> bookQueriers = new ArrayList<>();
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					BookQuerierFromRow bookQuerier = BookQuerierFromRow.read(
+						this, resultSet);
+
+					bookQueriers.add(bookQuerier);
+
+					bookContexts.computeIfAbsent(
+						resultSet.getLong("authorId"),
+						id -> new ArrayList<>()).add(
+							new BookContextFromQuerier(this, bookQuerier));
+				}
+			}
+
+			MetricsRegistry metricsRegistry = settings()._metricsRegistry;
+
+			if (metricsRegistry != null) {
+				metricsRegistry.counter("book.rows").add(bookQueriers.size());
+			}
+
+			_preload(bookQueriers, fetchPlan);
+
+			return bookContexts;
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public Stream<BookContext> fromAuthor(
-		ReadOnlyContext<AuthorQuerier> authorContext) throws SQLException {
+	private Stream<BookContext> _rangeQuery(
+			String from, String where, Object... parameters)
+		throws SQLException {
 
-		PreparedStatement preparedStatement =
-			_conn.prepareStatement(
-				"select * from BOOK B INNER JOIN AUTHOR_BOOK AB ON " +
-					"B.id=AB.bookId where AB.authorId=?");
+		BookRangeSpliterator bookRangeSpliterator =
+			BookRangeSpliterator.create(this, from, where, parameters);
+
+		return settings()._cursorTracker.track(
+			StreamSupport.stream(bookRangeSpliterator, true),
+			bookRangeSpliterator.getReader(), bookRangeSpliterator.getCursor());
+	}
 
-		preparedStatement.setLong(
-			1, Long.parseLong(authorContext.map(AuthorQuerier::id).get()));
+	/**
+	 * Streams the books returned by the query. The statement is closed and
+	 * the borrowed connection given back once the stream is exhausted or
+	 * closed, or by the cursor tracker if the stream is dropped before.
+	 */
+	private Stream<BookContext> _query(
+			String sql, ParameterSetter parameterSetter)
+		throws SQLException {
+
+		Connection conn = _dataSource.getConnection();
+		PreparedStatement preparedStatement = null;
+
+		try {
+			preparedStatement = prepareCursor(conn, sql);
 
-		ResultSet resultSet = preparedStatement.executeQuery();
+			parameterSetter.set(preparedStatement);
+
+			BookContextSpliterator bookContextSpliterator =
+				new BookContextSpliterator(
+					this, conn, preparedStatement,
+					preparedStatement.executeQuery());
+
+			return settings()._cursorTracker.track(
+				StreamSupport.stream(bookContextSpliterator, false),
+				bookContextSpliterator, bookContextSpliterator.getCursor());
+		}
+		catch (SQLException | RuntimeException e) {
+			if (preparedStatement != null) {
+				preparedStatement.close();
+			}
+
+			conn.close();
+
+			throw e;
+		}
+	}
+
+	PreparedStatement prepareCursor(Connection conn, String sql)
+		throws SQLException {
+
+		PreparedStatement preparedStatement = conn.prepareStatement(
+			sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+		if (settings()._fetchSize > 0) {
+			preparedStatement.setFetchSize(settings()._fetchSize);
+		}
+
+		return preparedStatement;
+	}
+
+	/**
+	 * Reads a single column of a book, for queriers whose projection left it
+	 * out.
+	 */
+	String fetchColumn(long id, String column) {
+		try (Connection conn = _dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "select " + column + " from BOOK where id=?")) {
+
+			preparedStatement.setLong(1, id);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					throw new IllegalStateException("No book with id " + id);
+				}
+
+				return resultSet.getString(1);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Loads the relationships of the fetch plan of this service for all the
+	 * given books, with a single join per level.
+	 */
+	void preload(List<BookQuerierFromRow> bookQueriers) {
+		_preload(bookQueriers, _fetchPlan);
+	}
+
+	/**
+	 * Evicts the book from the entity cache right away, and again once the
+	 * unit of work running, if any, commits, as a concurrent read may cache
+	 * the row as it was until then.
+	 */
+	void invalidate(long id) {
+		EntityCache<BookQuerier> entityCache = settings()._entityCache;
+
+		if (entityCache != null) {
+			entityCache.invalidate(id);
+
+			UnitOfWork.afterCommit(() -> entityCache.invalidate(id));
+		}
+	}
+
+	/**
+	 * Updates what this service keeps in memory about the book just
+	 * created.
+	 */
+	void created(long id, BookBuilder bookBuilder) {
+		invalidate(id);
+
+		BookIndex bookIndex = settings()._bookIndex;
+
+		if (bookIndex != null) {
+			bookIndex.add(id, bookBuilder._isbn, bookBuilder._title);
+		}
+
+		_publish(ENTITY_NAME, id, ChangeEvent.Kind.CREATED);
+	}
+
+	void linked(long authorId, long bookId) {
+		_publish(ENTITY_NAME, bookId, ChangeEvent.Kind.LINKED);
+		_publish(AuthorService.ENTITY_NAME, authorId, ChangeEvent.Kind.LINKED);
+	}
+
+	/**
+	 * Publishes the change once the unit of work running, if any, commits.
+	 */
+	private void _publish(String entity, long id, ChangeEvent.Kind kind) {
+		ChangePublisher changePublisher = settings()._changePublisher;
+
+		if (changePublisher == null) {
+			return;
+		}
+
+		ChangeEvent changeEvent = new ChangeEvent(entity, id, kind);
+
+		UnitOfWork.afterCommit(() -> changePublisher.publish(changeEvent));
+	}
+
+	/**
+	 * Returns the settings of this service as they are now.
+	 */
+	BookServiceSettings settings() {
+		return _settings.get();
+	}
+
+	/**
+	 * Replaces the settings this service shares with its views with a copy
+	 * changed by the consumer.
+	 */
+	private void _configure(Consumer<BookServiceSettings> consumer) {
+		_settings.updateAndGet(settings -> settings.with(consumer));
+	}
+
+	private void _preload(
+		List<BookQuerierFromRow> bookQueriers, FetchPlan fetchPlan) {
+
+		if (!fetchPlan.includes("authors") || bookQueriers.isEmpty()) {
+			return;
+		}
+
+		Set<Long> ids = new LinkedHashSet<>();
+
+		for (BookQuerierFromRow bookQuerier : bookQueriers) {
+			ids.add(bookQuerier.id());
+		}
+
+		Map<Long, List<AuthorContext>> authorContexts =
+			settings()._authorService.fromBooks(ids, fetchPlan.get("authors"));
+
+		for (BookQuerierFromRow bookQuerier : bookQueriers) {
+			bookQuerier.setAuthorContexts(
+				authorContexts.getOrDefault(
+					bookQuerier.id(), Collections.emptyList()));
+		}
+	}
+
+	private interface ParameterSetter {
+
+		public void set(PreparedStatement preparedStatement)
+			throws SQLException;
 
-		return StreamSupport.stream(
-			new BookContextSpliterator(this, resultSet), false);
 	}
 
 	static class BookContextFromQuerier implements BookContext {
+		private final BookService _bookService;
 		private final BookQuerier _querier;
 
-		public BookContextFromQuerier(BookQuerier querier) {
+		public BookContextFromQuerier(
+			BookService bookService, BookQuerier querier) {
+
+			_bookService = bookService;
 			_querier = querier;
 		}
 
@@ -144,8 +786,28 @@ public class BookService
 		public <R> Result<R> map(
 			Function<BookQuerier, R> mapper) {
 
-			return new CorrectResult<>(
-				mapper.apply(_querier));
+			MetricsRegistry metricsRegistry =
+				_bookService.settings()._metricsRegistry;
+
+			if (metricsRegistry == null) {
+				return _map(mapper);
+			}
+
+			long start = System.nanoTime();
+
+			return metricsRegistry.recordSince(
+				"book.map", start, _map(mapper));
+		}
+
+		private <R> Result<R> _map(Function<BookQuerier, R> mapper) {
+			QueryBudget queryBudget = _bookService.settings()._queryBudget;
+
+			if (queryBudget == null) {
+				return new CorrectResult<>(mapper.apply(_querier));
+			}
+
+			return queryBudget.run(
+				() -> new CorrectResult<>(mapper.apply(_querier)));
 		}
 
 		@Override
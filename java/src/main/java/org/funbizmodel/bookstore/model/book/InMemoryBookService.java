@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.model.InMemoryBookstore;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.author.InMemoryAuthorService;
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.ReadOnlyContext;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * The books of an {@link InMemoryBookstore}, answering the same queries as
+ * {@link BookService} without a database.
+ *
+ * <p>
+ * Contexts read the store every time they are mapped, so they always see
+ * its latest state. As with {@link BookService}, creations happen the first
+ * time a created context is mapped, books are listed in id order, and
+ * {@link #withId(String)} returns {@code null} for missing books.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class InMemoryBookService implements BookRepository {
+
+	private InMemoryAuthorService _authorService;
+	private final InMemoryBookstore _bookstore;
+
+	public InMemoryBookService(InMemoryBookstore bookstore) {
+		_bookstore = bookstore;
+	}
+
+	public void setAuthorService(InMemoryAuthorService authorService) {
+		_authorService = authorService;
+	}
+
+	@Override
+	public BookContext create(Consumer<BookBuilder> consumer) {
+		return new BookCreationContextInMemory(consumer);
+	}
+
+	@Override
+	public Stream<BookContext> create(Consumer<BookBuilder>... consumers) {
+		return create(Stream.of(consumers));
+	}
+
+	@Override
+	public Stream<BookContext> create(Stream<Consumer<BookBuilder>> consumers) {
+		return consumers.map(this::create).collect(
+			Collectors.toList()).stream();
+	}
+
+	@Override
+	public BookContext withId(String id) {
+		long bookId = Long.parseLong(id);
+
+		if (!_bookstore.hasBook(bookId)) {
+			return null;
+		}
+
+		return new StoredBookContext(bookId);
+	}
+
+	@Override
+	public Stream<BookContext> all() {
+		return _contexts(
+			LongStream.rangeClosed(1, _bookstore.getLastBookId()).filter(
+				_bookstore::hasBook));
+	}
+
+	@Override
+	public Stream<BookContext> fromTitles(String... titles) {
+		return _contexts(
+			Stream.of(titles).flatMapToLong(
+				title -> LongStream.of(
+					_bookstore.getBookIdsWithTitle(title))));
+	}
+
+	@Override
+	public Stream<BookContext> fromIsbns(String... isbns) {
+		return _contexts(
+			Stream.of(isbns).mapToLong(_bookstore::getBookIdWithIsbn).filter(
+				bookId -> bookId >= 0));
+	}
+
+	@Override
+	public List<String> titlesStartingWith(String prefix, int limit) {
+		return _bookstore.getTitlesStartingWith(prefix, limit);
+	}
+
+	@Override
+	public Stream<BookContext> fromAuthor(
+		ReadOnlyContext<AuthorQuerier> authorContext) {
+
+		long authorId = Long.parseLong(
+			authorContext.select("id").map(AuthorQuerier::id).get());
+
+		return _contexts(LongStream.of(_bookstore.getBookIds(authorId)));
+	}
+
+	/**
+	 * Returns the book as it is now, or {@code null} if it does not exist.
+	 */
+	public BookQuerier read(long bookId) {
+		String isbn = _bookstore.getIsbn(bookId);
+
+		if (isbn == null) {
+			return null;
+		}
+
+		return new StoredBookQuerier(
+			bookId, isbn, _bookstore.getTitle(bookId));
+	}
+
+	private Stream<BookContext> _contexts(LongStream bookIds) {
+		return bookIds.mapToObj(StoredBookContext::new);
+	}
+
+	private class BookCreationContextInMemory implements BookContext {
+
+		private final Consumer<BookBuilder> _consumer;
+		private Result<Long> _idResult;
+
+		public BookCreationContextInMemory(Consumer<BookBuilder> consumer) {
+			_consumer = consumer;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<BookQuerier, R> mapper) {
+			return _create().flatMap(
+				id -> new StoredBookContext(id).map(mapper));
+		}
+
+		@Override
+		public BookContext execute(SqlCommand command) {
+			return this;
+		}
+
+		private synchronized Result<Long> _create() {
+			if (_idResult == null) {
+				_idResult = _bookstore.execute(() -> {
+					BookBuilder bookBuilder = new BookBuilder();
+
+					_consumer.accept(bookBuilder);
+
+					long bookId = _bookstore.addBook(
+						bookBuilder._isbn, bookBuilder._title);
+
+					bookBuilder._authorContexts.forEach(
+						ac -> _bookstore.link(
+							Long.parseLong(
+								ac.select("id").map(AuthorQuerier::id).get()),
+							bookId));
+
+					return bookId;
+				});
+			}
+
+			return _idResult;
+		}
+
+	}
+
+	private class StoredBookContext implements BookContext {
+
+		private final long _bookId;
+
+		public StoredBookContext(long bookId) {
+			_bookId = bookId;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<BookQuerier, R> mapper) {
+			BookQuerier bookQuerier = read(_bookId);
+
+			if (bookQuerier == null) {
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError("No book with id " + _bookId);
+
+				return errorResult;
+			}
+
+			return new CorrectResult<>(mapper.apply(bookQuerier));
+		}
+
+		@Override
+		public BookContext execute(SqlCommand command) {
+			return this;
+		}
+
+	}
+
+	private class StoredBookQuerier implements BookQuerier {
+
+		private final long _id;
+		private final String _isbn;
+		private final String _title;
+
+		public StoredBookQuerier(long id, String isbn, String title) {
+			_id = id;
+			_isbn = isbn;
+			_title = title;
+		}
+
+		@Override
+		public long id() {
+			return _id;
+		}
+
+		@Override
+		public String isbn() {
+			return _isbn;
+		}
+
+		@Override
+		public String title() {
+			return _title;
+		}
+
+		@Override
+		public <R> Stream<R> authors(Function<AuthorQuerier, R> function) {
+			return LongStream.of(_bookstore.getAuthorIds(_id)).mapToObj(
+				_authorService::read).filter(Objects::nonNull).map(function);
+		}
+
+	}
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.service.ErrorResult;
+import org.funbizmodel.bookstore.service.PendingWrite;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+import org.funbizmodel.bookstore.service.WriteBehindQueue;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A book queued for creation in a {@link WriteBehindQueue}. Mapping it
+ * waits for its batch to be committed and then maps the created book, as
+ * a {@link BookCreationContext} would, without querying it again.
+ *
+ * @author Carlos Sierra Andrés
+ */
+class PendingBookContext extends PendingWrite implements BookContext {
+
+	private volatile BookContext _bookContext;
+	private final Consumer<BookBuilder> _consumer;
+	private final WriteBehindQueue _writeBehindQueue;
+
+	public PendingBookContext(
+		BookService bookService, Consumer<BookBuilder> consumer) {
+
+		super(bookService.settings()._pendingBooksBatcher);
+
+		_consumer = consumer;
+		_writeBehindQueue = bookService.settings()._writeBehindQueue;
+	}
+
+	/**
+	 * Inserts the books with a single {@link BookCreationBatch}.
+	 */
+	static void write(
+			BookService bookService,
+			List<PendingBookContext> pendingBookContexts)
+		throws SQLException {
+
+		BookCreationBatch bookCreationBatch = new BookCreationBatch(
+			bookService);
+
+		for (PendingBookContext pendingBookContext :
+				pendingBookContexts) {
+
+			pendingBookContext._bookContext = bookCreationBatch.add(
+				pendingBookContext._consumer);
+		}
+
+		bookCreationBatch.flush();
+	}
+
+	@Override
+	public <R> Result<R> map(Function<BookQuerier, R> mapper) {
+		try {
+			_writeBehindQueue.await(this);
+		}
+		catch (SQLException e) {
+			ErrorResult<R> errorResult = new ErrorResult<>();
+
+			errorResult.addError(e.getMessage());
+
+			return errorResult;
+		}
+
+		return _bookContext.map(mapper);
+	}
+
+	@Override
+	public BookContext execute(SqlCommand command) {
+		return this;
+	}
+
+}
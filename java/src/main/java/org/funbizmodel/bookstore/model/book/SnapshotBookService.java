@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.model.book;
+
+import org.funbizmodel.bookstore.model.CatalogSnapshot;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.author.SnapshotAuthorService;
+import org.funbizmodel.bookstore.service.CorrectResult;
+import org.funbizmodel.bookstore.service.ReadOnlyContext;
+import org.funbizmodel.bookstore.service.Result;
+import org.funbizmodel.bookstore.service.SqlCommand;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The books of a {@link CatalogSnapshot}, answering the queries of {@link
+ * BookService} from the mapped file. Queriers read the id in place and
+ * decode the ISBN and the title the first time they are asked for.
+ *
+ * <p>
+ * The snapshot is read-only: creating books or executing commands on them
+ * throws {@link UnsupportedOperationException}. As with {@link
+ * BookService}, {@link #withId(String)} returns {@code null} for missing
+ * books.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class SnapshotBookService implements BookRepository {
+
+	private SnapshotAuthorService _authorService;
+	private final CatalogSnapshot _catalogSnapshot;
+
+	public SnapshotBookService(CatalogSnapshot catalogSnapshot) {
+		_catalogSnapshot = catalogSnapshot;
+	}
+
+	public void setAuthorService(SnapshotAuthorService authorService) {
+		_authorService = authorService;
+	}
+
+	@Override
+	public BookContext create(Consumer<BookBuilder> consumer) {
+		throw new UnsupportedOperationException(
+			"The catalog snapshot is read-only");
+	}
+
+	@Override
+	public Stream<BookContext> create(Consumer<BookBuilder>... consumers) {
+		return create(Stream.of(consumers));
+	}
+
+	@Override
+	public Stream<BookContext> create(Stream<Consumer<BookBuilder>> consumers) {
+		throw new UnsupportedOperationException(
+			"The catalog snapshot is read-only");
+	}
+
+	@Override
+	public BookContext withId(String id) {
+		int bookPosition = _catalogSnapshot.findBook(Long.parseLong(id));
+
+		if (bookPosition < 0) {
+			return null;
+		}
+
+		return new SnapshotBookContext(bookPosition);
+	}
+
+	@Override
+	public Stream<BookContext> all() {
+		return _contexts(IntStream.range(0, _catalogSnapshot.getBookCount()));
+	}
+
+	@Override
+	public Stream<BookContext> fromTitles(String... titles) {
+		return _contexts(
+			Stream.of(titles).flatMapToInt(
+				_catalogSnapshot::findBooksWithTitle));
+	}
+
+	@Override
+	public Stream<BookContext> fromIsbns(String... isbns) {
+		return _contexts(
+			Stream.of(isbns).mapToInt(
+				_catalogSnapshot::findBookWithIsbn).filter(
+					bookPosition -> bookPosition >= 0));
+	}
+
+	/**
+	 * Returns up to {@code limit} distinct titles that start with the
+	 * prefix, in the order of their code points, which only differs from
+	 * {@link String#compareTo(String)} for characters outside the basic
+	 * multilingual plane.
+	 */
+	@Override
+	public List<String> titlesStartingWith(String prefix, int limit) {
+		return _catalogSnapshot.getTitlesStartingWith(prefix, limit);
+	}
+
+	@Override
+	public Stream<BookContext> fromAuthor(
+		ReadOnlyContext<AuthorQuerier> authorContext) {
+
+		int authorPosition = _catalogSnapshot.findAuthor(
+			Long.parseLong(
+				authorContext.select("id").map(AuthorQuerier::id).get()));
+
+		if (authorPosition < 0) {
+			return Stream.empty();
+		}
+
+		return _contexts(_catalogSnapshot.getBookPositions(authorPosition));
+	}
+
+	/**
+	 * Returns the book at the given position of the snapshot.
+	 */
+	public BookQuerier readAt(int bookPosition) {
+		return new SnapshotBookQuerier(bookPosition);
+	}
+
+	private Stream<BookContext> _contexts(IntStream bookPositions) {
+		return bookPositions.mapToObj(SnapshotBookContext::new);
+	}
+
+	private class SnapshotBookContext implements BookContext {
+
+		private final int _bookPosition;
+
+		public SnapshotBookContext(int bookPosition) {
+			_bookPosition = bookPosition;
+		}
+
+		@Override
+		public <R> Result<R> map(Function<BookQuerier, R> mapper) {
+			return new CorrectResult<>(mapper.apply(readAt(_bookPosition)));
+		}
+
+		@Override
+		public BookContext execute(SqlCommand command) {
+			throw new UnsupportedOperationException(
+				"The catalog snapshot is read-only");
+		}
+
+	}
+
+	private class SnapshotBookQuerier implements BookQuerier {
+
+		private final int _bookPosition;
+		private String _isbn;
+		private String _title;
+
+		public SnapshotBookQuerier(int bookPosition) {
+			_bookPosition = bookPosition;
+		}
+
+		@Override
+		public long id() {
+			return _catalogSnapshot.getBookId(_bookPosition);
+		}
+
+		@Override
+		public String isbn() {
+			if (_isbn == null) {
+				_isbn = _catalogSnapshot.getIsbn(_bookPosition);
+			}
+
+			return _isbn;
+		}
+
+		@Override
+		public String title() {
+			if (_title == null) {
+				_title = _catalogSnapshot.getTitle(_bookPosition);
+			}
+
+			return _title;
+		}
+
+		@Override
+		public <R> Stream<R> authors(Function<AuthorQuerier, R> function) {
+			return _catalogSnapshot.getAuthorPositions(_bookPosition).mapToObj(
+				_authorService::readAt).map(function);
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link Result} that is still being computed. Callbacks registered with
+ * {@link #andThen(Consumer)} and {@link #orElse(Consumer)} run once the
+ * result completes, on the thread that completes it, with the same
+ * semantics as their synchronous counterparts.
+ *
+ * <p>
+ * Independent lookups started asynchronously run concurrently, each one on
+ * its own connection, so waiting for all of them takes as long as the
+ * slowest one rather than the sum of them.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class AsyncResult<R> {
+
+	private final CompletableFuture<Result<R>> _completableFuture;
+
+	/**
+	 * Returns the executor used when none is given. Lookups block on JDBC,
+	 * so it is an unbounded pool of daemon threads rather than the common
+	 * fork join pool; the number of concurrent queries is bounded by the
+	 * connection pool instead.
+	 */
+	public static Executor defaultExecutor() {
+		return DefaultExecutorHolder._EXECUTOR;
+	}
+
+	/**
+	 * Computes the result on the given executor. Exceptions thrown by the
+	 * supplier complete the result as an {@link ErrorResult}.
+	 */
+	public static <R> AsyncResult<R> supplyAsync(
+		Supplier<Result<R>> supplier, Executor executor) {
+
+		return new AsyncResult<>(
+			CompletableFuture.supplyAsync(supplier, executor));
+	}
+
+	public static <R> AsyncResult<R> completed(Result<R> result) {
+		return new AsyncResult<>(CompletableFuture.completedFuture(result));
+	}
+
+	public AsyncResult(CompletionStage<Result<R>> completionStage) {
+		_completableFuture = completionStage.toCompletableFuture().handle(
+			(result, throwable) -> {
+				if (throwable == null) {
+					return result;
+				}
+
+				Throwable cause = throwable;
+
+				while ((cause instanceof CompletionException) &&
+					   (cause.getCause() != null)) {
+
+					cause = cause.getCause();
+				}
+
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError(String.valueOf(cause.getMessage()));
+
+				return errorResult;
+			});
+	}
+
+	public AsyncResult<R> andThen(Consumer<R> consumer) {
+		return new AsyncResult<>(
+			_completableFuture.thenApply(result -> result.andThen(consumer)));
+	}
+
+	public AsyncResult<R> orElse(Consumer<List<String>> consumer) {
+		return new AsyncResult<>(
+			_completableFuture.thenApply(result -> result.orElse(consumer)));
+	}
+
+	/**
+	 * Returns the result of applying the function to the value once it
+	 * completes, as {@link Result#map(Function)} does. Exceptions thrown by
+	 * the function complete it as an {@link ErrorResult}.
+	 */
+	public <S> AsyncResult<S> map(Function<R, S> mapper) {
+		return new AsyncResult<>(
+			_completableFuture.thenApply(result -> result.map(mapper)));
+	}
+
+	/**
+	 * Returns the result the function computes from the value once it
+	 * completes, as {@link Result#flatMap(Function)} does.
+	 */
+	public <S> AsyncResult<S> flatMap(Function<R, Result<S>> mapper) {
+		return new AsyncResult<>(
+			_completableFuture.thenApply(result -> result.flatMap(mapper)));
+	}
+
+	public CompletionStage<R> getOrElse(Function<List<String>, R> function) {
+		return _completableFuture.thenApply(
+			result -> result.getOrElse(function));
+	}
+
+	/**
+	 * Waits for the result to complete.
+	 */
+	public Result<R> join() {
+		return _completableFuture.join();
+	}
+
+	/**
+	 * Waits for the result to complete and returns its value, throwing like
+	 * {@link Result#get()} if it has errors.
+	 */
+	public R get() {
+		return join().get();
+	}
+
+	public CompletionStage<Result<R>> toCompletionStage() {
+		return _completableFuture;
+	}
+
+	private static class DefaultExecutorHolder {
+
+		private static final AtomicInteger _threadCount = new AtomicInteger();
+
+		private static final ExecutorService _EXECUTOR =
+			Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(
+					runnable,
+					"bookstore-async-" + _threadCount.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+	}
+
+}
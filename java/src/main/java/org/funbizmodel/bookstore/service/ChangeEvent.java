@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.Objects;
+
+/**
+ * A change to an entity, named as in the metrics, e.g. {@code author}, and
+ * known by id. Events say what changed, not how, so that subscribers only
+ * learn which of their cached entities to drop.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class ChangeEvent {
+
+	private final String _entity;
+	private final long _id;
+	private final Kind _kind;
+
+	public ChangeEvent(String entity, long id, Kind kind) {
+		_entity = Objects.requireNonNull(entity);
+		_id = id;
+		_kind = Objects.requireNonNull(kind);
+	}
+
+	public String getEntity() {
+		return _entity;
+	}
+
+	public long getId() {
+		return _id;
+	}
+
+	public Kind getKind() {
+		return _kind;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+
+		if (!(object instanceof ChangeEvent)) {
+			return false;
+		}
+
+		ChangeEvent changeEvent = (ChangeEvent)object;
+
+		return (_id == changeEvent._id) &&
+			_entity.equals(changeEvent._entity) &&
+			(_kind == changeEvent._kind);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(_entity, _id, _kind);
+	}
+
+	@Override
+	public String toString() {
+		return _kind + " " + _entity + " " + _id;
+	}
+
+	public enum Kind {
+
+		/**
+		 * The entity was inserted.
+		 */
+		CREATED,
+
+		/**
+		 * A column of the entity changed.
+		 */
+		UPDATED,
+
+		/**
+		 * The entity was deleted.
+		 */
+		DELETED,
+
+		/**
+		 * A link between the entity and another one was added, e.g. an
+		 * {@code AUTHOR_BOOK} row, which is published for both ends.
+		 */
+		LINKED
+
+	}
+
+}
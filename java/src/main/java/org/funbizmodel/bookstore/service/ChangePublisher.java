@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+/**
+ * Sends the {@link ChangeEvent}s of the writes of the services somewhere,
+ * e.g. to the other nodes caching the same entities. Services publish an
+ * event once the write commits, from the writing thread, so publishing
+ * should not block.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface ChangePublisher {
+
+	public void publish(ChangeEvent changeEvent);
+
+}
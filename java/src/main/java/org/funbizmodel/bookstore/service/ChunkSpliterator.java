@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Maps the elements of a stream a chunk at a time: it pulls up to the chunk
+ * size elements from the source before handing any of them to the function,
+ * and only pulls the next chunk once the results of the previous one are
+ * consumed.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class ChunkSpliterator<T, R> implements Spliterator<R> {
+
+	private final Deque<R> _buffer = new ArrayDeque<>();
+	private final int _chunkSize;
+	private final Function<List<T>, List<R>> _function;
+	private final Spliterator<T> _spliterator;
+
+	/**
+	 * Returns a sequential stream of the results of applying the function to
+	 * consecutive chunks of the given stream. Closing it closes the source.
+	 */
+	public static <T, R> Stream<R> map(
+		Stream<T> stream, int chunkSize, Function<List<T>, List<R>> function) {
+
+		return StreamSupport.stream(
+			new ChunkSpliterator<>(stream.spliterator(), chunkSize, function),
+			false).onClose(stream::close);
+	}
+
+	public ChunkSpliterator(
+		Spliterator<T> spliterator, int chunkSize,
+		Function<List<T>, List<R>> function) {
+
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException(
+				"Chunk size must be positive: " + chunkSize);
+		}
+
+		_spliterator = spliterator;
+		_chunkSize = chunkSize;
+		_function = function;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super R> action) {
+		while (_buffer.isEmpty()) {
+			List<T> chunk = new ArrayList<>(_chunkSize);
+
+			while ((chunk.size() < _chunkSize) &&
+				   _spliterator.tryAdvance(chunk::add)) {
+			}
+
+			if (chunk.isEmpty()) {
+				return false;
+			}
+
+			_buffer.addAll(_function.apply(chunk));
+		}
+
+		action.accept(_buffer.poll());
+
+		return true;
+	}
+
+	@Override
+	public Spliterator<R> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return _spliterator.estimateSize();
+	}
+
+	@Override
+	public int characteristics() {
+		return _spliterator.characteristics() & ORDERED;
+	}
+}
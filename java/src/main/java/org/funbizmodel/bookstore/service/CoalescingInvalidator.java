@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidates the caches of a node as the changes of other nodes arrive,
+ * coalescing bursts of them.
+ *
+ * <p>
+ * The first event after a quiet period schedules a flush after the delay;
+ * the events arriving until then only add their id to a set per entity.
+ * The flush drops each distinct id once from the entity caches registered
+ * for the entity, and clears its other {@link Invalidatable}s, such as a
+ * book index, once. An entity gathering more than the maximum number of
+ * ids in a single delay has its caches cleared instead, so under heavy
+ * write load a burst costs a handful of invalidations.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class CoalescingInvalidator implements AutoCloseable, ChangeListener {
+
+	public static final long DEFAULT_DELAY_MILLIS = 50;
+
+	public static final int DEFAULT_MAX_IDS = 1024;
+
+	private boolean _closed;
+	private final long _delayMillis;
+	private final ScheduledExecutorService _executor;
+	private final int _maxIds;
+	private volatile MetricsRegistry _metricsRegistry;
+	private Set<String> _overflowed = new HashSet<>();
+	private Map<String, LongHashMap<ChangeEvent>> _pending = new HashMap<>();
+	private boolean _scheduled;
+	private final Map<String, Targets> _targets = new ConcurrentHashMap<>();
+
+	public CoalescingInvalidator() {
+		this(DEFAULT_DELAY_MILLIS, DEFAULT_MAX_IDS);
+	}
+
+	public CoalescingInvalidator(long delayMillis, int maxIds) {
+		_delayMillis = delayMillis;
+		_maxIds = maxIds;
+
+		_executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bookstore-invalidator");
+
+			thread.setDaemon(true);
+
+			return thread;
+		});
+	}
+
+	/**
+	 * Drops the changed entities of the given kind from the cache.
+	 */
+	public void addEntityCache(String entity, EntityCache<?> entityCache) {
+		_targets(entity)._entityCaches.add(entityCache);
+	}
+
+	/**
+	 * Clears the invalidatable whenever entities of the given kind change.
+	 */
+	public void addInvalidatable(String entity, Invalidatable invalidatable) {
+		_targets(entity)._invalidatables.add(invalidatable);
+	}
+
+	/**
+	 * Counts the events received as {@code changes.received}, and the ids
+	 * and whole caches invalidated as {@code changes.invalidated}, in the
+	 * given registry. Flushes are timed as {@code changes.flush}.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		_metricsRegistry = metricsRegistry;
+	}
+
+	@Override
+	public void changed(ChangeEvent changeEvent) {
+		MetricsRegistry metricsRegistry = _metricsRegistry;
+
+		if (metricsRegistry != null) {
+			metricsRegistry.increment("changes.received");
+		}
+
+		String entity = changeEvent.getEntity();
+
+		if (!_targets.containsKey(entity)) {
+			return;
+		}
+
+		synchronized (this) {
+			if (_closed) {
+				return;
+			}
+
+			if (!_overflowed.contains(entity)) {
+				LongHashMap<ChangeEvent> ids = _pending.computeIfAbsent(
+					entity, key -> new LongHashMap<>());
+
+				ids.put(changeEvent.getId(), changeEvent);
+
+				if (ids.size() > _maxIds) {
+					_pending.remove(entity);
+
+					_overflowed.add(entity);
+				}
+			}
+
+			if (!_scheduled) {
+				_scheduled = true;
+
+				_executor.schedule(
+					this::flush, _delayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates what the events received so far changed, without waiting
+	 * for the delay.
+	 */
+	public void flush() {
+		Set<String> overflowed;
+		Map<String, LongHashMap<ChangeEvent>> pending;
+
+		synchronized (this) {
+			overflowed = _overflowed;
+			pending = _pending;
+
+			_overflowed = new HashSet<>();
+			_pending = new HashMap<>();
+			_scheduled = false;
+		}
+
+		if (overflowed.isEmpty() && pending.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		long invalidated = 0;
+
+		for (String entity : overflowed) {
+			Targets targets = _targets.get(entity);
+
+			for (EntityCache<?> entityCache : targets._entityCaches) {
+				entityCache.invalidateAll();
+
+				invalidated++;
+			}
+
+			invalidated += targets.invalidateAll();
+		}
+
+		for (Map.Entry<String, LongHashMap<ChangeEvent>> entry :
+				pending.entrySet()) {
+
+			Targets targets = _targets.get(entry.getKey());
+
+			long[] ids = entry.getValue().keys();
+
+			for (EntityCache<?> entityCache : targets._entityCaches) {
+				for (long id : ids) {
+					entityCache.invalidate(id);
+				}
+
+				invalidated += ids.length;
+			}
+
+			invalidated += targets.invalidateAll();
+		}
+
+		MetricsRegistry metricsRegistry = _metricsRegistry;
+
+		if (metricsRegistry != null) {
+			metricsRegistry.counter("changes.invalidated").add(invalidated);
+			metricsRegistry.recordSince("changes.flush", start);
+		}
+	}
+
+	/**
+	 * Invalidates what the events received so far changed, and ignores the
+	 * events received from now on.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			_closed = true;
+		}
+
+		_executor.shutdownNow();
+
+		flush();
+	}
+
+	private Targets _targets(String entity) {
+		return _targets.computeIfAbsent(entity, key -> new Targets());
+	}
+
+	private static class Targets {
+
+		private final List<EntityCache<?>> _entityCaches =
+			new CopyOnWriteArrayList<>();
+		private final List<Invalidatable> _invalidatables =
+			new CopyOnWriteArrayList<>();
+
+		public int invalidateAll() {
+			for (Invalidatable invalidatable : _invalidatables) {
+				invalidatable.invalidateAll();
+			}
+
+			return _invalidatables.size();
+		}
+
+	}
+
+}
@@ -59,6 +59,16 @@ public class CorrectResult<R> implements Result<R> {
 		return get();
 	}
 
+	@Override
+	public <S> Result<S> map(Function<R, S> mapper) {
+		return new CorrectResult<>(mapper.apply(_result));
+	}
+
+	@Override
+	public <S> Result<S> flatMap(Function<R, Result<S>> mapper) {
+		return mapper.apply(_result);
+	}
+
 	@Override
 	public String toString() {
 		return "Result: " + _result.toString();
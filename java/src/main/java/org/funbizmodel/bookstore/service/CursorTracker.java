@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of the cursors behind the streams of the services, so that
+ * the ones never closed are reported and released.
+ *
+ * <p>
+ * A cursor closes by itself once its stream is exhausted, and when the
+ * stream is closed. A stream left partially consumed, for instance by
+ * {@code findFirst} or {@code limit}, keeps its cursor, statement and
+ * pooled connection until it is closed. Streams dropped without closing are
+ * detected once whatever reads their cursors, such as their spliterators,
+ * is garbage collected, as iterators and spliterators taken from a stream
+ * may outlive it. Their cursors are then closed and reported as leaks,
+ * logged as warnings with the stack trace of where they were opened if the
+ * tracker records them. Collected readers are checked every time a cursor
+ * is tracked, and on {@link #reap()}.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class CursorTracker {
+
+	private static final CursorTracker _DEFAULT = new CursorTracker(false);
+
+	private static final Logger _log = Logger.getLogger(
+		CursorTracker.class.getName());
+
+	private final boolean _recordStackTraces;
+	private final ReferenceQueue<Object> _referenceQueue =
+		new ReferenceQueue<>();
+	private final Set<TrackedCursor> _trackedCursors =
+		ConcurrentHashMap.newKeySet();
+	private final AtomicLong _leaks = new AtomicLong();
+
+	/**
+	 * Returns the tracker used by services not given one, which does not
+	 * record stack traces.
+	 */
+	public static CursorTracker getDefault() {
+		return _DEFAULT;
+	}
+
+	/**
+	 * @param recordStackTraces whether to record where every cursor is
+	 *        opened, to report it if the cursor leaks. Recording costs a
+	 *        stack trace per stream.
+	 */
+	public CursorTracker(boolean recordStackTraces) {
+		_recordStackTraces = recordStackTraces;
+	}
+
+	/**
+	 * Returns the stream, closing the cursor when the stream is closed, or
+	 * when the reader is garbage collected without the stream having been
+	 * closed.
+	 *
+	 * @param reader what reads the cursor, held by every consumer of the
+	 *        stream, e.g. the spliterator the stream was created from. It
+	 *        must not be reachable from the cursor.
+	 */
+	public <T> Stream<T> track(Stream<T> stream, Object reader, Cursor cursor) {
+		reap();
+
+		TrackedCursor trackedCursor = new TrackedCursor(
+			reader, _referenceQueue, cursor,
+			_recordStackTraces ?
+				new Throwable("Cursor opened by " + Thread.currentThread()) :
+				null);
+
+		_trackedCursors.add(trackedCursor);
+
+		return stream.onClose(trackedCursor::close);
+	}
+
+	/**
+	 * Closes and reports the cursors whose readers were garbage collected
+	 * without their streams being closed.
+	 *
+	 * @return how many cursors were leaked
+	 */
+	public int reap() {
+		int leaks = 0;
+
+		Reference<?> reference;
+
+		while ((reference = _referenceQueue.poll()) != null) {
+			TrackedCursor trackedCursor = (TrackedCursor)reference;
+
+			_trackedCursors.remove(trackedCursor);
+
+			if (trackedCursor._cursor.isClosed()) {
+				continue;
+			}
+
+			leaks++;
+
+			_leaks.incrementAndGet();
+
+			if (trackedCursor._openedAt != null) {
+				_log.log(
+					Level.WARNING,
+					"Closing a cursor whose stream was never closed",
+					trackedCursor._openedAt);
+			}
+			else {
+				_log.warning(
+					"Closing a cursor whose stream was never closed. Track " +
+						"cursors with a CursorTracker recording stack " +
+							"traces to find where it was opened.");
+			}
+
+			trackedCursor._cursor.close();
+		}
+
+		return leaks;
+	}
+
+	/**
+	 * Returns how many tracked cursors are still open.
+	 */
+	public int getOpenCount() {
+		int count = 0;
+
+		for (TrackedCursor trackedCursor : _trackedCursors) {
+			if (!trackedCursor._cursor.isClosed()) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns where the cursors still open were opened, or an empty list if
+	 * stack traces are not recorded.
+	 */
+	public List<Throwable> getOpenCursors() {
+		List<Throwable> openCursors = new ArrayList<>();
+
+		for (TrackedCursor trackedCursor : _trackedCursors) {
+			if (!trackedCursor._cursor.isClosed() &&
+				(trackedCursor._openedAt != null)) {
+
+				openCursors.add(trackedCursor._openedAt);
+			}
+		}
+
+		return openCursors;
+	}
+
+	/**
+	 * Returns how many cursors have been closed by {@link #reap()} so far.
+	 */
+	public long getLeakCount() {
+		return _leaks.get();
+	}
+
+	/**
+	 * A cursor over the rows of a query, holding a statement and a pooled
+	 * connection until closed. Closing must be idempotent and may happen
+	 * on any thread.
+	 */
+	public interface Cursor {
+
+		public boolean isClosed();
+
+		public void close();
+
+	}
+
+	private class TrackedCursor extends PhantomReference<Object> {
+
+		private final Cursor _cursor;
+		private final Throwable _openedAt;
+
+		public TrackedCursor(
+			Object reader, ReferenceQueue<Object> referenceQueue,
+			Cursor cursor, Throwable openedAt) {
+
+			super(reader, referenceQueue);
+
+			_cursor = cursor;
+			_openedAt = openedAt;
+		}
+
+		public void close() {
+			_trackedCursors.remove(this);
+
+			_cursor.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of immutable entity snapshots keyed by id, shared by
+ * every context of a service.
+ *
+ * <p>
+ * Entries are spread over independently locked segments, each evicting its
+ * least recently used entry when full, so readers of different ids rarely
+ * contend. Segments key their entries by the unboxed id. Entries older than
+ * the time to live are treated as missing.
+ * </p>
+ *
+ * <p>
+ * A snapshot read from the database may be stale by the time it is put, if
+ * the entity was written and invalidated while it was being read. Readers
+ * take a {@link #stamp(long)} before reading and put with it, and the put is
+ * dropped if the segment of the id was invalidated in between.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class EntityCache<V> implements Invalidatable {
+
+	public static final int SEGMENTS = 16;
+
+	private final Segment<V>[] _segments;
+	private final long _ttlNanos;
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+	private final AtomicLong _evictions = new AtomicLong();
+	private final AtomicLong _expirations = new AtomicLong();
+
+	/**
+	 * @param maxEntries the maximum number of entries, spread evenly over
+	 *        the segments
+	 * @param ttl how long an entry is served after being put, zero or
+	 *        less for no limit
+	 */
+	@SuppressWarnings("unchecked")
+	public EntityCache(int maxEntries, long ttl, TimeUnit timeUnit) {
+		int segmentSize = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+
+		_segments = (Segment<V>[])new Segment<?>[SEGMENTS];
+
+		for (int i = 0; i < SEGMENTS; i++) {
+			_segments[i] = new Segment<>(segmentSize);
+		}
+
+		_ttlNanos = (ttl > 0) ? timeUnit.toNanos(ttl) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the snapshot of the entity, or {@code null} if it is not
+	 * cached or has expired.
+	 */
+	public V get(long id) {
+		Segment<V> segment = _segment(id);
+
+		Entry<V> entry;
+
+		synchronized (segment) {
+			entry = segment._entries.get(id);
+
+			if ((entry != null) &&
+				((System.nanoTime() - entry._createdNanos) > _ttlNanos)) {
+
+				segment._remove(entry);
+
+				_expirations.incrementAndGet();
+
+				entry = null;
+			}
+
+			if (entry != null) {
+				segment._moveToHead(entry);
+			}
+		}
+
+		if (entry == null) {
+			_misses.incrementAndGet();
+
+			return null;
+		}
+
+		_hits.incrementAndGet();
+
+		return entry._value;
+	}
+
+	/**
+	 * Returns the stamp to put the snapshot of the entity with, to be taken
+	 * before reading it.
+	 */
+	public long stamp(long id) {
+		Segment<V> segment = _segment(id);
+
+		synchronized (segment) {
+			return segment._generation;
+		}
+	}
+
+	/**
+	 * Caches the snapshot of the entity, unless its segment was invalidated
+	 * since the stamp was taken.
+	 *
+	 * @return whether the snapshot was cached
+	 */
+	public boolean put(long id, V value, long stamp) {
+		Segment<V> segment = _segment(id);
+
+		synchronized (segment) {
+			if (segment._generation != stamp) {
+				return false;
+			}
+
+			Entry<V> entry = segment._entries.get(id);
+
+			if (entry != null) {
+				segment._remove(entry);
+			}
+
+			segment._add(new Entry<>(id, value, System.nanoTime()));
+
+			if (segment._entries.size() > segment._maxSize) {
+				segment._remove(segment._tail);
+
+				_evictions.incrementAndGet();
+			}
+		}
+
+		return true;
+	}
+
+	public void invalidate(long id) {
+		Segment<V> segment = _segment(id);
+
+		synchronized (segment) {
+			segment._generation++;
+
+			Entry<V> entry = segment._entries.get(id);
+
+			if (entry != null) {
+				segment._remove(entry);
+			}
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		for (Segment<V> segment : _segments) {
+			synchronized (segment) {
+				segment._generation++;
+
+				segment._clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+
+		for (Segment<V> segment : _segments) {
+			synchronized (segment) {
+				size += segment._entries.size();
+			}
+		}
+
+		return size;
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	public long getEvictions() {
+		return _evictions.get();
+	}
+
+	public long getExpirations() {
+		return _expirations.get();
+	}
+
+	public double getHitRatio() {
+		long hits = _hits.get();
+		long requests = hits + _misses.get();
+
+		return (requests == 0) ? 0 : ((double)hits / requests);
+	}
+
+	private Segment<V> _segment(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+
+		return _segments[(int)(hash >>> 60) & (SEGMENTS - 1)];
+	}
+
+	private static class Entry<V> {
+
+		private final long _id;
+		private final V _value;
+		private final long _createdNanos;
+		private Entry<V> _previous;
+		private Entry<V> _next;
+
+		public Entry(long id, V value, long createdNanos) {
+			_id = id;
+			_value = value;
+			_createdNanos = createdNanos;
+		}
+
+	}
+
+	/**
+	 * The entries of a segment, in a map by id and in a list from the most
+	 * to the least recently used. Guarded by the segment monitor.
+	 */
+	private static class Segment<V> {
+
+		private final LongHashMap<Entry<V>> _entries;
+		private long _generation;
+		private Entry<V> _head;
+		private final int _maxSize;
+		private Entry<V> _tail;
+
+		public Segment(int maxSize) {
+			_entries = new LongHashMap<>(maxSize + 1);
+			_maxSize = maxSize;
+		}
+
+		private void _add(Entry<V> entry) {
+			_entries.put(entry._id, entry);
+
+			_link(entry);
+		}
+
+		private void _clear() {
+			_entries.clear();
+
+			_head = null;
+			_tail = null;
+		}
+
+		private void _link(Entry<V> entry) {
+			entry._previous = null;
+			entry._next = _head;
+
+			if (_head != null) {
+				_head._previous = entry;
+			}
+
+			_head = entry;
+
+			if (_tail == null) {
+				_tail = entry;
+			}
+		}
+
+		private void _moveToHead(Entry<V> entry) {
+			if (entry != _head) {
+				_unlink(entry);
+				_link(entry);
+			}
+		}
+
+		private void _remove(Entry<V> entry) {
+			_entries.remove(entry._id);
+
+			_unlink(entry);
+		}
+
+		private void _unlink(Entry<V> entry) {
+			if (entry._previous == null) {
+				_head = entry._next;
+			}
+			else {
+				entry._previous._next = entry._next;
+			}
+
+			if (entry._next == null) {
+				_tail = entry._previous;
+			}
+			else {
+				entry._next._previous = entry._previous;
+			}
+
+			entry._previous = null;
+			entry._next = null;
+		}
+
+	}
+
+}
@@ -15,26 +15,36 @@
 package org.funbizmodel.bookstore.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
+ * The errors that prevented computing a value. The list of errors is only
+ * allocated once the first error is added.
+ *
  * @author Carlos Sierra Andrés
  */
 public class ErrorResult<R> implements Result<R> {
 
-	List<String> _errors = new ArrayList<>();
+	List<String> _errors;
 
 	@Override
 	public List<String> getErrors() {
+		if (_errors == null) {
+			return Collections.emptyList();
+		}
+
 		return _errors;
 	}
 
 	@Override
 	public R get() {
-		throw new RuntimeException(_errors.toString());
+		throw new RuntimeException(getErrors().toString());
 	}
 
 	@Override
@@ -44,22 +54,72 @@ public class ErrorResult<R> implements Result<R> {
 
 	@Override
 	public Result<R> orElse(Consumer<List<String>> consumer) {
-		consumer.accept(_errors);
+		consumer.accept(getErrors());
 
 		return this;
 	}
 
 	@Override
 	public R getOrElse(Function<List<String>, R> function) {
-		return function.apply(_errors);
+		return function.apply(getErrors());
+	}
+
+	@Override
+	public <S> Result<S> map(Function<R, S> mapper) {
+		return _cast();
+	}
+
+	@Override
+	public <S> Result<S> flatMap(Function<R, Result<S>> mapper) {
+		return _cast();
+	}
+
+	@Override
+	public <S, T> Result<T> zip(
+		Result<S> other, BiFunction<R, S, T> combiner) {
+
+		List<String> otherErrors = other.getErrors();
+
+		if (otherErrors.isEmpty()) {
+			return _cast();
+		}
+
+		ErrorResult<T> errorResult = new ErrorResult<>();
+
+		errorResult.addErrors(getErrors());
+		errorResult.addErrors(otherErrors);
+
+		return errorResult;
 	}
 
 	public void addError(String error) {
-		_errors.add(error);
+		_mutableErrors().add(error);
+	}
+
+	public void addErrors(Collection<String> errors) {
+		if (!errors.isEmpty()) {
+			_mutableErrors().addAll(errors);
+		}
 	}
 
 	@Override
 	public String toString() {
 		return "Errors: " + getErrors();
 	}
+
+	/**
+	 * Returns this result as a result of any type, as it holds no value.
+	 */
+	@SuppressWarnings("unchecked")
+	private <S> Result<S> _cast() {
+		return (Result<S>)this;
+	}
+
+	private List<String> _mutableErrors() {
+		if (_errors == null) {
+			_errors = new ArrayList<>();
+		}
+
+		return _errors;
+	}
 }
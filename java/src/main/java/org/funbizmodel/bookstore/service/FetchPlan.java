@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The relationships to load together with the entities a query returns.
+ * Paths name a relationship per level, separated by dots, so {@code
+ * "books.authors"} loads the books of the returned authors and the authors
+ * of those books. Each level is loaded with a single join for all the
+ * entities of the level above.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class FetchPlan {
+
+	public static final FetchPlan NONE = new FetchPlan(
+		Collections.emptyMap());
+
+	private final Map<String, FetchPlan> _relations;
+
+	/**
+	 * Returns the plan loading every given path, or {@link #NONE} if there
+	 * are none.
+	 */
+	public static FetchPlan of(String... paths) {
+		Map<String, Object> tree = new LinkedHashMap<>();
+
+		for (String path : paths) {
+			Map<String, Object> level = tree;
+
+			for (String relation : path.toLowerCase(Locale.ROOT).split("\\.")) {
+				if (relation.isEmpty()) {
+					throw new IllegalArgumentException(
+						"Invalid relationship path " + path);
+				}
+
+				level = _level(level, relation);
+			}
+		}
+
+		return _toFetchPlan(tree);
+	}
+
+	/**
+	 * Checks that the first level of the plan only names the given
+	 * relationships.
+	 *
+	 * @throws IllegalArgumentException if it names any other
+	 */
+	public void checkRelations(List<String> relations) {
+		for (String relation : _relations.keySet()) {
+			if (!relations.contains(relation)) {
+				throw new IllegalArgumentException(
+					"Unknown relationship " + relation);
+			}
+		}
+	}
+
+	/**
+	 * Returns the plan of the entities reached through the relationship,
+	 * which is {@link #NONE} if the relationship is not loaded.
+	 */
+	public FetchPlan get(String relation) {
+		return _relations.getOrDefault(relation, NONE);
+	}
+
+	public boolean includes(String relation) {
+		return _relations.containsKey(relation);
+	}
+
+	public boolean isEmpty() {
+		return _relations.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return _relations.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> _level(
+		Map<String, Object> level, String relation) {
+
+		return (Map<String, Object>)level.computeIfAbsent(
+			relation, key -> new LinkedHashMap<String, Object>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FetchPlan _toFetchPlan(Map<String, Object> tree) {
+		if (tree.isEmpty()) {
+			return NONE;
+		}
+
+		Map<String, FetchPlan> relations = new LinkedHashMap<>();
+
+		tree.forEach(
+			(relation, subtree) -> relations.put(
+				relation, _toFetchPlan((Map<String, Object>)subtree)));
+
+		return new FetchPlan(relations);
+	}
+
+	private FetchPlan(Map<String, FetchPlan> relations) {
+		_relations = relations;
+	}
+
+}
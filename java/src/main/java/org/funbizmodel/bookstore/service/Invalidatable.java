@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+/**
+ * Data kept in memory from the database, such as an {@link EntityCache},
+ * that can be dropped as a whole when it may no longer match the database,
+ * e.g. after a {@link UnitOfWork} rolls back.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface Invalidatable {
+
+	public void invalidateAll();
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies in nanoseconds.
+ *
+ * <p>
+ * Buckets are log-linear, as in HdrHistogram: every power of two range is
+ * split into {@link #SUB_BUCKETS} equal buckets, so a recorded value is off
+ * by less than 1 / {@code SUB_BUCKETS} of itself whatever its magnitude,
+ * with a fixed number of buckets.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class LatencyHistogram {
+
+	public static final int SUB_BUCKET_BITS = 3;
+
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int _BUCKETS =
+		(64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(_BUCKETS);
+	private final LongAdder _count = new LongAdder();
+	private final LongAdder _sum = new LongAdder();
+	private final AtomicLong _max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		_counts.incrementAndGet(_index(nanos));
+		_count.increment();
+		_sum.add(nanos);
+
+		long max = _max.get();
+
+		while ((nanos > max) && !_max.compareAndSet(max, nanos)) {
+			max = _max.get();
+		}
+	}
+
+	public long getCount() {
+		return _count.sum();
+	}
+
+	/**
+	 * Returns a consistent enough view of the recorded values. Values
+	 * recorded while the snapshot is taken may be partially counted.
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[_BUCKETS];
+		long count = 0;
+
+		for (int i = 0; i < _BUCKETS; i++) {
+			counts[i] = _counts.get(i);
+			count += counts[i];
+		}
+
+		long sum = _sum.sum();
+		long max = _max.get();
+
+		return new LatencySnapshot(
+			count, (count == 0) ? 0 : sum / count,
+			_percentile(counts, count, 0.5, max),
+			_percentile(counts, count, 0.9, max),
+			_percentile(counts, count, 0.99, max), max);
+	}
+
+	public void reset() {
+		for (int i = 0; i < _BUCKETS; i++) {
+			_counts.set(i, 0);
+		}
+
+		_count.reset();
+		_sum.reset();
+		_max.set(0);
+	}
+
+	private static int _index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) &
+			(SUB_BUCKETS - 1);
+
+		return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS) + subBucket;
+	}
+
+	/**
+	 * Returns the highest value that falls in the bucket.
+	 */
+	private static long _highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int exponent = (index / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+
+		long lowest = (SUB_BUCKETS + subBucket) <<
+			(exponent - SUB_BUCKET_BITS);
+
+		return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private static long _percentile(
+		long[] counts, long count, double percentile, long max) {
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil(percentile * count);
+		long seen = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if (seen >= rank) {
+				return Math.min(_highestValue(i), max);
+			}
+		}
+
+		return max;
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The state of a {@link LatencyHistogram} at some point, in nanoseconds.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class LatencySnapshot {
+
+	private final long _count;
+	private final long _mean;
+	private final long _p50;
+	private final long _p90;
+	private final long _p99;
+	private final long _max;
+
+	@ConstructorProperties({"count", "mean", "p50", "p90", "p99", "max"})
+	public LatencySnapshot(
+		long count, long mean, long p50, long p90, long p99, long max) {
+
+		_count = count;
+		_mean = mean;
+		_p50 = p50;
+		_p90 = p90;
+		_p99 = p99;
+		_max = max;
+	}
+
+	public long getCount() {
+		return _count;
+	}
+
+	public long getMean() {
+		return _mean;
+	}
+
+	public long getP50() {
+		return _p50;
+	}
+
+	public long getP90() {
+		return _p90;
+	}
+
+	public long getP99() {
+		return _p99;
+	}
+
+	public long getMax() {
+		return _max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + _count + ", mean=" + _mean + "ns, p50=" + _p50 +
+			"ns, p90=" + _p90 + "ns, p99=" + _p99 + "ns, max=" + _max + "ns";
+	}
+
+}
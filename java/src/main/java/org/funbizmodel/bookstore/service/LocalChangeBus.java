@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Carries change events between nodes living in the same JVM, standing in
+ * for a network transport in tests and benchmarks.
+ *
+ * <p>
+ * Each node publishes through {@link #publisher(String)} and subscribes its
+ * listeners under its own name. Listeners receive the events of every other
+ * node, but not those of their own, whose caches the services already
+ * invalidate as they write. Events are delivered on the publishing thread,
+ * so listeners should only record them, as {@link CoalescingInvalidator}
+ * does.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class LocalChangeBus {
+
+	private final List<Subscription> _subscriptions =
+		new CopyOnWriteArrayList<>();
+
+	public ChangePublisher publisher(String node) {
+		return changeEvent -> {
+			for (Subscription subscription : _subscriptions) {
+				if (!subscription._node.equals(node)) {
+					subscription._changeListener.changed(changeEvent);
+				}
+			}
+		};
+	}
+
+	public void subscribe(String node, ChangeListener changeListener) {
+		_subscriptions.add(new Subscription(node, changeListener));
+	}
+
+	public void unsubscribe(ChangeListener changeListener) {
+		_subscriptions.removeIf(
+			subscription -> subscription._changeListener == changeListener);
+	}
+
+	private static class Subscription {
+
+		private final ChangeListener _changeListener;
+		private final String _node;
+
+		public Subscription(String node, ChangeListener changeListener) {
+			_node = node;
+			_changeListener = changeListener;
+		}
+
+	}
+
+}
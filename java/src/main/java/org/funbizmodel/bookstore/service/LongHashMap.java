@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A hash map from {@code long} keys to values that stores the keys unboxed,
+ * in open addressing tables probed linearly. Null values are not allowed,
+ * as a null slot marks a free one. Not thread safe.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class LongHashMap<V> {
+
+	private long[] _keys;
+	private int _mask;
+	private int _size;
+	private Object[] _values;
+
+	public LongHashMap() {
+		this(16);
+	}
+
+	public LongHashMap(int expectedSize) {
+		_allocate(_capacityFor(expectedSize));
+	}
+
+	public void clear() {
+		Arrays.fill(_values, null);
+
+		_size = 0;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Returns the value of the key, or {@code null} if it has none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		for (int i = _slot(key); _values[i] != null; i = (i + 1) & _mask) {
+			if (_keys[i] == key) {
+				return (V)_values[i];
+			}
+		}
+
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns the keys in no particular order.
+	 */
+	public long[] keys() {
+		long[] keys = new long[_size];
+
+		int j = 0;
+
+		for (int i = 0; i < _values.length; i++) {
+			if (_values[i] != null) {
+				keys[j++] = _keys[i];
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Maps the key to the value, returning the value it replaced or {@code
+	 * null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		Objects.requireNonNull(value);
+
+		int i = _slot(key);
+
+		for (; _values[i] != null; i = (i + 1) & _mask) {
+			if (_keys[i] == key) {
+				V previous = (V)_values[i];
+
+				_values[i] = value;
+
+				return previous;
+			}
+		}
+
+		_keys[i] = key;
+		_values[i] = value;
+
+		if (++_size > (_values.length >> 1)) {
+			_rehash(_values.length << 1);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes the key, returning its value or {@code null}. The entries
+	 * probed after it are shifted back, so lookups never need tombstones.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = _slot(key);
+
+		for (; _values[i] != null; i = (i + 1) & _mask) {
+			if (_keys[i] == key) {
+				break;
+			}
+		}
+
+		V removed = (V)_values[i];
+
+		if (removed == null) {
+			return null;
+		}
+
+		for (int j = (i + 1) & _mask; _values[j] != null; j = (j + 1) & _mask) {
+			int slot = _slot(_keys[j]);
+
+			boolean reachable = (i <= j) ? ((i < slot) && (slot <= j)) :
+				((i < slot) || (slot <= j));
+
+			if (!reachable) {
+				_keys[i] = _keys[j];
+				_values[i] = _values[j];
+
+				i = j;
+			}
+		}
+
+		_values[i] = null;
+
+		_size--;
+
+		return removed;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	private void _allocate(int capacity) {
+		_keys = new long[capacity];
+		_values = new Object[capacity];
+		_mask = capacity - 1;
+	}
+
+	private int _capacityFor(int expectedSize) {
+		int capacity = 16;
+
+		while ((capacity >> 1) < expectedSize) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	private void _rehash(int capacity) {
+		long[] keys = _keys;
+		Object[] values = _values;
+
+		_allocate(capacity);
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				int j = _slot(keys[i]);
+
+				while (_values[j] != null) {
+					j = (j + 1) & _mask;
+				}
+
+				_keys[j] = keys[i];
+				_values[j] = values[i];
+			}
+		}
+	}
+
+	private int _slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+
+		return (int)(hash ^ (hash >>> 32)) & _mask;
+	}
+
+}
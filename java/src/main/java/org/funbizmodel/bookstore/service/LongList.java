@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * A growable list of {@code long} values, kept in a plain array instead of
+ * boxing each of them. Not thread safe.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class LongList {
+
+	private long[] _values;
+	private int _size;
+
+	public LongList() {
+		this(4);
+	}
+
+	public LongList(int initialCapacity) {
+		_values = new long[Math.max(1, initialCapacity)];
+	}
+
+	public void add(long value) {
+		if (_size == _values.length) {
+			_values = Arrays.copyOf(_values, _size * 2);
+		}
+
+		_values[_size++] = value;
+	}
+
+	public boolean contains(long value) {
+		return indexOf(value) >= 0;
+	}
+
+	public long get(int index) {
+		if (index >= _size) {
+			throw new IndexOutOfBoundsException(
+				"Index " + index + " out of " + _size);
+		}
+
+		return _values[index];
+	}
+
+	public int indexOf(long value) {
+		for (int i = 0; i < _size; i++) {
+			if (_values[i] == value) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Removes the first occurrence of the value, keeping the order of the
+	 * rest.
+	 */
+	public boolean remove(long value) {
+		int index = indexOf(value);
+
+		if (index < 0) {
+			return false;
+		}
+
+		System.arraycopy(_values, index + 1, _values, index, _size - index - 1);
+
+		_size--;
+
+		return true;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public LongStream stream() {
+		return Arrays.stream(_values, 0, _size);
+	}
+
+	public long[] toArray() {
+		return Arrays.copyOf(_values, _size);
+	}
+
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Named counters, gauges and latency histograms of the services.
+ *
+ * <p>
+ * Services record their operations here once given a registry, and record
+ * nothing otherwise, so leaving metrics disabled costs a null check per
+ * operation. Added as a {@link StatementListener} to a {@link
+ * PooledDataSource}, the registry also counts and times the queries issued.
+ * </p>
+ *
+ * <p>
+ * Operations are named {@code <entity>.<operation>}, e.g. {@code
+ * book.withId}. For operations returning streams the latency covers from
+ * opening the stream until it is exhausted or closed, whichever comes
+ * first, and the rows read are counted as {@code <entity>.rows}.
+ * Errors returned as {@link ErrorResult} are counted as {@code
+ * <operation>.errors}.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class MetricsRegistry
+	implements MetricsRegistryMXBean, StatementListener {
+
+	public static final String QUERIES = "queries";
+
+	public static final String QUERY_ERRORS = "queries.errors";
+
+	private final ConcurrentMap<String, LongAdder> _counters =
+		new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongSupplier> _gauges =
+		new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LatencyHistogram> _latencies =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * Returns what the supplier returns, recording how long it took in the
+	 * given registry, if any.
+	 */
+	public static <T> T time(
+		MetricsRegistry metricsRegistry, String name, Supplier<T> supplier) {
+
+		if (metricsRegistry == null) {
+			return supplier.get();
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			return supplier.get();
+		}
+		finally {
+			metricsRegistry.recordSince(name, start);
+		}
+	}
+
+	/**
+	 * Returns the stream the supplier returns, recording in the given
+	 * registry, if any, how long it took from the call until the stream was
+	 * exhausted, including every split of a parallel stream, or closed.
+	 */
+	public static <T> Stream<T> timeStream(
+		MetricsRegistry metricsRegistry, String name,
+		Supplier<Stream<T>> supplier) {
+
+		if (metricsRegistry == null) {
+			return supplier.get();
+		}
+
+		StreamTiming streamTiming = new StreamTiming(
+			metricsRegistry, name, System.nanoTime());
+
+		Stream<T> stream;
+
+		try {
+			stream = supplier.get();
+		}
+		catch (RuntimeException | Error e) {
+			streamTiming.record();
+
+			throw e;
+		}
+
+		Stream<T> timedStream = StreamSupport.stream(
+			new TimedSpliterator<>(stream.spliterator(), streamTiming),
+			stream.isParallel());
+
+		return timedStream.onClose(stream::close).onClose(
+			streamTiming::record);
+	}
+
+	public LongAdder counter(String name) {
+		return _counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	/**
+	 * Reports what the supplier returns under the given name, e.g. the depth
+	 * of a queue, replacing any gauge registered before under that name.
+	 * Gauges are read when asked for, and are not affected by {@link
+	 * #reset()}.
+	 */
+	public void gauge(String name, LongSupplier supplier) {
+		_gauges.put(name, supplier);
+	}
+
+	public LatencyHistogram latency(String name) {
+		return _latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+	}
+
+	public void increment(String name) {
+		counter(name).increment();
+	}
+
+	/**
+	 * Records the time elapsed since the given {@link System#nanoTime()}.
+	 */
+	public void recordSince(String name, long startNanos) {
+		latency(name).record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records the time elapsed since the given {@link System#nanoTime()}, and
+	 * counts an error if the result has any.
+	 */
+	public <R> Result<R> recordSince(
+		String name, long startNanos, Result<R> result) {
+
+		recordSince(name, startNanos);
+
+		if (!result.getErrors().isEmpty()) {
+			increment(name + ".errors");
+		}
+
+		return result;
+	}
+
+	@Override
+	public void statementExecuted(
+		String sql, long elapsedNanos, boolean failed) {
+
+		increment(QUERIES);
+
+		if (failed) {
+			increment(QUERY_ERRORS);
+		}
+
+		latency(QUERIES).record(elapsedNanos);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new TreeMap<>();
+
+		_counters.forEach((name, counter) -> counters.put(name, counter.sum()));
+
+		return counters;
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		Map<String, Long> gauges = new TreeMap<>();
+
+		_gauges.forEach(
+			(name, supplier) -> gauges.put(name, supplier.getAsLong()));
+
+		return gauges;
+	}
+
+	@Override
+	public Map<String, LatencySnapshot> getLatencies() {
+		Map<String, LatencySnapshot> latencies = new TreeMap<>();
+
+		_latencies.forEach(
+			(name, histogram) -> latencies.put(name, histogram.snapshot()));
+
+		return latencies;
+	}
+
+	@Override
+	public void reset() {
+		_counters.values().forEach(LongAdder::reset);
+		_latencies.values().forEach(LatencyHistogram::reset);
+	}
+
+	/**
+	 * Registers the registry in the platform MBean server under the given
+	 * name, e.g. {@code org.funbizmodel.bookstore:type=Metrics}.
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+		mBeanServer.registerMBean(this, objectName);
+
+		return objectName;
+	}
+
+	@Override
+	public String toString() {
+		return "Counters: " + getCounters() + ", gauges: " + getGauges() +
+			", latencies: " + getLatencies();
+	}
+
+	/**
+	 * Records the latency of a stream once, when the last of its splits is
+	 * exhausted or when it is closed.
+	 */
+	private static class StreamTiming {
+
+		private final MetricsRegistry _metricsRegistry;
+		private final String _name;
+		private final AtomicInteger _open = new AtomicInteger(1);
+		private final AtomicBoolean _recorded = new AtomicBoolean();
+		private final long _startNanos;
+
+		public StreamTiming(
+			MetricsRegistry metricsRegistry, String name, long startNanos) {
+
+			_metricsRegistry = metricsRegistry;
+			_name = name;
+			_startNanos = startNanos;
+		}
+
+		public void exhausted() {
+			if (_open.decrementAndGet() == 0) {
+				record();
+			}
+		}
+
+		public void record() {
+			if (_recorded.compareAndSet(false, true)) {
+				_metricsRegistry.recordSince(_name, _startNanos);
+			}
+		}
+
+		public void split() {
+			_open.incrementAndGet();
+		}
+
+	}
+
+	private static class TimedSpliterator<T> implements Spliterator<T> {
+
+		private boolean _exhausted;
+		private final Spliterator<T> _spliterator;
+		private final StreamTiming _streamTiming;
+
+		public TimedSpliterator(
+			Spliterator<T> spliterator, StreamTiming streamTiming) {
+
+			_spliterator = spliterator;
+			_streamTiming = streamTiming;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (_spliterator.tryAdvance(action)) {
+				return true;
+			}
+
+			_exhausted();
+
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			_spliterator.forEachRemaining(action);
+
+			_exhausted();
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			Spliterator<T> spliterator = _spliterator.trySplit();
+
+			if (spliterator == null) {
+				return null;
+			}
+
+			_streamTiming.split();
+
+			return new TimedSpliterator<>(spliterator, _streamTiming);
+		}
+
+		@Override
+		public long estimateSize() {
+			return _spliterator.estimateSize();
+		}
+
+		@Override
+		public int characteristics() {
+			return _spliterator.characteristics();
+		}
+
+		@Override
+		public Comparator<? super T> getComparator() {
+			return _spliterator.getComparator();
+		}
+
+		private void _exhausted() {
+			if (!_exhausted) {
+				_exhausted = true;
+
+				_streamTiming.exhausted();
+			}
+		}
+
+	}
+
+}
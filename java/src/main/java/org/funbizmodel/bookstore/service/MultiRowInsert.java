@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Inserts many rows into a table with an auto increment id using as few
+ * {@code INSERT ... VALUES (...), (...)} statements as possible.
+ *
+ * <p>
+ * H2 only reports the generated key of the last row of a statement, or of a
+ * batch, and the ids of the rows of one statement need not be consecutive
+ * when other sessions insert at the same time. So the ids are reserved
+ * first from the sequence behind the auto increment column, one per row,
+ * and inserted explicitly. Tables whose id is not backed by a sequence are
+ * inserted row by row, reading the generated key of each.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class MultiRowInsert {
+
+	public static final int DEFAULT_MAX_ROWS = 500;
+
+	private final String _table;
+	private final String[] _columns;
+	private final int _maxRows;
+
+	public MultiRowInsert(String table, String... columns) {
+		this(DEFAULT_MAX_ROWS, table, columns);
+	}
+
+	public MultiRowInsert(int maxRows, String table, String... columns) {
+		_maxRows = maxRows;
+		_table = table;
+		_columns = columns;
+	}
+
+	public int getMaxRows() {
+		return _maxRows;
+	}
+
+	/**
+	 * Inserts the rows, each of them holding one value per column, and
+	 * returns their generated ids in the same order.
+	 */
+	public long[] execute(Connection conn, List<Object[]> rows)
+		throws SQLException {
+
+		String[] idColumn = _idColumn(conn);
+
+		if (idColumn == null) {
+			return _executeEach(conn, rows);
+		}
+
+		long[] ids = new long[rows.size()];
+
+		for (int from = 0; from < rows.size(); from += _maxRows) {
+			int to = Math.min(from + _maxRows, rows.size());
+
+			_reserveIds(conn, idColumn[1], ids, from, to);
+
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					_sql(idColumn[0], to - from))) {
+
+				int index = 1;
+
+				for (int i = from; i < to; i++) {
+					preparedStatement.setLong(index++, ids[i]);
+
+					for (Object value : rows.get(i)) {
+						preparedStatement.setObject(index++, value);
+					}
+				}
+
+				int affectedRows = preparedStatement.executeUpdate();
+
+				if (affectedRows != (to - from)) {
+					throw new SQLException(
+						"Inserted " + affectedRows + " rows into " + _table +
+							" instead of " + (to - from));
+				}
+			}
+		}
+
+		return ids;
+	}
+
+	private long[] _executeEach(Connection conn, List<Object[]> rows)
+		throws SQLException {
+
+		long[] ids = new long[rows.size()];
+
+		try (PreparedStatement preparedStatement = conn.prepareStatement(
+				_sql(null, 1), Statement.RETURN_GENERATED_KEYS)) {
+
+			for (int i = 0; i < ids.length; i++) {
+				Object[] row = rows.get(i);
+
+				for (int j = 0; j < row.length; j++) {
+					preparedStatement.setObject(j + 1, row[j]);
+				}
+
+				preparedStatement.executeUpdate();
+
+				try (ResultSet keysResult =
+						 preparedStatement.getGeneratedKeys()) {
+
+					if (!keysResult.next()) {
+						throw new SQLException(
+							"No id generated for a row of " + _table);
+					}
+
+					ids[i] = keysResult.getLong(1);
+				}
+			}
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Returns the name of the auto increment column of the table and the
+	 * qualified name of its sequence, or {@code null} if the table has no
+	 * such column.
+	 */
+	private String[] _idColumn(Connection conn) throws SQLException {
+		try (PreparedStatement preparedStatement = conn.prepareStatement(
+				"SELECT COLUMN_NAME, SEQUENCE_NAME, TABLE_SCHEMA FROM " +
+					"INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND " +
+						"SEQUENCE_NAME IS NOT NULL")) {
+
+			preparedStatement.setString(1, _table);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				if (!resultSet.next()) {
+					return null;
+				}
+
+				return new String[] {
+					resultSet.getString(1),
+					resultSet.getString(3) + "." + resultSet.getString(2)
+				};
+			}
+		}
+	}
+
+	private void _reserveIds(
+			Connection conn, String sequence, long[] ids, int from, int to)
+		throws SQLException {
+
+		try (PreparedStatement preparedStatement = conn.prepareStatement(
+				"SELECT NEXT VALUE FOR " + sequence +
+					" FROM SYSTEM_RANGE(1, ?)")) {
+
+			preparedStatement.setInt(1, to - from);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				int i = from;
+
+				while ((i < to) && resultSet.next()) {
+					ids[i++] = resultSet.getLong(1);
+				}
+
+				if (i != to) {
+					throw new SQLException(
+						"Reserved " + (i - from) + " ids of " + _table +
+							" instead of " + (to - from));
+				}
+			}
+		}
+	}
+
+	private String _sql(String idColumn, int rows) {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("INSERT INTO ");
+		sb.append(_table);
+		sb.append(" (");
+
+		if (idColumn != null) {
+			sb.append(idColumn);
+			sb.append(", ");
+		}
+
+		sb.append(String.join(", ", _columns));
+		sb.append(") VALUES ");
+
+		int columns = _columns.length + ((idColumn == null) ? 0 : 1);
+
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+
+			sb.append("(");
+
+			for (int j = 0; j < columns; j++) {
+				if (j > 0) {
+					sb.append(", ");
+				}
+
+				sb.append("?");
+			}
+
+			sb.append(")");
+		}
+
+		return sb.toString();
+	}
+
+}
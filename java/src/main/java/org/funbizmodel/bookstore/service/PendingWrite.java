@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A write queued in a {@link WriteBehindQueue}, such as a creation context
+ * whose row is not inserted yet. Writes are written by their {@link
+ * Batcher}, together with the other writes of the same batcher in the
+ * batch being flushed.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class PendingWrite {
+
+	static final int QUEUED = 0;
+
+	static final int CLAIMED = 1;
+
+	static final int WRITTEN = 2;
+
+	static final int DONE = 3;
+
+	/**
+	 * Touched by the flusher thread only.
+	 */
+	int state = QUEUED;
+
+	private final Batcher<?> _batcher;
+	private final CountDownLatch _done = new CountDownLatch(1);
+	private volatile SQLException _exception;
+
+	public PendingWrite(Batcher<?> batcher) {
+		_batcher = batcher;
+	}
+
+	/**
+	 * Returns whether the batch of this write was committed or rolled back.
+	 */
+	public boolean isDone() {
+		return _done.getCount() == 0;
+	}
+
+	Batcher<?> getBatcher() {
+		return _batcher;
+	}
+
+	void await() throws SQLException {
+		try {
+			_done.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new SQLException(e);
+		}
+
+		check();
+	}
+
+	void check() throws SQLException {
+		SQLException exception = _exception;
+
+		if (exception != null) {
+			throw new SQLException(exception.getMessage(), exception);
+		}
+	}
+
+	/**
+	 * Releases the callers waiting for this write, failing them with the
+	 * given exception, if any, unless the write already failed on its own.
+	 */
+	void done(SQLException exception) {
+		if (_exception == null) {
+			_exception = exception;
+		}
+
+		state = DONE;
+
+		_done.countDown();
+	}
+
+	void failed(SQLException exception) {
+		_exception = exception;
+	}
+
+	/**
+	 * Forgets the failure of a write whose batch was rolled back, so that
+	 * it can be written again.
+	 */
+	void requeue() {
+		_exception = null;
+
+		state = QUEUED;
+	}
+
+	/**
+	 * Writes pending writes of the same kind together, e.g. with a multi-row
+	 * insert.
+	 */
+	public interface Batcher<W extends PendingWrite> {
+
+		public void write(List<W> pendingWrites) throws SQLException;
+
+	}
+
+}
@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of connections over another {@link DataSource}.
+ *
+ * <p>
+ * Connections are bound to the borrowing thread until every borrower has
+ * closed them: asking for a connection again from the same thread, as the
+ * nested queries of a single {@code map} pipeline do, hands back the one
+ * already borrowed instead of taking a second one from the pool. Closing
+ * the handed connection returns it to the pool once the outermost borrower
+ * closes it, so each borrower must close it exactly once.
+ * </p>
+ *
+ * <p>
+ * Every physical connection keeps a {@link StatementCache}, so preparing the
+ * same SQL again on a later borrow reuses the already parsed statement.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class PooledDataSource implements DataSource {
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	private final ThreadLocal<PooledConnection> _current = new ThreadLocal<>();
+	private final DataSource _dataSource;
+	private final BlockingQueue<StatementCache> _idle =
+		new LinkedBlockingQueue<>();
+	private final int _maxSize;
+	private final Semaphore _permits;
+	private final Queue<StatementCache> _statementCaches =
+		new ConcurrentLinkedQueue<>();
+	private final int _statementCacheSize;
+	private final List<StatementListener> _statementListeners =
+		new CopyOnWriteArrayList<>();
+	private final long _timeoutMillis;
+	private volatile boolean _closed;
+
+	public PooledDataSource(DataSource dataSource, int maxSize) {
+		this(
+			dataSource, maxSize, DEFAULT_TIMEOUT_MILLIS,
+			StatementCache.DEFAULT_MAX_SIZE);
+	}
+
+	public PooledDataSource(
+		DataSource dataSource, int maxSize, long timeoutMillis,
+		int statementCacheSize) {
+
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+				"Pool size must be positive: " + maxSize);
+		}
+
+		_dataSource = dataSource;
+		_maxSize = maxSize;
+		_timeoutMillis = timeoutMillis;
+		_statementCacheSize = statementCacheSize;
+		_permits = new Semaphore(maxSize, true);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		PooledConnection pooledConnection = _current.get();
+
+		if ((pooledConnection != null) && pooledConnection._borrow()) {
+			return pooledConnection._proxy;
+		}
+
+		try {
+			if (!_permits.tryAcquire(_timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException(
+					"Timed out after " + _timeoutMillis + "ms waiting for " +
+						"one of " + _maxSize + " pooled connections");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new SQLException(e);
+		}
+
+		try {
+			StatementCache statementCache = _idle.poll();
+
+			if (statementCache == null) {
+				statementCache = new StatementCache(
+					_dataSource.getConnection(), _statementCacheSize,
+					_statementListeners);
+
+				_statementCaches.add(statementCache);
+			}
+
+			pooledConnection = new PooledConnection(statementCache);
+		}
+		catch (SQLException | RuntimeException e) {
+			_permits.release();
+
+			throw e;
+		}
+
+		_current.set(pooledConnection);
+
+		return pooledConnection._proxy;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password)
+		throws SQLException {
+
+		throw new SQLFeatureNotSupportedException(
+			"Pooled connections share the credentials of the pool");
+	}
+
+	/**
+	 * Notifies the listener of the statements run from now on by any pooled
+	 * connection. Without listeners statements are not timed at all.
+	 */
+	public void addStatementListener(StatementListener statementListener) {
+		_statementListeners.add(statementListener);
+	}
+
+	public void removeStatementListener(StatementListener statementListener) {
+		_statementListeners.remove(statementListener);
+	}
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	/**
+	 * Returns how many connections are borrowed right now.
+	 */
+	public int getActiveCount() {
+		return _maxSize - _permits.availablePermits();
+	}
+
+	public long getStatementCacheHits() {
+		long hits = 0;
+
+		for (StatementCache statementCache : _statementCaches) {
+			hits += statementCache.getHits();
+		}
+
+		return hits;
+	}
+
+	public long getStatementCacheMisses() {
+		long misses = 0;
+
+		for (StatementCache statementCache : _statementCaches) {
+			misses += statementCache.getMisses();
+		}
+
+		return misses;
+	}
+
+	public long getStatementCacheEvictions() {
+		long evictions = 0;
+
+		for (StatementCache statementCache : _statementCaches) {
+			evictions += statementCache.getEvictions();
+		}
+
+		return evictions;
+	}
+
+	/**
+	 * Closes the idle connections. Borrowed connections are closed as soon as
+	 * they are returned.
+	 */
+	public void close() throws SQLException {
+		_closed = true;
+
+		StatementCache statementCache;
+
+		while ((statementCache = _idle.poll()) != null) {
+			_close(statementCache);
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return _dataSource.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		_dataSource.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		_dataSource.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return _dataSource.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return _dataSource.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+
+		return _dataSource.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || _dataSource.isWrapperFor(iface);
+	}
+
+	private void _release(PooledConnection pooledConnection)
+		throws SQLException {
+
+		if (_current.get() == pooledConnection) {
+			_current.remove();
+		}
+
+		StatementCache statementCache = pooledConnection._statementCache;
+		Connection connection = statementCache.getConnection();
+
+		try {
+			if (_closed || connection.isClosed()) {
+				_close(statementCache);
+
+				return;
+			}
+
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+			_idle.offer(statementCache);
+
+			// close() may have drained the idle connections between the
+			// check above and the offer
+
+			if (_closed && _idle.remove(statementCache)) {
+				_close(statementCache);
+			}
+		}
+		catch (SQLException e) {
+			_close(statementCache);
+
+			throw e;
+		}
+		finally {
+			_permits.release();
+		}
+	}
+
+	private void _close(StatementCache statementCache) throws SQLException {
+		_statementCaches.remove(statementCache);
+
+		statementCache.clear();
+
+		statementCache.getConnection().close();
+	}
+
+	private class PooledConnection implements InvocationHandler {
+
+		private volatile int _borrows = 1;
+		private final Connection _connection;
+		private final Connection _proxy;
+		private final StatementCache _statementCache;
+
+		public PooledConnection(StatementCache statementCache) {
+			_statementCache = statementCache;
+			_connection = statementCache.getConnection();
+
+			_proxy = (Connection)Proxy.newProxyInstance(
+				Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+
+			String name = method.getName();
+
+			if (method.getDeclaringClass() == Object.class) {
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+
+				return "Pooled " + _connection;
+			}
+
+			if (name.equals("close")) {
+				if (_giveBack()) {
+					_release(this);
+				}
+
+				return null;
+			}
+
+			if (name.equals("isClosed")) {
+				return (_borrows == 0) || _connection.isClosed();
+			}
+
+			if (_borrows == 0) {
+				throw new SQLException("Connection was returned to the pool");
+			}
+
+			if (name.equals("prepareStatement")) {
+				return _statementCache.prepareStatement(method, args);
+			}
+
+			try {
+				return method.invoke(_connection, args);
+			}
+			catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Borrows the connection once more, unless it was returned to the
+		 * pool. Borrows are counted under a lock because a leaked cursor may
+		 * be closed by a thread other than the borrowing one.
+		 */
+		private synchronized boolean _borrow() {
+			if (_borrows == 0) {
+				return false;
+			}
+
+			_borrows++;
+
+			return true;
+		}
+
+		/**
+		 * Gives one borrow back, returning whether it was the last one.
+		 */
+		private synchronized boolean _giveBack() {
+			return (_borrows > 0) && (--_borrows == 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The columns of a table a query needs to read. The {@code id} column is
+ * always part of a projection, since lazily fetched columns are looked up by
+ * it.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class Projection {
+
+	public static final Projection ALL = new Projection(null);
+
+	private final Set<String> _columns;
+
+	/**
+	 * Returns the projection of the selected columns, or {@link #ALL} when
+	 * they cover every column of the table.
+	 *
+	 * @param columns the lower case names of every column of the table
+	 * @throws IllegalArgumentException if a selected column is not one of
+	 *         the columns of the table
+	 */
+	public static Projection of(List<String> columns, String... selected) {
+		Set<String> names = new LinkedHashSet<>();
+
+		names.add("id");
+
+		for (String column : selected) {
+			String name = column.toLowerCase(Locale.ROOT);
+
+			if (!columns.contains(name)) {
+				throw new IllegalArgumentException("Unknown column " + column);
+			}
+
+			names.add(name);
+		}
+
+		if (names.containsAll(columns)) {
+			return ALL;
+		}
+
+		return new Projection(names);
+	}
+
+	public boolean includes(String column) {
+		return (_columns == null) || _columns.contains(column);
+	}
+
+	public boolean isAll() {
+		return _columns == null;
+	}
+
+	/**
+	 * Returns the select list of the projection, with every column qualified
+	 * by the given table alias.
+	 */
+	public String toSql(String alias) {
+		if (_columns == null) {
+			return alias + ".*";
+		}
+
+		return _columns.stream().map(column -> alias + "." + column).collect(
+			Collectors.joining(", "));
+	}
+
+	private Projection(Set<String> columns) {
+		_columns = columns;
+	}
+
+}
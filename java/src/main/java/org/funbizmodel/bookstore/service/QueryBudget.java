@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the statements run by each pipeline and reports the ones running
+ * too many, or running the same query over and over with different ids,
+ * which is what iterating the books of an author and reading the authors
+ * of each of them one by one looks like.
+ *
+ * <p>
+ * A pipeline is whatever runs inside {@link #run(Supplier)} on the calling
+ * thread, including the streams it consumes and the lazy loads of the
+ * queriers it maps. Services given a budget run every top level {@code map}
+ * and {@code execute} of their contexts as a pipeline of its own; nested
+ * ones join the pipeline already running. Statements are seen through the
+ * budget being a {@link StatementListener} of the {@link PooledDataSource};
+ * statements outside pipelines are not counted.
+ * </p>
+ *
+ * <p>
+ * Queries are compared by shape, with their literals and the lengths of
+ * their {@code IN} lists left out. Exceeding a budget is either logged as a
+ * warning of the {@code java.util.logging} logger named after this class,
+ * with the stack trace of the offending statement, or thrown from it as a
+ * {@link QueryBudgetExceededException}, which suits tests. Failures the pipeline
+ * turns into an {@link ErrorResult} are thrown again when it ends.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class QueryBudget implements StatementListener {
+
+	public enum Mode {LOG, FAIL}
+
+	private static final Pattern _IN_LIST = Pattern.compile(
+		"\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern _NUMBER = Pattern.compile(
+		"\\b\\d+(\\.\\d+)?\\b");
+	private static final Pattern _STRING = Pattern.compile("'([^']|'')*'");
+	private static final Pattern _WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Logger _log = Logger.getLogger(
+		QueryBudget.class.getName());
+
+	private final int _maxQueries;
+	private final int _maxRepeats;
+	private final Mode _mode;
+	private final ThreadLocal<Pipeline> _pipeline = new ThreadLocal<>();
+
+	/**
+	 * Runs the pipeline under the given budget, or just runs it if there is
+	 * none.
+	 */
+	public static <T> T run(QueryBudget queryBudget, Supplier<T> pipeline) {
+		if (queryBudget == null) {
+			return pipeline.get();
+		}
+
+		return queryBudget.run(pipeline);
+	}
+
+	/**
+	 * Returns the shape of the given query: its literals replaced by {@code
+	 * ?}, its {@code IN} lists of parameters by {@code (?)} and its
+	 * whitespace collapsed.
+	 */
+	public static String shape(String sql) {
+		String shape = _STRING.matcher(sql).replaceAll("?");
+
+		shape = _NUMBER.matcher(shape).replaceAll("?");
+		shape = _IN_LIST.matcher(shape).replaceAll("(?)");
+
+		return _WHITESPACE.matcher(shape).replaceAll(" ").trim();
+	}
+
+	/**
+	 * @param maxQueries the statements a pipeline may run
+	 * @param maxRepeats the statements of the same shape a pipeline may run
+	 */
+	public QueryBudget(int maxQueries, int maxRepeats, Mode mode) {
+		_maxQueries = maxQueries;
+		_maxRepeats = maxRepeats;
+		_mode = mode;
+	}
+
+	/**
+	 * Runs the pipeline, as a part of the one already running on the calling
+	 * thread if any.
+	 */
+	public <T> T run(Supplier<T> pipeline) {
+		if (_pipeline.get() != null) {
+			return pipeline.get();
+		}
+
+		Pipeline current = new Pipeline();
+
+		_pipeline.set(current);
+
+		T result;
+
+		try {
+			result = pipeline.get();
+		}
+		finally {
+			_pipeline.remove();
+		}
+
+		if ((_mode == Mode.FAIL) && (current._exceeded != null)) {
+			throw current._exceeded;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void statementExecuted(
+		String sql, long elapsedNanos, boolean failed) {
+
+		Pipeline pipeline = _pipeline.get();
+
+		if (pipeline == null) {
+			return;
+		}
+
+		pipeline._queries++;
+
+		String shape = shape(sql);
+
+		int repeats = pipeline._repeats.merge(shape, 1, Integer::sum);
+
+		if (repeats == (_maxRepeats + 1)) {
+			_exceeded(
+				pipeline,
+				"Query repeated more than " + _maxRepeats +
+					" times, possibly once per row of a previous query: " +
+						shape);
+		}
+		else if (pipeline._queries == (_maxQueries + 1)) {
+			_exceeded(
+				pipeline,
+				"Pipeline ran more than " + _maxQueries + " queries, last: " +
+					shape);
+		}
+	}
+
+	public int getMaxQueries() {
+		return _maxQueries;
+	}
+
+	public int getMaxRepeats() {
+		return _maxRepeats;
+	}
+
+	public Mode getMode() {
+		return _mode;
+	}
+
+	private void _exceeded(Pipeline pipeline, String message) {
+		QueryBudgetExceededException exceeded =
+			new QueryBudgetExceededException(message);
+
+		if (_mode == Mode.LOG) {
+			_log.log(Level.WARNING, message, exceeded);
+
+			return;
+		}
+
+		if (pipeline._exceeded == null) {
+			pipeline._exceeded = exceeded;
+		}
+
+		throw exceeded;
+	}
+
+	private static class Pipeline {
+
+		private QueryBudgetExceededException _exceeded;
+		private int _queries;
+		private final Map<String, Integer> _repeats = new HashMap<>();
+
+	}
+
+}
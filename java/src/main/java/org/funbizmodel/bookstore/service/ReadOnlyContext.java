@@ -14,6 +14,7 @@
 
 package org.funbizmodel.bookstore.service;
 
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
@@ -23,4 +24,28 @@ public interface ReadOnlyContext<Q> {
 
 	<R> Result<R> map(Function<Q, R> mapper);
 
+	/**
+	 * Maps the context on the given executor, so that the caller can start
+	 * other lookups while this one waits on the database.
+	 */
+	default <R> AsyncResult<R> mapAsync(
+		Function<Q, R> mapper, Executor executor) {
+
+		return AsyncResult.supplyAsync(() -> map(mapper), executor);
+	}
+
+	default <R> AsyncResult<R> mapAsync(Function<Q, R> mapper) {
+		return mapAsync(mapper, AsyncResult.defaultExecutor());
+	}
+
+	/**
+	 * Returns a context over the same entity that only needs to read the
+	 * given columns to answer its mappings. Columns left out are fetched on
+	 * demand if a mapping asks for them, so this is only a hint; contexts
+	 * that already hold their data ignore it.
+	 */
+	default ReadOnlyContext<Q> select(String... columns) {
+		return this;
+	}
+
 }
@@ -14,11 +14,19 @@
 
 package org.funbizmodel.bookstore.service;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
+ * Either a value or the errors that prevented computing it. Combinators
+ * applied to an {@link ErrorResult} return it as is, without evaluating
+ * their functions nor allocating.
+ *
  * @author Carlos Sierra Andrés
  */
 public interface Result<R> {
@@ -27,4 +35,76 @@ public interface Result<R> {
 	public Result<R> andThen(Consumer<R> consumer);
 	public Result<R> orElse(Consumer<List<String>> errors);
 	public R getOrElse(Function<List<String>, R> supplier);
+
+	/**
+	 * Returns the result of applying the function to the value, or these
+	 * errors.
+	 */
+	public <S> Result<S> map(Function<R, S> mapper);
+
+	/**
+	 * Returns the result the function computes from the value, or these
+	 * errors.
+	 */
+	public <S> Result<S> flatMap(Function<R, Result<S>> mapper);
+
+	/**
+	 * Returns the combination of this value and the other one, or the errors
+	 * of both results.
+	 */
+	public default <S, T> Result<T> zip(
+		Result<S> other, BiFunction<R, S, T> combiner) {
+
+		List<String> errors = getErrors();
+		List<String> otherErrors = other.getErrors();
+
+		if (errors.isEmpty() && otherErrors.isEmpty()) {
+			return new CorrectResult<>(combiner.apply(get(), other.get()));
+		}
+
+		ErrorResult<T> errorResult = new ErrorResult<>();
+
+		errorResult.addErrors(errors);
+		errorResult.addErrors(otherErrors);
+
+		return errorResult;
+	}
+
+	/**
+	 * Consumes the stream and returns the list of its values, in stream
+	 * order, or the errors of all the results that have any. Values are not
+	 * collected anymore once an error is found.
+	 */
+	public static <R> Result<List<R>> sequence(Stream<Result<R>> results) {
+		List<R> values = new ArrayList<>();
+		ErrorResult<List<R>> errorResult = null;
+
+		Iterator<Result<R>> iterator = results.iterator();
+
+		while (iterator.hasNext()) {
+			Result<R> result = iterator.next();
+
+			List<String> errors = result.getErrors();
+
+			if (!errors.isEmpty()) {
+				if (errorResult == null) {
+					errorResult = new ErrorResult<>();
+
+					values = null;
+				}
+
+				errorResult.addErrors(errors);
+			}
+			else if (values != null) {
+				values.add(result.get());
+			}
+		}
+
+		if (errorResult != null) {
+			return errorResult;
+		}
+
+		return new CorrectResult<>(values);
+	}
+
 }
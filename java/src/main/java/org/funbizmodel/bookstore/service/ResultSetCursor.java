@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The result set of a query together with the statement and the pooled
+ * connection behind it, which are closed with it. Kept apart from the
+ * spliterators reading it, so that a {@link CursorTracker} can close it
+ * once they are garbage collected.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class ResultSetCursor implements CursorTracker.Cursor {
+
+	private volatile boolean _closed;
+	private final Connection _conn;
+	private final PreparedStatement _preparedStatement;
+	private final ResultSet _resultSet;
+
+	public ResultSetCursor(
+		Connection conn, PreparedStatement preparedStatement,
+		ResultSet resultSet) {
+
+		_conn = conn;
+		_preparedStatement = preparedStatement;
+		_resultSet = resultSet;
+	}
+
+	public ResultSet getResultSet() {
+		return _resultSet;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return _closed;
+	}
+
+	/**
+	 * Closes the result set, the statement and the connection, in that
+	 * order, even if closing one of them fails.
+	 *
+	 * @throws RuntimeException wrapping the first failure, with the others
+	 *         added as suppressed
+	 */
+	@Override
+	public synchronized void close() {
+		if (_closed) {
+			return;
+		}
+
+		_closed = true;
+
+		SQLException sqlException = null;
+
+		try {
+			_resultSet.close();
+		}
+		catch (SQLException sqle) {
+			sqlException = sqle;
+		}
+
+		try {
+			_preparedStatement.close();
+		}
+		catch (SQLException sqle) {
+			sqlException = _addSuppressed(sqlException, sqle);
+		}
+
+		try {
+			_conn.close();
+		}
+		catch (SQLException sqle) {
+			sqlException = _addSuppressed(sqlException, sqle);
+		}
+
+		if (sqlException != null) {
+			throw new RuntimeException(sqlException);
+		}
+	}
+
+	private static SQLException _addSuppressed(
+		SQLException sqlException, SQLException suppressed) {
+
+		if (sqlException == null) {
+			return suppressed;
+		}
+
+		sqlException.addSuppressed(suppressed);
+
+		return sqlException;
+	}
+
+}
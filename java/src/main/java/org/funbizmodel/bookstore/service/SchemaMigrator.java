@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Brings a database schema up to date by applying numbered migrations.
+ *
+ * <p>
+ * The versions already applied are recorded in a {@code SCHEMA_VERSION}
+ * table, so migrating again only runs the migrations added since, in
+ * version order. Migrations are never undone and must not drop data.
+ * </p>
+ *
+ * <p>
+ * H2 commits every DDL statement as it runs, so a migration is not atomic:
+ * if one of its statements fails, the ones before it stay applied and the
+ * version is not recorded. Statements must therefore be idempotent, as
+ * {@code CREATE ... IF NOT EXISTS} is, so that migrating again once the
+ * cause is fixed completes the migration. Checks added to a migration run
+ * before any of its statements, to fail early on data it cannot apply to.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class SchemaMigrator {
+
+	private static final int _MAX_REPORTED_VALUES = 10;
+
+	private final DataSource _dataSource;
+	private final Map<Integer, Migration> _migrations = new TreeMap<>();
+
+	public SchemaMigrator(DataSource dataSource) {
+		_dataSource = dataSource;
+	}
+
+	/**
+	 * Adds the migration to the given version, made of the statements run
+	 * in order.
+	 */
+	public void addMigration(
+		int version, String description, String... statements) {
+
+		if (version < 1) {
+			throw new IllegalArgumentException(
+				"Invalid schema version " + version);
+		}
+
+		if (_migrations.containsKey(version)) {
+			throw new IllegalArgumentException(
+				"Duplicated schema version " + version);
+		}
+
+		_migrations.put(version, new Migration(description, statements));
+	}
+
+	/**
+	 * Makes the migration to the given version fail before running any of
+	 * its statements if the query returns rows. The failure reports the
+	 * message along with the first column of the first rows.
+	 */
+	public void addCheck(int version, String query, String message) {
+		Migration migration = _migrations.get(version);
+
+		if (migration == null) {
+			throw new IllegalArgumentException(
+				"Unknown schema version " + version);
+		}
+
+		migration._checks.add(new String[] {query, message});
+	}
+
+	/**
+	 * Applies every pending migration and returns the resulting version.
+	 */
+	public int migrate() throws SQLException {
+		return migrate(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Applies the pending migrations up to the given version and returns the
+	 * resulting version.
+	 */
+	public int migrate(int targetVersion) throws SQLException {
+		try (Connection conn = _dataSource.getConnection()) {
+			try (Statement statement = conn.createStatement()) {
+				statement.execute(
+					"CREATE TABLE IF NOT EXISTS SCHEMA_VERSION(" +
+						"version int primary key, description varchar, " +
+							"installed timestamp)");
+			}
+
+			int version = _getVersion(conn);
+
+			for (Map.Entry<Integer, Migration> entry :
+					_migrations.entrySet()) {
+
+				int migrationVersion = entry.getKey();
+
+				if ((migrationVersion <= version) ||
+					(migrationVersion > targetVersion)) {
+
+					continue;
+				}
+
+				_apply(conn, migrationVersion, entry.getValue());
+
+				version = migrationVersion;
+			}
+
+			return version;
+		}
+	}
+
+	/**
+	 * Returns the version of the schema, zero if no migration was applied.
+	 */
+	public int getVersion() throws SQLException {
+		try (Connection conn = _dataSource.getConnection();
+			 ResultSet resultSet = conn.getMetaData().getTables(
+				 null, null, "SCHEMA_VERSION", null)) {
+
+			if (!resultSet.next()) {
+				return 0;
+			}
+
+			return _getVersion(conn);
+		}
+	}
+
+	private void _apply(Connection conn, int version, Migration migration)
+		throws SQLException {
+
+		for (String[] check : migration._checks) {
+			_check(conn, version, check[0], check[1]);
+		}
+
+		boolean autoCommit = conn.getAutoCommit();
+
+		conn.setAutoCommit(false);
+
+		try {
+			try (Statement statement = conn.createStatement()) {
+				for (String sql : migration._statements) {
+					statement.execute(sql);
+				}
+			}
+
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					"INSERT INTO SCHEMA_VERSION (version, description, " +
+						"installed) values (?, ?, CURRENT_TIMESTAMP())")) {
+
+				preparedStatement.setInt(1, version);
+				preparedStatement.setString(2, migration._description);
+
+				preparedStatement.executeUpdate();
+			}
+
+			conn.commit();
+		}
+		catch (SQLException | RuntimeException e) {
+			conn.rollback();
+
+			throw e;
+		}
+		finally {
+			conn.setAutoCommit(autoCommit);
+		}
+	}
+
+	private void _check(
+			Connection conn, int version, String query, String message)
+		throws SQLException {
+
+		try (Statement statement = conn.createStatement();
+			 ResultSet resultSet = statement.executeQuery(query)) {
+
+			List<String> values = new ArrayList<>();
+
+			while ((values.size() < _MAX_REPORTED_VALUES) &&
+				   resultSet.next()) {
+
+				values.add(resultSet.getString(1));
+			}
+
+			if (!values.isEmpty()) {
+				throw new SQLException(
+					"Unable to migrate to schema version " + version + ": " +
+						message + " " + values);
+			}
+		}
+	}
+
+	private int _getVersion(Connection conn) throws SQLException {
+		try (Statement statement = conn.createStatement();
+			 ResultSet resultSet = statement.executeQuery(
+				 "SELECT max(version) FROM SCHEMA_VERSION")) {
+
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+
+	private static class Migration {
+
+		private final List<String[]> _checks = new ArrayList<>();
+		private final String _description;
+		private final String[] _statements;
+
+		public Migration(String description, String[] statements) {
+			_description = description;
+			_statements = statements;
+		}
+
+	}
+
+}
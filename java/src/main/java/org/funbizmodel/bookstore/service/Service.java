@@ -14,7 +14,9 @@
 
 package org.funbizmodel.bookstore.service;
 
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
@@ -30,5 +32,33 @@ public interface Service<B, Q, C extends Context<Q, ?>> {
 
 	C withId(String id);
 
+	/**
+	 * Looks the entity up and maps it on the given executor, including the
+	 * queries {@link #withId(String)} itself may run.
+	 */
+	default <R> AsyncResult<R> withIdAsync(
+		String id, Function<Q, R> mapper, Executor executor) {
+
+		return AsyncResult.supplyAsync(
+			() -> {
+				C context = withId(id);
+
+				if (context == null) {
+					ErrorResult<R> errorResult = new ErrorResult<>();
+
+					errorResult.addError("No entity with id " + id);
+
+					return errorResult;
+				}
+
+				return context.map(mapper);
+			},
+			executor);
+	}
+
+	default <R> AsyncResult<R> withIdAsync(String id, Function<Q, R> mapper) {
+		return withIdAsync(id, mapper, AsyncResult.defaultExecutor());
+	}
+
 	Stream<C> all();
 }
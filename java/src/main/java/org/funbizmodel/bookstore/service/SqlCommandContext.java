@@ -1,5 +1,5 @@
 /**
- * Copyright (c) 2000-2013 Liferay, Inc. All rights reserved.
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
  *
  * This library is free software; you can redistribute it and/or modify it under
  * the terms of the GNU Lesser General Public License as published by the Free
@@ -15,12 +15,23 @@
 package org.funbizmodel.bookstore.service;
 
 /**
+ * Collects the statements of a {@link SqlCommand}. Statements are SQL
+ * templates with {@code ?} placeholders and the parameters bound to them,
+ * in order, so values never become part of the SQL text.
+ *
  * @author Carlos Sierra Andrés
  */
 public interface SqlCommandContext
 	extends CommandContext {
 
-	public void addSql(String sql);
+	/**
+	 * Adds a statement that is restricted to the entity of the context with
+	 * a condition on its id.
+	 */
+	public void addSql(String template, Object... parameters);
 
-	public void addInsertSql(String string);
+	/**
+	 * Adds a statement that is run as is.
+	 */
+	public void addInsertSql(String template, Object... parameters);
 }
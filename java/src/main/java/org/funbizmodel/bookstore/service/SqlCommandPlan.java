@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The statements of a {@link SqlCommand}, ready to be run against any
+ * entity. Each statement is prepared by its template, so running the same
+ * command shape over many entities prepares, and lets the driver parse, a
+ * single SQL text; with a statement caching data source such as {@link
+ * PooledDataSource} the prepared statement itself is reused as well.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class SqlCommandPlan implements SqlCommandContext {
+
+	public static final String ID_CONDITION = " WHERE id = ?";
+
+	/**
+	 * The most ids a statement run over a set of entities binds at once.
+	 */
+	public static final int MAX_IDS_PER_STATEMENT = 128;
+
+	private static final String[] _IDS_CONDITIONS = _idsConditions();
+
+	private final List<PlannedStatement> _statements = new ArrayList<>();
+
+	public static SqlCommandPlan compile(SqlCommand command) {
+		SqlCommandPlan sqlCommandPlan = new SqlCommandPlan();
+
+		command.accept(sqlCommandPlan);
+
+		return sqlCommandPlan;
+	}
+
+	@Override
+	public void addSql(String template, Object... parameters) {
+		_statements.add(new PlannedStatement(template, parameters, true));
+	}
+
+	@Override
+	public void addInsertSql(String template, Object... parameters) {
+		_statements.add(new PlannedStatement(template, parameters, false));
+	}
+
+	/**
+	 * Runs the statements in the order they were added. Statements restricted
+	 * to the entity get its id bound after their own parameters.
+	 */
+	public void execute(Connection conn, long id) throws SQLException {
+		for (PlannedStatement plannedStatement : _statements) {
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					plannedStatement._singleSql)) {
+
+				int index = _bind(
+					preparedStatement, plannedStatement._parameters);
+
+				if (plannedStatement._restricted) {
+					preparedStatement.setLong(index, id);
+				}
+
+				preparedStatement.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Runs every statement for all the entities with the given ids at once.
+	 * Statements restricted to the entities get an {@code id IN (...)}
+	 * condition over up to {@link #MAX_IDS_PER_STATEMENT} ids. The list is
+	 * padded to a power of two by repeating the last id, so that only a
+	 * handful of SQL texts exist per statement. Statements that are not
+	 * restricted run once.
+	 */
+	public void execute(Connection conn, long[] ids) throws SQLException {
+		for (PlannedStatement plannedStatement : _statements) {
+			if (!plannedStatement._restricted) {
+				try (PreparedStatement preparedStatement =
+						conn.prepareStatement(plannedStatement._singleSql)) {
+
+					_bind(preparedStatement, plannedStatement._parameters);
+
+					preparedStatement.executeUpdate();
+				}
+
+				continue;
+			}
+
+			for (int from = 0; from < ids.length;
+				 from += MAX_IDS_PER_STATEMENT) {
+
+				int count = Math.min(MAX_IDS_PER_STATEMENT, ids.length - from);
+
+				int bucket = 32 - Integer.numberOfLeadingZeros(count - 1);
+
+				try (PreparedStatement preparedStatement =
+						conn.prepareStatement(
+							plannedStatement._template +
+								_IDS_CONDITIONS[bucket])) {
+
+					int index = _bind(
+						preparedStatement, plannedStatement._parameters);
+
+					for (int i = 0; i < (1 << bucket); i++) {
+						preparedStatement.setLong(
+							index + i, ids[from + Math.min(i, count - 1)]);
+					}
+
+					preparedStatement.executeUpdate();
+				}
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return _statements.isEmpty();
+	}
+
+	/**
+	 * Adds the statements of the plan, in order, to the given context, e.g.
+	 * to learn what the command changes without accepting it again.
+	 */
+	public void replay(SqlCommandContext sqlCommandContext) {
+		for (PlannedStatement plannedStatement : _statements) {
+			if (plannedStatement._restricted) {
+				sqlCommandContext.addSql(
+					plannedStatement._template, plannedStatement._parameters);
+			}
+			else {
+				sqlCommandContext.addInsertSql(
+					plannedStatement._template, plannedStatement._parameters);
+			}
+		}
+	}
+
+	private static String[] _idsConditions() {
+		int buckets = 32 - Integer.numberOfLeadingZeros(
+			MAX_IDS_PER_STATEMENT - 1);
+
+		String[] idsConditions = new String[buckets + 1];
+
+		for (int bucket = 0; bucket <= buckets; bucket++) {
+			StringBuilder sb = new StringBuilder(" WHERE id IN (?");
+
+			for (int i = 1; i < (1 << bucket); i++) {
+				sb.append(", ?");
+			}
+
+			sb.append(")");
+
+			idsConditions[bucket] = sb.toString();
+		}
+
+		return idsConditions;
+	}
+
+	private static int _bind(
+			PreparedStatement preparedStatement, Object[] parameters)
+		throws SQLException {
+
+		int index = 1;
+
+		for (Object parameter : parameters) {
+			preparedStatement.setObject(index++, parameter);
+		}
+
+		return index;
+	}
+
+	private static class PlannedStatement {
+
+		private final String _template;
+		private final String _singleSql;
+		private final Object[] _parameters;
+		private final boolean _restricted;
+
+		public PlannedStatement(
+			String template, Object[] parameters, boolean restricted) {
+
+			_template = template;
+			_singleSql = restricted ? template + ID_CONDITION : template;
+			_parameters = parameters;
+			_restricted = restricted;
+		}
+
+	}
+
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The prepared statements of one physical connection, keyed by their SQL
+ * text and preparation options and evicted in least recently used order.
+ *
+ * <p>
+ * A statement is checked out of the cache while in use, so preparing the
+ * same SQL again before closing the first one, as nested streams over the
+ * same query do, gets a fresh statement instead of clobbering the open
+ * result set. Closing the handed statement closes the result sets obtained
+ * from it and puts it back in the cache.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class StatementCache {
+
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private static final Logger _log = Logger.getLogger(
+		StatementCache.class.getName());
+
+	private final Connection _connection;
+	private final int _maxSize;
+	private final List<StatementListener> _statementListeners;
+	private final Map<List<Object>, PreparedStatement> _idle;
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+	private final AtomicLong _evictions = new AtomicLong();
+
+	public StatementCache(Connection connection, int maxSize) {
+		this(connection, maxSize, Collections.emptyList());
+	}
+
+	/**
+	 * @param statementListeners notified after every execution of a handed
+	 *        statement; the list is read on each execution, so listeners
+	 *        added to it later are notified too
+	 */
+	public StatementCache(
+		Connection connection, int maxSize,
+		List<StatementListener> statementListeners) {
+
+		_connection = connection;
+		_maxSize = maxSize;
+		_statementListeners = statementListeners;
+		_idle = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns a cached statement for the arguments of one of the {@code
+	 * prepareStatement} methods of {@link Connection}, preparing it with
+	 * that method on a miss.
+	 */
+	public synchronized PreparedStatement prepareStatement(
+			Method method, Object[] args)
+		throws SQLException {
+
+		List<Object> key = Arrays.asList(args);
+
+		PreparedStatement preparedStatement = _idle.remove(key);
+
+		if ((preparedStatement != null) && !preparedStatement.isClosed()) {
+			_hits.incrementAndGet();
+		}
+		else {
+			_misses.incrementAndGet();
+
+			try {
+				preparedStatement = (PreparedStatement)method.invoke(
+					_connection, args);
+			}
+			catch (IllegalAccessException e) {
+				throw new SQLException(e);
+			}
+			catch (InvocationTargetException e) {
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException)e.getCause();
+				}
+
+				throw new SQLException(e.getCause());
+			}
+		}
+
+		return (PreparedStatement)Proxy.newProxyInstance(
+			PreparedStatement.class.getClassLoader(),
+			new Class<?>[] {PreparedStatement.class},
+			new CachedStatement(key, preparedStatement));
+	}
+
+	public Connection getConnection() {
+		return _connection;
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	public long getEvictions() {
+		return _evictions.get();
+	}
+
+	public synchronized int size() {
+		return _idle.size();
+	}
+
+	/**
+	 * Closes the idle statements. Statements still checked out are closed
+	 * when given back.
+	 */
+	public synchronized void clear() {
+		Iterator<PreparedStatement> iterator = _idle.values().iterator();
+
+		while (iterator.hasNext()) {
+			_closeQuietly(iterator.next());
+
+			iterator.remove();
+		}
+	}
+
+	private synchronized void _release(
+			List<Object> key, PreparedStatement preparedStatement)
+		throws SQLException {
+
+		if (_connection.isClosed() || _idle.containsKey(key)) {
+			preparedStatement.close();
+
+			return;
+		}
+
+		preparedStatement.clearParameters();
+		preparedStatement.clearBatch();
+
+		_idle.put(key, preparedStatement);
+
+		if (_idle.size() > _maxSize) {
+			Iterator<PreparedStatement> iterator = _idle.values().iterator();
+
+			_closeQuietly(iterator.next());
+
+			iterator.remove();
+
+			_evictions.incrementAndGet();
+		}
+	}
+
+	private static void _closeQuietly(AutoCloseable autoCloseable) {
+		try {
+			autoCloseable.close();
+		}
+		catch (Exception e) {
+			_log.log(Level.WARNING, "Unable to close " + autoCloseable, e);
+		}
+	}
+
+	private class CachedStatement implements InvocationHandler {
+
+		private final List<Object> _key;
+		private final PreparedStatement _preparedStatement;
+		private final List<ResultSet> _resultSets = new ArrayList<>(1);
+		private boolean _closed;
+
+		public CachedStatement(
+			List<Object> key, PreparedStatement preparedStatement) {
+
+			_key = key;
+			_preparedStatement = preparedStatement;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+
+			String name = method.getName();
+
+			if (method.getDeclaringClass() == Object.class) {
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+
+				return "Cached " + _preparedStatement;
+			}
+
+			if (name.equals("close")) {
+				if (!_closed) {
+					_closed = true;
+
+					for (ResultSet resultSet : _resultSets) {
+						resultSet.close();
+					}
+
+					_release(_key, _preparedStatement);
+				}
+
+				return null;
+			}
+
+			if (name.equals("isClosed")) {
+				return _closed;
+			}
+
+			if (_closed) {
+				throw new SQLException("Statement was returned to the cache");
+			}
+
+			Object result;
+
+			if (_statementListeners.isEmpty() || !name.startsWith("execute")) {
+				try {
+					result = method.invoke(_preparedStatement, args);
+				}
+				catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+			else {
+				result = _invokeExecute(method, args);
+			}
+
+			if (result instanceof ResultSet) {
+				_resultSets.add((ResultSet)result);
+			}
+
+			return result;
+		}
+
+		private Object _invokeExecute(Method method, Object[] args)
+			throws Throwable {
+
+			long start = System.nanoTime();
+
+			Object result;
+
+			try {
+				result = method.invoke(_preparedStatement, args);
+			}
+			catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+
+				try {
+					_statementExecuted(System.nanoTime() - start, true);
+				}
+				catch (RuntimeException re) {
+					cause.addSuppressed(re);
+				}
+
+				throw cause;
+			}
+
+			_statementExecuted(System.nanoTime() - start, false);
+
+			return result;
+		}
+
+		/**
+		 * Notifies every listener, and only then throws what the first one
+		 * that failed threw, so that a listener failing fast, such as a
+		 * {@link QueryBudget}, does not keep the rest from seeing the
+		 * statement.
+		 */
+		private void _statementExecuted(long elapsedNanos, boolean failed) {
+			RuntimeException exception = null;
+
+			for (StatementListener statementListener : _statementListeners) {
+				try {
+					statementListener.statementExecuted(
+						(String)_key.get(0), elapsedNanos, failed);
+				}
+				catch (RuntimeException re) {
+					if (exception == null) {
+						exception = re;
+					}
+					else {
+						exception.addSuppressed(re);
+					}
+				}
+			}
+
+			if (exception != null) {
+				throw exception;
+			}
+		}
+
+	}
+
+}
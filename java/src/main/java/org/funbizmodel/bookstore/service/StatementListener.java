@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+/**
+ * Notified of every statement a {@link PooledDataSource} runs through its
+ * statement caches.
+ *
+ * @author Carlos Sierra Andrés
+ */
+public interface StatementListener {
+
+	/**
+	 * Called on the executing thread once the statement has run.
+	 *
+	 * @param sql the SQL text the statement was prepared with
+	 * @param elapsedNanos how long the execution took
+	 * @param failed whether the execution threw
+	 */
+	public void statementExecuted(String sql, long elapsedNanos, boolean failed);
+
+}
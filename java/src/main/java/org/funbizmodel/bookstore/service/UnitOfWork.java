@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs work against the services in a single transaction, committed once at
+ * the end.
+ *
+ * <p>
+ * The unit of work borrows a connection from the pool for the whole work and
+ * turns auto commit off. As the pool hands the same connection to every
+ * borrower on the calling thread, all the creations, links and commands
+ * issued by the work, in the order the services issue them, end up in that
+ * transaction. Work handed to other threads, such as {@link
+ * ReadOnlyContext#mapAsync(java.util.function.Function)}, is not part of it.
+ * </p>
+ *
+ * <p>
+ * The work fails by throwing, which {@link Result#get()} does for results
+ * with errors. A failed work is rolled back, the given entity caches and
+ * other {@link Invalidatable}s are cleared, as they may hold rows the work
+ * read or wrote, and the failure is returned as an {@link ErrorResult}.
+ * Whatever the work throws, errors included, rolls it back; errors are
+ * rethrown once the transaction is rolled back. What the work leaves for
+ * {@link #afterCommit(Runnable)}, such as the change events of its writes,
+ * only runs if it commits, once its connection is back in the pool, and
+ * what it leaves for {@link #afterRollback(Runnable)}, such as forgetting
+ * the ids of the rows it created, only if it rolls back.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class UnitOfWork {
+
+	private static final ThreadLocal<List<Runnable>> _afterCommitActions =
+		new ThreadLocal<>();
+	private static final ThreadLocal<List<Runnable>> _afterRollbackActions =
+		new ThreadLocal<>();
+
+	private final PooledDataSource _dataSource;
+	private final Invalidatable[] _invalidatables;
+
+	public UnitOfWork(
+		PooledDataSource dataSource, Invalidatable... invalidatables) {
+
+		_dataSource = dataSource;
+		_invalidatables = invalidatables;
+	}
+
+	/**
+	 * Runs the action once the unit of work running on the calling thread
+	 * commits and gives its connection back, or right away if there is
+	 * none. The actions of a unit of work that rolls back are dropped.
+	 */
+	public static void afterCommit(Runnable afterCommitAction) {
+		List<Runnable> afterCommitActions = _afterCommitActions.get();
+
+		if (afterCommitActions == null) {
+			afterCommitAction.run();
+		}
+		else {
+			afterCommitActions.add(afterCommitAction);
+		}
+	}
+
+	/**
+	 * Runs the action if the unit of work running on the calling thread
+	 * rolls back. Without a unit of work every statement commits on its own,
+	 * so the action is dropped.
+	 */
+	public static void afterRollback(Runnable afterRollbackAction) {
+		List<Runnable> afterRollbackActions = _afterRollbackActions.get();
+
+		if (afterRollbackActions != null) {
+			afterRollbackActions.add(afterRollbackAction);
+		}
+	}
+
+	/**
+	 * Runs the work in a transaction of its own, or as part of the unit of
+	 * work already running on the calling thread, in which case failures are
+	 * thrown so that the outer unit rolls back.
+	 */
+	public <R> Result<R> execute(Supplier<R> work) {
+		List<Runnable> afterCommitActions = new ArrayList<>();
+
+		Result<R> result;
+
+		try (Connection conn = _dataSource.getConnection()) {
+			if (!conn.getAutoCommit()) {
+				return new CorrectResult<>(work.get());
+			}
+
+			result = _execute(conn, work, afterCommitActions);
+		}
+		catch (SQLException e) {
+			ErrorResult<R> errorResult = new ErrorResult<>();
+
+			errorResult.addError(e.getMessage());
+
+			result = errorResult;
+		}
+
+		// The connection is back in the pool, so actions that query see the
+		// committed rows without holding the transaction's connection
+
+		for (Runnable afterCommitAction : afterCommitActions) {
+			afterCommitAction.run();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Runs the work in a transaction on the connection, adding the actions
+	 * to run after it commits to the given list only if it does.
+	 */
+	private <R> Result<R> _execute(
+			Connection conn, Supplier<R> work,
+			List<Runnable> committedActions)
+		throws SQLException {
+
+		conn.setAutoCommit(false);
+
+		List<Runnable> afterCommitActions = new ArrayList<>();
+		List<Runnable> afterRollbackActions = new ArrayList<>();
+
+		_afterCommitActions.set(afterCommitActions);
+		_afterRollbackActions.set(afterRollbackActions);
+
+		R result;
+
+		try {
+			result = work.get();
+
+			conn.commit();
+
+			committedActions.addAll(afterCommitActions);
+		}
+		catch (Throwable t) {
+			_afterCommitActions.remove();
+			_afterRollbackActions.remove();
+
+			try {
+				conn.rollback();
+			}
+			finally {
+				for (Invalidatable invalidatable : _invalidatables) {
+					invalidatable.invalidateAll();
+				}
+
+				for (Runnable afterRollbackAction : afterRollbackActions) {
+					afterRollbackAction.run();
+				}
+			}
+
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+
+			ErrorResult<R> errorResult = new ErrorResult<>();
+
+			errorResult.addError(String.valueOf(t.getMessage()));
+
+			return errorResult;
+		}
+		finally {
+			_afterCommitActions.remove();
+			_afterRollbackActions.remove();
+
+			conn.setAutoCommit(true);
+		}
+
+		return new CorrectResult<>(result);
+	}
+
+}
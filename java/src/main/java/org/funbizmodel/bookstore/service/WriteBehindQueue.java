@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A bounded queue of writes that a background thread, the flusher, writes
+ * in batches, so that the callers queuing them do not wait for the
+ * database.
+ *
+ * <p>
+ * The flusher takes whatever is queued, up to the maximum batch size,
+ * groups the writes by {@link PendingWrite.Batcher}, so that e.g. all the
+ * authors and all the books of the batch are inserted with a multi-row
+ * insert each, and runs the whole batch as a {@link UnitOfWork}. Writes
+ * queued while a batch is being written make the next one, so batches grow
+ * with the load and a lone write is written right away. Callers queuing
+ * writes block while the queue is full.
+ * </p>
+ *
+ * <p>
+ * A batch rolled back is retried one write at a time, so that a failing
+ * write only fails its own callers. {@link #await(PendingWrite)} blocks
+ * until the write is committed, or fails if it was rolled back on its own
+ * as well. Writes that the flusher itself waits for while writing a batch,
+ * e.g. the pending authors of a book, are written on the spot as part of
+ * that batch.
+ * </p>
+ *
+ * @author Carlos Sierra Andrés
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+	private static final PendingWrite.Batcher<PendingWrite> _NO_OP =
+		pendingWrites -> {
+		};
+
+	private static final PendingWrite _CLOSE = new PendingWrite(_NO_OP);
+
+	private List<PendingWrite> _batch;
+	private boolean _closed;
+	private final Thread _flusher;
+	private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+	private final int _maxBatchSize;
+	private volatile MetricsRegistry _metricsRegistry;
+	private final Deque<PendingWrite> _overflow = new ArrayDeque<>();
+	private final BlockingQueue<PendingWrite> _queue;
+	private final UnitOfWork _unitOfWork;
+
+	public WriteBehindQueue(UnitOfWork unitOfWork) {
+		this(unitOfWork, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public WriteBehindQueue(
+		UnitOfWork unitOfWork, int capacity, int maxBatchSize) {
+
+		if ((capacity < 1) || (maxBatchSize < 1)) {
+			throw new IllegalArgumentException(
+				"Capacity and batch size must be positive: " + capacity +
+					", " + maxBatchSize);
+		}
+
+		_unitOfWork = unitOfWork;
+		_maxBatchSize = maxBatchSize;
+		_queue = new ArrayBlockingQueue<>(capacity);
+
+		_flusher = new Thread(this::_run, "bookstore-write-behind");
+
+		_flusher.setDaemon(true);
+
+		_flusher.start();
+	}
+
+	/**
+	 * Records how long flushes take as {@code writeBehind.flush}, and how
+	 * long callers wait for their writes as {@code writeBehind.await}. The
+	 * batches and the writes flushed are counted as {@code
+	 * writeBehind.batches} and {@code writeBehind.writes}, their ratio being
+	 * the mean batch size, the writes retried after their batch was rolled
+	 * back are counted as {@code writeBehind.retries}, and the queue depth
+	 * is reported as the {@code writeBehind.queued} gauge.
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		if (metricsRegistry != null) {
+			metricsRegistry.gauge("writeBehind.queued", this::getQueueDepth);
+		}
+
+		_metricsRegistry = metricsRegistry;
+	}
+
+	/**
+	 * Queues the write, waiting for room if the queue is full. Writes queued
+	 * by the flusher, e.g. from the builders of the writes it is flushing,
+	 * are kept aside for its next batch instead, as it cannot wait for
+	 * itself to make room.
+	 *
+	 * @throws IllegalStateException if the queue is closed
+	 */
+	public void add(PendingWrite pendingWrite) {
+		if (Thread.currentThread() == _flusher) {
+			_overflow.add(pendingWrite);
+
+			return;
+		}
+
+		_lock.readLock().lock();
+
+		try {
+			if (_closed) {
+				throw new IllegalStateException("Write behind queue is closed");
+			}
+
+			_queue.put(pendingWrite);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException(e);
+		}
+		finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Blocks until the write is committed.
+	 *
+	 * @throws SQLException if the write was rolled back
+	 */
+	public void await(PendingWrite pendingWrite) throws SQLException {
+		if (Thread.currentThread() == _flusher) {
+			_writeNow(pendingWrite);
+
+			return;
+		}
+
+		MetricsRegistry metricsRegistry = _metricsRegistry;
+
+		if ((metricsRegistry == null) || pendingWrite.isDone()) {
+			pendingWrite.await();
+
+			return;
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			pendingWrite.await();
+		}
+		finally {
+			metricsRegistry.recordSince("writeBehind.await", start);
+		}
+	}
+
+	/**
+	 * Blocks until every write queued so far is committed or rolled back.
+	 */
+	public void flush() {
+		PendingWrite marker = new PendingWrite(_NO_OP);
+
+		add(marker);
+
+		try {
+			await(marker);
+		}
+		catch (SQLException e) {
+
+			// The failure belongs to the writes flushed along with the marker
+
+		}
+	}
+
+	/**
+	 * Returns how many writes are waiting for the flusher to take them.
+	 */
+	public int getQueueDepth() {
+		return _queue.size();
+	}
+
+	/**
+	 * Stops taking writes, and waits for the flusher to write the ones
+	 * already queued, unless called by the flusher itself.
+	 */
+	@Override
+	public void close() {
+		_lock.writeLock().lock();
+
+		try {
+			if (_closed) {
+				return;
+			}
+
+			_closed = true;
+		}
+		finally {
+			_lock.writeLock().unlock();
+		}
+
+		if (Thread.currentThread() == _flusher) {
+			_overflow.add(_CLOSE);
+
+			return;
+		}
+
+		boolean interrupted = false;
+
+		while (true) {
+			try {
+				_queue.put(_CLOSE);
+
+				_flusher.join();
+
+				break;
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void _run() {
+		boolean closing = false;
+
+		while (!closing || !_overflow.isEmpty() || !_queue.isEmpty()) {
+			List<PendingWrite> pendingWrites = new ArrayList<>();
+
+			while (!_overflow.isEmpty() &&
+				   (pendingWrites.size() < _maxBatchSize)) {
+
+				pendingWrites.add(_overflow.poll());
+			}
+
+			if (pendingWrites.isEmpty() && !closing) {
+				pendingWrites.add(_take());
+			}
+
+			_queue.drainTo(pendingWrites, _maxBatchSize - pendingWrites.size());
+
+			Iterator<PendingWrite> iterator = pendingWrites.iterator();
+
+			while (iterator.hasNext()) {
+				PendingWrite pendingWrite = iterator.next();
+
+				if (pendingWrite == _CLOSE) {
+					closing = true;
+
+					iterator.remove();
+				}
+				else if (pendingWrite.state != PendingWrite.QUEUED) {
+					iterator.remove();
+				}
+				else {
+					pendingWrite.state = PendingWrite.CLAIMED;
+				}
+			}
+
+			if (!pendingWrites.isEmpty()) {
+				_flush(pendingWrites);
+			}
+		}
+	}
+
+	private PendingWrite _take() {
+		while (true) {
+			try {
+				return _queue.take();
+			}
+			catch (InterruptedException e) {
+
+				// Only closing the queue stops the flusher
+
+			}
+		}
+	}
+
+	private void _flush(List<PendingWrite> pendingWrites) {
+		long start = System.nanoTime();
+
+		Result<Void> result = _execute(pendingWrites);
+
+		boolean rolledBack = !result.getErrors().isEmpty();
+
+		if (rolledBack && (pendingWrites.size() > 1)) {
+			_retry(pendingWrites);
+		}
+		else {
+			_done(pendingWrites, result);
+		}
+
+		MetricsRegistry metricsRegistry = _metricsRegistry;
+
+		if (metricsRegistry != null) {
+			metricsRegistry.recordSince("writeBehind.flush", start, result);
+			metricsRegistry.increment("writeBehind.batches");
+			metricsRegistry.counter("writeBehind.writes").add(
+				pendingWrites.size());
+
+			if (rolledBack && (pendingWrites.size() > 1)) {
+				metricsRegistry.counter("writeBehind.retries").add(
+					pendingWrites.size());
+			}
+		}
+	}
+
+	private Result<Void> _execute(List<PendingWrite> pendingWrites) {
+		_batch = pendingWrites;
+
+		try {
+			return _unitOfWork.execute(() -> _write(pendingWrites));
+		}
+		finally {
+			_batch = null;
+		}
+	}
+
+	private void _done(List<PendingWrite> pendingWrites, Result<Void> result) {
+		SQLException exception = null;
+
+		if (!result.getErrors().isEmpty()) {
+			exception = new SQLException(
+				"Write behind batch rolled back: " +
+					String.join(", ", result.getErrors()));
+		}
+
+		for (PendingWrite pendingWrite : pendingWrites) {
+			pendingWrite.done(exception);
+		}
+	}
+
+	/**
+	 * Writes each write of a batch that was rolled back in a unit of work of
+	 * its own. The writes are queued again first, so that those written on
+	 * the spot by others become part of their batches.
+	 */
+	private void _retry(List<PendingWrite> pendingWrites) {
+		for (PendingWrite pendingWrite : pendingWrites) {
+			pendingWrite.requeue();
+		}
+
+		for (PendingWrite pendingWrite : pendingWrites) {
+			if (pendingWrite.state != PendingWrite.QUEUED) {
+				continue;
+			}
+
+			List<PendingWrite> retriedWrites = new ArrayList<>();
+
+			pendingWrite.state = PendingWrite.CLAIMED;
+
+			retriedWrites.add(pendingWrite);
+
+			_done(retriedWrites, _execute(retriedWrites));
+		}
+	}
+
+	private Void _write(List<PendingWrite> pendingWrites) {
+		Map<PendingWrite.Batcher<?>, List<PendingWrite>> batches =
+			new LinkedHashMap<>();
+
+		for (PendingWrite pendingWrite : pendingWrites) {
+			batches.computeIfAbsent(
+				pendingWrite.getBatcher(), batcher -> new ArrayList<>()).add(
+					pendingWrite);
+		}
+
+		for (Map.Entry<PendingWrite.Batcher<?>, List<PendingWrite>> entry :
+				batches.entrySet()) {
+
+			List<PendingWrite> unwritten = new ArrayList<>();
+
+			for (PendingWrite pendingWrite : entry.getValue()) {
+				if (pendingWrite.state == PendingWrite.CLAIMED) {
+					pendingWrite.state = PendingWrite.WRITTEN;
+
+					unwritten.add(pendingWrite);
+				}
+			}
+
+			if (!unwritten.isEmpty()) {
+				try {
+					_batcher(entry.getKey()).write(unwritten);
+				}
+				catch (SQLException e) {
+					throw new RuntimeException(e.getMessage(), e);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Writes, on the flusher thread, a write that the batch being flushed
+	 * depends on, making it part of that batch.
+	 */
+	private void _writeNow(PendingWrite pendingWrite) throws SQLException {
+		if (pendingWrite.state == PendingWrite.DONE) {
+			pendingWrite.check();
+
+			return;
+		}
+
+		if (pendingWrite.state == PendingWrite.WRITTEN) {
+			return;
+		}
+
+		if (_batch == null) {
+			List<PendingWrite> pendingWrites = new ArrayList<>();
+
+			pendingWrite.state = PendingWrite.CLAIMED;
+
+			pendingWrites.add(pendingWrite);
+
+			_flush(pendingWrites);
+
+			pendingWrite.check();
+
+			return;
+		}
+
+		if (pendingWrite.state == PendingWrite.QUEUED) {
+			_batch.add(pendingWrite);
+		}
+
+		pendingWrite.state = PendingWrite.WRITTEN;
+
+		try {
+			_batcher(pendingWrite.getBatcher()).write(
+				Collections.singletonList(pendingWrite));
+		}
+		catch (SQLException e) {
+			pendingWrite.failed(e);
+
+			throw e;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static PendingWrite.Batcher<PendingWrite> _batcher(
+		PendingWrite.Batcher<?> batcher) {
+
+		return (PendingWrite.Batcher<PendingWrite>)batcher;
+	}
+
+}
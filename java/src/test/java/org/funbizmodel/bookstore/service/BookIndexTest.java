@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookIndex;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class BookIndexTest {
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private BookIndex _bookIndex;
+	private BookService _bookService;
+	private PooledDataSource _pooledDataSource;
+
+	@Before
+	public void setUp() throws SQLException {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL(
+			"jdbc:h2:mem:bookindex" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 2);
+
+		BookstoreSchema.migrate(_pooledDataSource);
+
+		_bookIndex = new BookIndex(_pooledDataSource);
+
+		_bookService = new BookService(_pooledDataSource);
+
+		_bookService.setBookIndex(_bookIndex);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testFindsBooksByIsbn() throws SQLException {
+		_execute(
+			"INSERT INTO BOOK (isbn, title) VALUES ('isbn1', 'Dune')");
+
+		_create("isbn2", "Emma");
+		_create("isbn3", "Ulysses");
+
+		assertEquals(
+			Arrays.asList("Ulysses", "Dune"),
+			_titlesOf("isbn3", "missing", "isbn1"));
+		assertEquals(
+			Collections.emptyList(), _titlesOf("missing", "isbn4"));
+		assertEquals(3, _bookIndex.size());
+	}
+
+	@Test
+	public void testFindsTitlesByPrefix() {
+		_create("isbn1", "Java Puzzlers");
+		_create("isbn2", "JavaScript");
+		_create("isbn3", "Java Concurrency");
+		_create("isbn4", "Effective Java");
+		_create("isbn5", "Jazz");
+		_create("isbn6", "Java Puzzlers");
+
+		assertEquals(
+			Arrays.asList("Java Concurrency", "Java Puzzlers", "JavaScript"),
+			_bookService.titlesStartingWith("Java", 10));
+		assertEquals(
+			Arrays.asList("Java Concurrency", "Java Puzzlers"),
+			_bookService.titlesStartingWith("Java", 2));
+		assertEquals(
+			Arrays.asList("Jazz"), _bookService.titlesStartingWith("Jaz", 10));
+		assertEquals(
+			Collections.emptyList(),
+			_bookService.titlesStartingWith("Kafka", 10));
+	}
+
+	@Test
+	public void testAddsTheBooksCreatedOnceLoaded() {
+		_create("isbn1", "Dune");
+
+		assertEquals(1, _bookIndex.size());
+
+		_create("isbn2", "Dune Messiah");
+
+		List<BookContext> bookContexts = _bookService.create(
+			bb -> bb.isbn("isbn3").title("Emma"),
+			bb -> bb.isbn("isbn4").title("Dracula")).collect(
+				Collectors.toList());
+
+		bookContexts.forEach(bc -> bc.map(BookQuerier::id).get());
+
+		assertEquals(4, _bookIndex.size());
+		assertEquals(
+			Arrays.asList("Dracula", "Dune", "Dune Messiah"),
+			_bookService.titlesStartingWith("D", 10));
+		assertEquals(Arrays.asList("Emma"), _titlesOf("isbn3"));
+	}
+
+	@Test
+	public void testReadsUpdatesAndDeletesOnceInvalidated()
+		throws SQLException {
+
+		long id1 = _create("isbn1", "Dune");
+		long id2 = _create("isbn2", "Emma");
+
+		assertEquals(2, _bookIndex.size());
+
+		_execute(
+			"UPDATE BOOK SET isbn='isbn3', title='Dune Messiah' WHERE id=" +
+				id1);
+		_execute("DELETE FROM BOOK WHERE id=" + id2);
+
+		assertEquals(2, _bookIndex.size());
+
+		_bookIndex.invalidateAll();
+
+		assertEquals(1, _bookIndex.size());
+		assertEquals(Collections.emptyList(), _titlesOf("isbn1", "isbn2"));
+		assertEquals(Arrays.asList("Dune Messiah"), _titlesOf("isbn3"));
+		assertEquals(
+			Arrays.asList("Dune Messiah"),
+			_bookService.titlesStartingWith("", 10));
+	}
+
+	@Test
+	public void testReadsTheChangesOfOtherNodesOnceFlushed()
+		throws SQLException {
+
+		long id = _create("isbn1", "Dune");
+
+		try (CoalescingInvalidator coalescingInvalidator =
+				new CoalescingInvalidator(
+					60000, CoalescingInvalidator.DEFAULT_MAX_IDS)) {
+
+			coalescingInvalidator.addInvalidatable(
+				BookService.ENTITY_NAME, _bookIndex);
+
+			_execute("UPDATE BOOK SET title='Emma' WHERE id=" + id);
+
+			coalescingInvalidator.changed(
+				new ChangeEvent(
+					BookService.ENTITY_NAME, id, ChangeEvent.Kind.UPDATED));
+
+			assertEquals(
+				Arrays.asList("Dune"),
+				_bookService.titlesStartingWith("Dune", 10));
+
+			coalescingInvalidator.flush();
+		}
+
+		assertEquals(Arrays.asList("Emma"), _titlesOf("isbn1"));
+		assertEquals(
+			Collections.emptyList(),
+			_bookService.titlesStartingWith("Dune", 10));
+	}
+
+	@Test
+	public void testForgetsTheBooksOfARolledBackUnitOfWork() {
+		_create("isbn1", "Dune");
+
+		UnitOfWork unitOfWork = new UnitOfWork(_pooledDataSource, _bookIndex);
+
+		Result<Object> result = unitOfWork.execute(
+			() -> {
+				_create("isbn2", "Dune Messiah");
+
+				throw new IllegalStateException("rolled back");
+			});
+
+		assertEquals(1, result.getErrors().size());
+		assertEquals(1, _bookIndex.size());
+		assertEquals(Collections.emptyList(), _titlesOf("isbn2"));
+		assertEquals(
+			Arrays.asList("Dune"), _bookService.titlesStartingWith("D", 10));
+	}
+
+	private long _create(String isbn, String title) {
+		BookContext bookContext = _bookService.create(
+			bb -> bb.isbn(isbn).title(title));
+
+		return bookContext.map(BookQuerier::id).get();
+	}
+
+	private void _execute(String sql) throws SQLException {
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			statement.executeUpdate(sql);
+		}
+	}
+
+	private List<String> _titlesOf(String... isbns) {
+		return _bookService.fromIsbns(isbns).map(
+			bc -> bc.map(BookQuerier::title).get()
+		).collect(
+			Collectors.toList());
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class BookRangeSpliteratorTest {
+
+	private static final int _BOOKS = 6000;
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private BookService _bookService;
+	private CursorTracker _cursorTracker;
+	private PooledDataSource _pooledDataSource;
+
+	@Before
+	public void setUp() throws SQLException {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL(
+			"jdbc:h2:mem:bookrange" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 8);
+
+		BookstoreSchema.migrate(_pooledDataSource);
+
+		_cursorTracker = new CursorTracker(false);
+
+		_bookService = new BookService(_pooledDataSource);
+
+		_bookService.setCursorTracker(_cursorTracker);
+		_bookService.setParallelScan(true);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testReadsEveryBookOnce() throws SQLException {
+		_insertBooks();
+
+		_execute("DELETE FROM BOOK WHERE MOD(id, 3) = 0");
+
+		List<Long> ids;
+
+		try (Stream<BookContext> stream = _bookService.all()) {
+			ids = stream.map(
+				bc -> bc.map(BookQuerier::id).get()
+			).collect(
+				Collectors.toList());
+		}
+
+		Collections.sort(ids);
+
+		assertEquals(_ids("SELECT id FROM BOOK ORDER BY id"), ids);
+		assertEquals(0, _cursorTracker.getOpenCount());
+	}
+
+	@Test
+	public void testReadsTheBooksOfAnAuthor() throws SQLException {
+		_insertBooks();
+
+		_execute("INSERT INTO AUTHOR (id, name) VALUES (1, 'author')");
+		_execute(
+			"INSERT INTO AUTHOR_BOOK (authorId, bookId) " +
+				"SELECT 1, id FROM BOOK WHERE MOD(id, 2) = 0");
+
+		AuthorService authorService = new AuthorService(_pooledDataSource);
+
+		List<Long> ids;
+
+		try (Stream<BookContext> stream = _bookService.fromAuthor(
+				authorService.withId("1"))) {
+
+			ids = stream.map(
+				bc -> bc.map(BookQuerier::id).get()
+			).collect(
+				Collectors.toList());
+		}
+
+		Collections.sort(ids);
+
+		assertEquals(_BOOKS / 2, ids.size());
+		assertEquals(
+			_ids("SELECT bookId FROM AUTHOR_BOOK ORDER BY bookId"), ids);
+	}
+
+	@Test
+	public void testSplitsHalveTheRangeAndItsSize() throws SQLException {
+		_insertBooks();
+
+		try (Stream<BookContext> stream = _bookService.all()) {
+			Spliterator<BookContext> spliterator = stream.spliterator();
+
+			assertEquals(_BOOKS, spliterator.estimateSize());
+			assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+
+			Spliterator<BookContext> prefix = spliterator.trySplit();
+
+			assertNotNull(prefix);
+			assertEquals(
+				_BOOKS, prefix.estimateSize() + spliterator.estimateSize());
+			assertTrue(prefix.estimateSize() >= (_BOOKS / 2));
+
+			List<Long> prefixIds = _ids(prefix);
+			List<Long> suffixIds = _ids(spliterator);
+
+			assertEquals(prefix.estimateSize(), prefixIds.size());
+			assertTrue(
+				prefixIds.get(prefixIds.size() - 1) < suffixIds.get(0));
+			assertEquals(_BOOKS, prefixIds.size() + suffixIds.size());
+		}
+	}
+
+	@Test
+	public void testClosingTheStreamClosesTheCursorOfEverySplit()
+		throws SQLException {
+
+		_insertBooks();
+
+		Stream<BookContext> stream = _bookService.all();
+
+		Spliterator<BookContext> spliterator = stream.spliterator();
+		Spliterator<BookContext> prefix = spliterator.trySplit();
+
+		assertEquals(0, _cursorTracker.getOpenCount());
+
+		prefix.tryAdvance(bc -> {});
+		spliterator.tryAdvance(bc -> {});
+
+		assertEquals(1, _cursorTracker.getOpenCount());
+
+		stream.close();
+
+		assertEquals(0, _cursorTracker.getOpenCount());
+		assertEquals(0, _pooledDataSource.getActiveCount());
+	}
+
+	@Test
+	public void testScansAnEmptyTable() {
+		try (Stream<BookContext> stream = _bookService.all()) {
+			assertEquals(0, stream.count());
+		}
+
+		assertEquals(0, _cursorTracker.getOpenCount());
+	}
+
+	private void _execute(String sql) throws SQLException {
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			statement.executeUpdate(sql);
+		}
+	}
+
+	private List<Long> _ids(Spliterator<BookContext> spliterator) {
+		List<Long> ids = new ArrayList<>();
+
+		spliterator.forEachRemaining(
+			bc -> ids.add(bc.map(BookQuerier::id).get()));
+
+		return ids;
+	}
+
+	private List<Long> _ids(String sql) throws SQLException {
+		List<Long> ids = new ArrayList<>();
+
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement();
+			 ResultSet resultSet = statement.executeQuery(sql)) {
+
+			while (resultSet.next()) {
+				ids.add(resultSet.getLong(1));
+			}
+		}
+
+		return ids;
+	}
+
+	private void _insertBooks() throws SQLException {
+		_execute(
+			"INSERT INTO BOOK (isbn, title) SELECT 'isbn' || X, " +
+				"'title' || X FROM SYSTEM_RANGE(1, " + _BOOKS + ")");
+	}
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class CoalescingInvalidatorTest {
+
+	private final RecordingEntityCache _authorCache =
+		new RecordingEntityCache();
+	private final AtomicInteger _authorInvalidations = new AtomicInteger();
+	private final RecordingEntityCache _bookCache = new RecordingEntityCache();
+	private CoalescingInvalidator _coalescingInvalidator;
+	private MetricsRegistry _metricsRegistry;
+
+	@Before
+	public void setUp() {
+		_metricsRegistry = new MetricsRegistry();
+	}
+
+	@After
+	public void tearDown() {
+		if (_coalescingInvalidator != null) {
+			_coalescingInvalidator.close();
+		}
+	}
+
+	@Test
+	public void testInvalidatesEachChangedIdOnce() {
+		_coalescingInvalidator = _coalescingInvalidator(60000, 10);
+
+		_changed("author", 1, ChangeEvent.Kind.UPDATED);
+		_changed("author", 2, ChangeEvent.Kind.LINKED);
+		_changed("author", 1, ChangeEvent.Kind.DELETED);
+		_changed("publisher", 1, ChangeEvent.Kind.UPDATED);
+
+		assertEquals(Collections.emptyList(), _authorCache._ids);
+
+		_coalescingInvalidator.flush();
+
+		List<Long> ids = new ArrayList<>(_authorCache._ids);
+
+		Collections.sort(ids);
+
+		assertEquals(Arrays.asList(1L, 2L), ids);
+		assertEquals(0, _authorCache._invalidateAlls.get());
+		assertEquals(1, _authorInvalidations.get());
+		assertEquals(Collections.emptyList(), _bookCache._ids);
+		assertEquals(4, _count("changes.received"));
+		assertEquals(3, _count("changes.invalidated"));
+
+		_coalescingInvalidator.flush();
+
+		assertEquals(2, _authorCache._ids.size());
+		assertEquals(1, _authorInvalidations.get());
+	}
+
+	@Test
+	public void testInvalidatesAllOnceAnEntityExceedsMaxIds() {
+		_coalescingInvalidator = _coalescingInvalidator(60000, 3);
+
+		for (long id = 1; id <= 5; id++) {
+			_changed("author", id, ChangeEvent.Kind.UPDATED);
+		}
+
+		_changed("book", 7, ChangeEvent.Kind.CREATED);
+
+		_coalescingInvalidator.flush();
+
+		assertEquals(Collections.emptyList(), _authorCache._ids);
+		assertEquals(1, _authorCache._invalidateAlls.get());
+		assertEquals(1, _authorInvalidations.get());
+		assertEquals(Arrays.asList(7L), _bookCache._ids);
+		assertEquals(0, _bookCache._invalidateAlls.get());
+		assertEquals(3, _count("changes.invalidated"));
+
+		_changed("author", 1, ChangeEvent.Kind.UPDATED);
+
+		_coalescingInvalidator.flush();
+
+		assertEquals(Arrays.asList(1L), _authorCache._ids);
+		assertEquals(1, _authorCache._invalidateAlls.get());
+	}
+
+	@Test
+	public void testFlushesOnceTheDelayElapses() throws Exception {
+		_coalescingInvalidator = _coalescingInvalidator(10, 10);
+
+		CountDownLatch countDownLatch = new CountDownLatch(1);
+
+		_coalescingInvalidator.addInvalidatable(
+			"book", countDownLatch::countDown);
+
+		_changed("book", 1, ChangeEvent.Kind.UPDATED);
+		_changed("book", 2, ChangeEvent.Kind.UPDATED);
+
+		assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+
+		List<Long> ids = new ArrayList<>(_bookCache._ids);
+
+		Collections.sort(ids);
+
+		assertEquals(Arrays.asList(1L, 2L), ids);
+	}
+
+	@Test
+	public void testCloseFlushesThenIgnoresLaterEvents() {
+		_coalescingInvalidator = _coalescingInvalidator(60000, 10);
+
+		_changed("author", 1, ChangeEvent.Kind.UPDATED);
+
+		_coalescingInvalidator.close();
+
+		assertEquals(Arrays.asList(1L), _authorCache._ids);
+		assertEquals(1, _authorInvalidations.get());
+
+		_changed("author", 2, ChangeEvent.Kind.UPDATED);
+
+		_coalescingInvalidator.flush();
+
+		assertEquals(Arrays.asList(1L), _authorCache._ids);
+		assertEquals(1, _authorInvalidations.get());
+	}
+
+	private void _changed(String entity, long id, ChangeEvent.Kind kind) {
+		_coalescingInvalidator.changed(new ChangeEvent(entity, id, kind));
+	}
+
+	private CoalescingInvalidator _coalescingInvalidator(
+		long delayMillis, int maxIds) {
+
+		CoalescingInvalidator coalescingInvalidator =
+			new CoalescingInvalidator(delayMillis, maxIds);
+
+		coalescingInvalidator.addEntityCache("author", _authorCache);
+		coalescingInvalidator.addInvalidatable(
+			"author", _authorInvalidations::incrementAndGet);
+		coalescingInvalidator.addEntityCache("book", _bookCache);
+		coalescingInvalidator.setMetricsRegistry(_metricsRegistry);
+
+		return coalescingInvalidator;
+	}
+
+	private long _count(String name) {
+		return _metricsRegistry.counter(name).sum();
+	}
+
+	private static class RecordingEntityCache extends EntityCache<String> {
+
+		private final List<Long> _ids = Collections.synchronizedList(
+			new ArrayList<>());
+		private final AtomicInteger _invalidateAlls = new AtomicInteger();
+
+		public RecordingEntityCache() {
+			super(100, 0, TimeUnit.SECONDS);
+		}
+
+		@Override
+		public void invalidate(long id) {
+			_ids.add(id);
+
+			super.invalidate(id);
+		}
+
+		@Override
+		public void invalidateAll() {
+			_invalidateAlls.incrementAndGet();
+
+			super.invalidateAll();
+		}
+
+	}
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.book.BookBuilder;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class CursorTrackerTest {
+
+	private static final int _BOOKS = 50;
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private static final Logger _logger = Logger.getLogger(
+		CursorTracker.class.getName());
+
+	private BookService _bookService;
+	private CursorTracker _cursorTracker;
+	private PooledDataSource _pooledDataSource;
+	private final List<LogRecord> _logRecords =
+		Collections.synchronizedList(new ArrayList<>());
+	private final Handler _handler = new Handler() {
+
+		@Override
+		public void publish(LogRecord logRecord) {
+			_logRecords.add(logRecord);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	};
+
+	@Before
+	public void setUp() throws SQLException {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL(
+			"jdbc:h2:mem:cursortracker" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 4);
+
+		_logger.addHandler(_handler);
+		_logger.setUseParentHandlers(false);
+
+		BookstoreSchema.migrate(_pooledDataSource);
+
+		_cursorTracker = new CursorTracker(true);
+
+		_bookService = new BookService(_pooledDataSource);
+
+		_bookService.setCursorTracker(_cursorTracker);
+
+		Stream<Consumer<BookBuilder>> consumers = IntStream.range(
+			0, _BOOKS
+		).mapToObj(
+			i -> bb -> bb.isbn("isbn" + i).title("title" + i));
+
+		_bookService.create(consumers).forEach(
+			bookContext -> bookContext.map(BookQuerier::id).get());
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		_logger.removeHandler(_handler);
+		_logger.setUseParentHandlers(true);
+
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testClosingTheStreamClosesTheCursor() {
+		try (Stream<BookContext> stream = _bookService.all()) {
+			stream.iterator().next();
+
+			assertEquals(1, _cursorTracker.getOpenCount());
+		}
+
+		assertEquals(0, _cursorTracker.getOpenCount());
+		assertEquals(0, _pooledDataSource.getActiveCount());
+	}
+
+	@Test
+	public void testExhaustingTheStreamClosesTheCursor() {
+		assertEquals(_BOOKS, _bookService.all().count());
+		assertEquals(0, _cursorTracker.getOpenCount());
+		assertEquals(0, _pooledDataSource.getActiveCount());
+	}
+
+	@Test
+	public void testIteratorOutlivingItsStreamKeepsTheCursor()
+		throws InterruptedException {
+
+		Iterator<BookContext> iterator = _bookService.all().iterator();
+
+		iterator.next();
+
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+
+			Thread.sleep(10);
+
+			_bookService.all().close();
+		}
+
+		assertEquals(0, _cursorTracker.getLeakCount());
+		assertTrue(_logRecords.isEmpty());
+
+		int count = 1;
+
+		while (iterator.hasNext()) {
+			iterator.next();
+
+			count++;
+		}
+
+		assertEquals(_BOOKS, count);
+		assertEquals(0, _cursorTracker.getOpenCount());
+	}
+
+	@Test
+	public void testDroppedIteratorIsReapedOnceCollected()
+		throws InterruptedException {
+
+		_dropPartiallyConsumedIterator();
+
+		for (int i = 0; (i < 100) && (_cursorTracker.reap() == 0); i++) {
+			System.gc();
+
+			Thread.sleep(10);
+		}
+
+		assertEquals(1, _cursorTracker.getLeakCount());
+		assertEquals(0, _cursorTracker.getOpenCount());
+		assertEquals(0, _pooledDataSource.getActiveCount());
+
+		assertEquals(1, _logRecords.size());
+
+		LogRecord logRecord = _logRecords.get(0);
+
+		assertEquals(Level.WARNING, logRecord.getLevel());
+		assertEquals(
+			"Closing a cursor whose stream was never closed",
+			logRecord.getMessage());
+		assertTrue(logRecord.getThrown() != null);
+	}
+
+	@Test
+	public void testReportsWhereOpenCursorsWereOpened() {
+		try (Stream<BookContext> stream = _bookService.all()) {
+			Iterator<BookContext> iterator = stream.iterator();
+
+			assertTrue(iterator.hasNext());
+			assertEquals(1, _cursorTracker.getOpenCursors().size());
+		}
+
+		assertTrue(_cursorTracker.getOpenCursors().isEmpty());
+		assertFalse(_cursorTracker.getLeakCount() > 0);
+	}
+
+	private void _dropPartiallyConsumedIterator() {
+		_bookService.all().iterator().next();
+	}
+
+}
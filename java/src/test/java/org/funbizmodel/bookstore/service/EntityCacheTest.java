@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class EntityCacheTest {
+
+	@Test
+	public void testEvictsTheLeastRecentlyUsedEntry() {
+		EntityCache<String> entityCache = new EntityCache<>(
+			EntityCache.SEGMENTS * 2, 0, TimeUnit.SECONDS);
+
+		long[] ids = _idsOfOneSegment(entityCache, 3);
+
+		_put(entityCache, ids[0], "first");
+		_put(entityCache, ids[1], "second");
+
+		assertEquals("first", entityCache.get(ids[0]));
+
+		_put(entityCache, ids[2], "third");
+
+		assertEquals("first", entityCache.get(ids[0]));
+		assertNull(entityCache.get(ids[1]));
+		assertEquals("third", entityCache.get(ids[2]));
+		assertEquals(1, entityCache.getEvictions());
+		assertEquals(2, entityCache.size());
+	}
+
+	@Test
+	public void testExpiresEntriesOlderThanTheTimeToLive() throws Exception {
+		EntityCache<String> entityCache = new EntityCache<>(
+			100, 1, TimeUnit.MILLISECONDS);
+
+		_put(entityCache, 1, "one");
+
+		Thread.sleep(5);
+
+		assertNull(entityCache.get(1));
+		assertEquals(1, entityCache.getExpirations());
+		assertEquals(0, entityCache.size());
+	}
+
+	@Test
+	public void testDropsPutsStampedBeforeAnInvalidation() {
+		EntityCache<String> entityCache = new EntityCache<>(
+			100, 0, TimeUnit.SECONDS);
+
+		long stamp = entityCache.stamp(1);
+
+		entityCache.invalidate(1);
+
+		assertFalse(entityCache.put(1, "stale", stamp));
+		assertNull(entityCache.get(1));
+
+		stamp = entityCache.stamp(1);
+
+		entityCache.invalidateAll();
+
+		assertFalse(entityCache.put(1, "stale", stamp));
+
+		assertTrue(entityCache.put(1, "fresh", entityCache.stamp(1)));
+		assertEquals("fresh", entityCache.get(1));
+	}
+
+	@Test
+	public void testReplacesTheEntryOfAnId() {
+		EntityCache<String> entityCache = new EntityCache<>(
+			100, 0, TimeUnit.SECONDS);
+
+		_put(entityCache, 1, "old");
+		_put(entityCache, 1, "new");
+
+		assertEquals("new", entityCache.get(1));
+		assertEquals(1, entityCache.size());
+
+		entityCache.invalidate(1);
+
+		assertNull(entityCache.get(1));
+		assertEquals(0, entityCache.size());
+	}
+
+	private static long[] _idsOfOneSegment(
+		EntityCache<String> entityCache, int count) {
+
+		// Ids share a segment when invalidating one moves the stamp of the
+		// other
+
+		long[] ids = new long[count];
+
+		ids[0] = 1;
+
+		int found = 1;
+
+		for (long id = 2; found < count; id++) {
+			long stamp = entityCache.stamp(id);
+
+			entityCache.invalidate(ids[0]);
+
+			if (entityCache.stamp(id) != stamp) {
+				ids[found++] = id;
+			}
+		}
+
+		return ids;
+	}
+
+	private static void _put(
+		EntityCache<String> entityCache, long id, String value) {
+
+		entityCache.put(id, value, entityCache.stamp(id));
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class LongHashMapTest {
+
+	@Test
+	public void testRemoveKeepsTheKeysProbedAfterItReachable() {
+		LongHashMap<String> longHashMap = new LongHashMap<>(8);
+
+		for (long key = -500; key < 500; key++) {
+			longHashMap.put(key, String.valueOf(key));
+		}
+
+		for (long key = -500; key < 500; key += 2) {
+			assertEquals(String.valueOf(key), longHashMap.remove(key));
+		}
+
+		assertEquals(500, longHashMap.size());
+
+		for (long key = -500; key < 500; key++) {
+			if ((key % 2) == 0) {
+				assertNull(longHashMap.get(key));
+			}
+			else {
+				assertEquals(String.valueOf(key), longHashMap.get(key));
+			}
+		}
+
+		assertNull(longHashMap.remove(0));
+		assertEquals(500, longHashMap.size());
+	}
+
+	@Test
+	public void testRandomOperationsMatchAHashMap() {
+		LongHashMap<Long> longHashMap = new LongHashMap<>();
+		Map<Long, Long> map = new HashMap<>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextInt(24);
+			long value = i;
+
+			if (random.nextBoolean()) {
+				assertEquals(map.put(key, value), longHashMap.put(key, value));
+			}
+			else {
+				assertEquals(map.remove(key), longHashMap.remove(key));
+			}
+
+			assertEquals(map.size(), longHashMap.size());
+
+			for (long otherKey = 0; otherKey < 24; otherKey++) {
+				assertEquals(map.get(otherKey), longHashMap.get(otherKey));
+			}
+		}
+
+		long[] keys = longHashMap.keys();
+
+		Arrays.sort(keys);
+
+		assertArrayEquals(
+			map.keySet().stream().mapToLong(Long::longValue).sorted().toArray(),
+			keys);
+	}
+
+	@Test
+	public void testClearRemovesEveryKey() {
+		LongHashMap<String> longHashMap = new LongHashMap<>();
+
+		for (long key = 0; key < 100; key++) {
+			longHashMap.put(key, String.valueOf(key));
+		}
+
+		longHashMap.clear();
+
+		assertEquals(0, longHashMap.size());
+		assertNull(longHashMap.get(1));
+		assertEquals(0, longHashMap.keys().length);
+
+		longHashMap.put(1, "one");
+
+		assertEquals("one", longHashMap.get(1));
+	}
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class MetricsRegistryTest {
+
+	@Test
+	public void testTimesStreamsUntilExhausted() {
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+		Stream<Integer> stream = MetricsRegistry.timeStream(
+			metricsRegistry, "stream", () -> Stream.of(1, 2, 3));
+
+		assertEquals(0, _count(metricsRegistry, "stream"));
+
+		stream.forEach(i -> _sleep(10));
+
+		assertEquals(1, _count(metricsRegistry, "stream"));
+		assertTrue(
+			metricsRegistry.latency("stream").snapshot().getMax() >=
+				TimeUnit.MILLISECONDS.toNanos(30));
+
+		stream.close();
+
+		assertEquals(1, _count(metricsRegistry, "stream"));
+	}
+
+	@Test
+	public void testTimesParallelStreamsOnce() {
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+		long sum = MetricsRegistry.timeStream(
+			metricsRegistry, "parallel",
+			() -> IntStream.range(0, 100000).boxed().parallel()).mapToLong(
+				i -> i).sum();
+
+		assertEquals(4999950000L, sum);
+		assertEquals(1, _count(metricsRegistry, "parallel"));
+	}
+
+	@Test
+	public void testTimesClosedStreams() {
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+		try (Stream<Integer> stream = MetricsRegistry.timeStream(
+				metricsRegistry, "closed", () -> Stream.of(1, 2, 3))) {
+
+			assertEquals(1, (int)stream.findFirst().get());
+			assertEquals(0, _count(metricsRegistry, "closed"));
+		}
+
+		assertEquals(1, _count(metricsRegistry, "closed"));
+	}
+
+	private static long _count(MetricsRegistry metricsRegistry, String name) {
+		return metricsRegistry.latency(name).snapshot().getCount();
+	}
+
+	private static void _sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
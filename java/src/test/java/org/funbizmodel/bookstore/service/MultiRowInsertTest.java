@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.author.AuthorContext;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class MultiRowInsertTest {
+
+	private static final int _BATCHES = 20;
+
+	private static final int _THREADS = 8;
+
+	@Test
+	public void testIdsMatchTheRowsOfConcurrentInserts() throws Exception {
+		String url = "jdbc:h2:mem:multirow;DB_CLOSE_DELAY=-1";
+
+		try (Connection conn = DriverManager.getConnection(url)) {
+			conn.createStatement().execute(
+				"CREATE TABLE BOOK(id long primary key auto_increment, " +
+					"isbn varchar, title varchar)");
+
+			MultiRowInsert multiRowInsert = new MultiRowInsert(
+				100, "BOOK", "isbn", "title");
+
+			ExecutorService executorService = Executors.newFixedThreadPool(
+				_THREADS);
+
+			List<Future<?>> futures = new ArrayList<>();
+
+			for (int i = 0; i < _THREADS; i++) {
+				String prefix = "thread" + i + "-";
+
+				futures.add(
+					executorService.submit(
+						() -> {
+							_insertAndCheck(url, multiRowInsert, prefix);
+
+							return null;
+						}));
+			}
+
+			try {
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+			finally {
+				executorService.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testIdsComeFromTheSequence() throws Exception {
+		try (Connection conn = DriverManager.getConnection(
+				"jdbc:h2:mem:sequence")) {
+
+			conn.createStatement().execute(
+				"CREATE TABLE AUTHOR(id long primary key auto_increment, " +
+					"name varchar)");
+
+			// Ids that are not consecutive, as those of concurrent inserts
+
+			try (ResultSet resultSet = conn.createStatement().executeQuery(
+					"SELECT SEQUENCE_NAME FROM INFORMATION_SCHEMA.COLUMNS " +
+						"WHERE TABLE_NAME = 'AUTHOR'")) {
+
+				resultSet.next();
+
+				conn.createStatement().execute(
+					"ALTER SEQUENCE " + resultSet.getString(1) +
+						" INCREMENT BY 3");
+			}
+
+			MultiRowInsert multiRowInsert = new MultiRowInsert(
+				2, "AUTHOR", "name");
+
+			List<Object[]> rows = new ArrayList<>();
+
+			for (int i = 0; i < 5; i++) {
+				rows.add(new Object[] {"author" + i});
+			}
+
+			long[] ids = multiRowInsert.execute(conn, rows);
+
+			try (PreparedStatement preparedStatement = conn.prepareStatement(
+					"SELECT name FROM AUTHOR WHERE id = ?")) {
+
+				for (int i = 0; i < ids.length; i++) {
+					preparedStatement.setLong(1, ids[i]);
+
+					try (ResultSet resultSet =
+							preparedStatement.executeQuery()) {
+
+						assertTrue(resultSet.next());
+						assertEquals(rows.get(i)[0], resultSet.getString(1));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBatchInsertsNothingIfAnAuthorFailsToResolve()
+		throws Exception {
+
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL("jdbc:h2:mem:multirowbatch;DB_CLOSE_DELAY=-1");
+
+		BookstoreSchema.migrate(dataSource);
+
+		AuthorContext failingAuthorContext = new AuthorContext() {
+
+			@Override
+			public <R> Result<R> map(Function<AuthorQuerier, R> mapper) {
+				ErrorResult<R> errorResult = new ErrorResult<>();
+
+				errorResult.addError("No such author");
+
+				return errorResult;
+			}
+
+			@Override
+			public AuthorContext execute(SqlCommand command) {
+				return this;
+			}
+
+		};
+
+		List<BookContext> bookContexts = new BookService(dataSource).create(
+			bb -> bb.isbn("isbn1").title("title1"),
+			bb -> bb.isbn("isbn2").title("title2").addAuthors(
+				Stream.of(failingAuthorContext)),
+			bb -> bb.isbn("isbn3").title("title3")
+		).collect(Collectors.toList());
+
+		for (BookContext bookContext : bookContexts) {
+			Result<Long> result = bookContext.map(BookQuerier::id);
+
+			assertEquals(1, result.getErrors().size());
+			assertTrue(result.getErrors().get(0).contains("No such author"));
+		}
+
+		try (Connection conn = dataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "SELECT COUNT(*) FROM BOOK");
+			 ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			resultSet.next();
+
+			assertEquals(0, resultSet.getInt(1));
+		}
+	}
+
+	private static void _insertAndCheck(
+			String url, MultiRowInsert multiRowInsert, String prefix)
+		throws SQLException {
+
+		try (Connection conn = DriverManager.getConnection(url);
+			 PreparedStatement preparedStatement = conn.prepareStatement(
+				 "SELECT isbn FROM BOOK WHERE id = ?")) {
+
+			for (int i = 0; i < _BATCHES; i++) {
+				List<Object[]> rows = new ArrayList<>();
+
+				for (int j = 0; j < 250; j++) {
+					rows.add(new Object[] {prefix + i + "-" + j, "title"});
+				}
+
+				long[] ids = multiRowInsert.execute(conn, rows);
+
+				for (int j = 0; j < ids.length; j++) {
+					preparedStatement.setLong(1, ids[j]);
+
+					try (ResultSet resultSet =
+							preparedStatement.executeQuery()) {
+
+						assertTrue(resultSet.next());
+						assertEquals(rows.get(j)[0], resultSet.getString(1));
+					}
+				}
+			}
+		}
+	}
+}
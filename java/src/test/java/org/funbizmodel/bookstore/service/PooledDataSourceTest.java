@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class PooledDataSourceTest {
+
+	private static final int _ITERATIONS = 200;
+
+	private static final int _THREADS = 8;
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private RecordingDataSource _dataSource;
+	private ExecutorService _executorService;
+
+	@Before
+	public void setUp() {
+		_dataSource = new RecordingDataSource();
+
+		_dataSource.setURL(
+			"jdbc:h2:mem:pool" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_executorService = Executors.newFixedThreadPool(_THREADS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_executorService.shutdownNow();
+
+		_executorService.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testBorrowsAreBoundToTheThread() throws Exception {
+		PooledDataSource pooledDataSource = new PooledDataSource(
+			_dataSource, 2);
+
+		try (Connection conn = pooledDataSource.getConnection();
+			 Connection nested = pooledDataSource.getConnection()) {
+
+			assertSame(conn, nested);
+			assertEquals(1, pooledDataSource.getActiveCount());
+
+			Connection other = _executorService.submit(
+				() -> {
+					try (Connection connection =
+							pooledDataSource.getConnection()) {
+
+						return connection;
+					}
+				}).get();
+
+			assertNotSame(conn, other);
+		}
+
+		assertEquals(0, pooledDataSource.getActiveCount());
+		assertEquals(2, _dataSource._connections.size());
+	}
+
+	@Test
+	public void testConnectionIsReturnedByTheOutermostBorrower()
+		throws Exception {
+
+		PooledDataSource pooledDataSource = new PooledDataSource(
+			_dataSource, 1);
+
+		Connection conn = pooledDataSource.getConnection();
+		Connection nested = pooledDataSource.getConnection();
+
+		nested.close();
+
+		assertFalse(conn.isClosed());
+		assertEquals(1, pooledDataSource.getActiveCount());
+
+		conn.createStatement().close();
+
+		conn.close();
+
+		assertTrue(conn.isClosed());
+		assertEquals(0, pooledDataSource.getActiveCount());
+
+		try {
+			conn.createStatement();
+
+			fail();
+		}
+		catch (SQLException sqle) {
+		}
+
+		try (Connection again = pooledDataSource.getConnection()) {
+			assertNotSame(conn, again);
+			assertFalse(again.isClosed());
+		}
+
+		assertEquals(1, _dataSource._connections.size());
+	}
+
+	@Test
+	public void testTimesOutWhenThePoolIsExhausted() throws Exception {
+		PooledDataSource pooledDataSource = new PooledDataSource(
+			_dataSource, 1, 100, StatementCache.DEFAULT_MAX_SIZE);
+
+		try (Connection conn = pooledDataSource.getConnection()) {
+			Future<?> future = _executorService.submit(
+				() -> {
+					try (Connection connection =
+							pooledDataSource.getConnection()) {
+
+						fail();
+					}
+
+					return null;
+				});
+
+			try {
+				future.get();
+
+				fail();
+			}
+			catch (ExecutionException ee) {
+				assertTrue(ee.getCause() instanceof SQLException);
+			}
+
+			assertEquals(1, pooledDataSource.getActiveCount());
+		}
+
+		assertEquals(0, pooledDataSource.getActiveCount());
+	}
+
+	@Test
+	public void testBorrowedConnectionsAreClosedWhenReturnedAfterClose()
+		throws Exception {
+
+		PooledDataSource pooledDataSource = new PooledDataSource(
+			_dataSource, 2);
+
+		Connection idle = pooledDataSource.getConnection();
+		Connection borrowed = _executorService.submit(
+			() -> pooledDataSource.getConnection()).get();
+
+		idle.close();
+
+		pooledDataSource.close();
+
+		assertTrue(_dataSource._connections.get(0).isClosed());
+		assertFalse(_dataSource._connections.get(1).isClosed());
+
+		borrowed.close();
+
+		assertTrue(_dataSource._connections.get(1).isClosed());
+		assertEquals(0, pooledDataSource.getActiveCount());
+	}
+
+	@Test
+	public void testConcurrentBorrowsNeverExceedThePool() throws Exception {
+		PooledDataSource pooledDataSource = new PooledDataSource(
+			_dataSource, _THREADS / 2);
+
+		AtomicInteger maxActive = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int i = 0; i < _THREADS; i++) {
+			futures.add(
+				_executorService.submit(
+					() -> {
+						start.await();
+
+						for (int j = 0; j < _ITERATIONS; j++) {
+							try (Connection conn =
+									pooledDataSource.getConnection();
+								 Connection nested =
+									pooledDataSource.getConnection()) {
+
+								assertSame(conn, nested);
+
+								maxActive.accumulateAndGet(
+									pooledDataSource.getActiveCount(),
+									Math::max);
+
+								conn.prepareStatement("SELECT 1").close();
+							}
+						}
+
+						return null;
+					}));
+		}
+
+		start.countDown();
+
+		for (Future<?> future : futures) {
+			future.get();
+		}
+
+		assertTrue(maxActive.get() <= (_THREADS / 2));
+		assertEquals(0, pooledDataSource.getActiveCount());
+		assertTrue(_dataSource._connections.size() <= (_THREADS / 2));
+	}
+
+	@Test
+	public void testCloseWhileConnectionsAreReturned() throws Exception {
+		for (int round = 0; round < 50; round++) {
+			PooledDataSource pooledDataSource = new PooledDataSource(
+				_dataSource, _THREADS);
+
+			CountDownLatch borrowed = new CountDownLatch(_THREADS);
+			CountDownLatch closed = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+
+			for (int i = 0; i < _THREADS; i++) {
+				futures.add(
+					_executorService.submit(
+						() -> {
+							Connection conn = pooledDataSource.getConnection();
+
+							borrowed.countDown();
+
+							closed.await();
+
+							conn.close();
+
+							return null;
+						}));
+			}
+
+			borrowed.await();
+
+			closed.countDown();
+
+			pooledDataSource.close();
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+
+			for (Connection connection : _dataSource._connections) {
+				assertTrue(connection.isClosed());
+			}
+		}
+	}
+
+	private static class RecordingDataSource extends JdbcDataSource {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient List<Connection> _connections =
+			new CopyOnWriteArrayList<>();
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			Connection connection = super.getConnection();
+
+			_connections.add(connection);
+
+			return connection;
+		}
+
+	}
+
+}
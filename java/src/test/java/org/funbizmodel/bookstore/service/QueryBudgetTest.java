@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class QueryBudgetTest {
+
+	private static final Logger _logger = Logger.getLogger(
+		QueryBudget.class.getName());
+
+	private MetricsRegistry _metricsRegistry;
+	private PooledDataSource _pooledDataSource;
+	private final List<LogRecord> _logRecords =
+		Collections.synchronizedList(new ArrayList<>());
+	private final Handler _handler = new Handler() {
+
+		@Override
+		public void publish(LogRecord logRecord) {
+			_logRecords.add(logRecord);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	};
+
+	@Before
+	public void setUp() {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL("jdbc:h2:mem:");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 1);
+		_metricsRegistry = new MetricsRegistry();
+
+		_logger.addHandler(_handler);
+		_logger.setUseParentHandlers(false);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		_logger.removeHandler(_handler);
+		_logger.setUseParentHandlers(true);
+
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testFailingFastStillNotifiesTheOtherListeners() {
+		QueryBudget queryBudget = new QueryBudget(
+			2, 10, QueryBudget.Mode.FAIL);
+
+		_pooledDataSource.addStatementListener(queryBudget);
+		_pooledDataSource.addStatementListener(_metricsRegistry);
+
+		try {
+			queryBudget.run(
+				() -> {
+					for (int i = 0; i < 3; i++) {
+						_query("SELECT " + i);
+					}
+
+					return null;
+				});
+
+			fail();
+		}
+		catch (QueryBudgetExceededException qbee) {
+			assertTrue(qbee.getMessage().contains("more than 2 queries"));
+		}
+
+		assertEquals(
+			3, _metricsRegistry.counter(MetricsRegistry.QUERIES).sum());
+	}
+
+	@Test
+	public void testLogsRepeatedQueries() {
+		QueryBudget queryBudget = new QueryBudget(
+			100, 2, QueryBudget.Mode.LOG);
+
+		_pooledDataSource.addStatementListener(queryBudget);
+
+		queryBudget.run(
+			() -> {
+				for (int i = 0; i < 4; i++) {
+					_query("SELECT " + i);
+				}
+
+				return null;
+			});
+
+		assertEquals(1, _logRecords.size());
+
+		LogRecord logRecord = _logRecords.get(0);
+
+		assertEquals(Level.WARNING, logRecord.getLevel());
+		assertTrue(
+			logRecord.getMessage().startsWith(
+				"Query repeated more than 2 times"));
+		assertTrue(
+			logRecord.getThrown() instanceof QueryBudgetExceededException);
+		assertEquals(
+			logRecord.getMessage(), logRecord.getThrown().getMessage());
+	}
+
+	private void _query(String sql) {
+		try (Connection conn = _pooledDataSource.getConnection();
+			 PreparedStatement preparedStatement = conn.prepareStatement(sql);
+			 ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			resultSet.next();
+		}
+		catch (SQLException sqle) {
+			throw new RuntimeException(sqle);
+		}
+	}
+
+}
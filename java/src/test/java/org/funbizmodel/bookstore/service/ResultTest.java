@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class ResultTest {
+
+	@Test
+	public void testMapsTheValueOfACorrectResult() {
+		Result<Integer> result = new CorrectResult<>(2).map(i -> i * 3);
+
+		assertEquals(Integer.valueOf(6), result.get());
+		assertTrue(result.getErrors().isEmpty());
+	}
+
+	@Test
+	public void testMapKeepsTheErrorsOfAnErrorResult() {
+		Result<Integer> errorResult = _errorResult("a");
+
+		Result<Integer> result = errorResult.map(_unreachable());
+
+		assertSame(errorResult, result);
+		assertEquals(Arrays.asList("a"), result.getErrors());
+	}
+
+	@Test
+	public void testFlatMapShortCircuitsOnTheFirstError() {
+		AtomicInteger calls = new AtomicInteger();
+
+		Result<Integer> result = new CorrectResult<>(1).flatMap(
+			i -> new CorrectResult<>(i + calls.incrementAndGet())
+		).<Integer>flatMap(
+			i -> _errorResult("after " + calls.incrementAndGet())
+		).flatMap(
+			i -> new CorrectResult<>(i + calls.incrementAndGet()));
+
+		assertEquals(Arrays.asList("after 2"), result.getErrors());
+		assertEquals(2, calls.get());
+		assertEquals(
+			Integer.valueOf(3),
+			new CorrectResult<>(1).flatMap(
+				i -> new CorrectResult<>(i + 2)).get());
+	}
+
+	@Test
+	public void testZipCombinesCorrectValues() {
+		Result<String> result = new CorrectResult<>(1).zip(
+			new CorrectResult<>("a"), (i, s) -> s + i);
+
+		assertEquals("a1", result.get());
+	}
+
+	@Test
+	public void testZipAccumulatesTheErrorsOfBothResults() {
+		Result<Integer> correctResult = new CorrectResult<>(1);
+		Result<Integer> errorResult = _errorResult("a");
+		Result<Integer> otherErrorResult = _errorResult("b", "c");
+
+		assertEquals(
+			Arrays.asList("a"),
+			correctResult.zip(errorResult, Integer::sum).getErrors());
+		assertEquals(
+			Arrays.asList("a"),
+			errorResult.zip(correctResult, Integer::sum).getErrors());
+		assertEquals(
+			Arrays.asList("a", "b", "c"),
+			errorResult.zip(otherErrorResult, Integer::sum).getErrors());
+		assertEquals(
+			Arrays.asList("b", "c", "a"),
+			otherErrorResult.zip(errorResult, Integer::sum).getErrors());
+	}
+
+	@Test
+	public void testSequenceCollectsTheValuesInStreamOrder() {
+		Result<List<Integer>> result = Result.sequence(
+			Stream.of(
+				new CorrectResult<>(3), new CorrectResult<>(1),
+				new CorrectResult<>(2)));
+
+		assertEquals(Arrays.asList(3, 1, 2), result.get());
+		assertEquals(
+			Collections.emptyList(),
+			Result.sequence(Stream.<Result<Integer>>empty()).get());
+	}
+
+	@Test
+	public void testSequenceAccumulatesTheErrorsOfAllResults() {
+		AtomicInteger consumed = new AtomicInteger();
+
+		Result<List<Integer>> result = Result.sequence(
+			Stream.<Result<Integer>>of(
+				new CorrectResult<>(1), _errorResult("a"),
+				new CorrectResult<>(2), _errorResult("b", "c")
+			).peek(r -> consumed.incrementAndGet()));
+
+		assertEquals(Arrays.asList("a", "b", "c"), result.getErrors());
+		assertEquals(4, consumed.get());
+	}
+
+	@Test
+	public void testErrorResultWithoutErrorsSharesTheEmptyList() {
+		ErrorResult<Integer> errorResult = new ErrorResult<>();
+
+		assertSame(Collections.emptyList(), errorResult.getErrors());
+
+		errorResult.addErrors(Collections.<String>emptyList());
+
+		assertSame(Collections.emptyList(), errorResult.getErrors());
+	}
+
+	@Test
+	public void testAsyncResultMapsAndFlatMapsTheCompletedValue() {
+		AsyncResult<String> asyncResult = AsyncResult.completed(
+			new CorrectResult<>(2)
+		).map(
+			i -> i * 3
+		).flatMap(
+			i -> new CorrectResult<>("v" + i));
+
+		assertEquals("v6", asyncResult.get());
+	}
+
+	@Test
+	public void testAsyncResultShortCircuitsOnErrors() {
+		AsyncResult<Integer> asyncResult = AsyncResult.completed(
+			new CorrectResult<>(2)
+		).<Integer>flatMap(
+			i -> _errorResult("a")
+		).<Integer>map(
+			_unreachable()
+		).flatMap(
+			i -> new CorrectResult<>(i));
+
+		assertEquals(Arrays.asList("a"), asyncResult.join().getErrors());
+	}
+
+	@Test
+	public void testAsyncResultTurnsExceptionsOfTheMapperIntoErrors() {
+		AsyncResult<Integer> asyncResult = AsyncResult.supplyAsync(
+			() -> new CorrectResult<>(2), AsyncResult.defaultExecutor()
+		).map(
+			i -> {
+				throw new IllegalStateException("failed " + i);
+			});
+
+		assertEquals(
+			Arrays.asList("failed 2"), asyncResult.join().getErrors());
+	}
+
+	private static <R> Result<R> _errorResult(String... errors) {
+		ErrorResult<R> errorResult = new ErrorResult<>();
+
+		errorResult.addErrors(Arrays.asList(errors));
+
+		return errorResult;
+	}
+
+	private static <R, S> Function<R, S> _unreachable() {
+		return r -> {
+			throw new AssertionError("Mapped " + r);
+		};
+	}
+
+}
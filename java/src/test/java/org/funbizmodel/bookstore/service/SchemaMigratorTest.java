@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class SchemaMigratorTest {
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private JdbcDataSource _dataSource;
+
+	@Before
+	public void setUp() {
+		_dataSource = new JdbcDataSource();
+
+		_dataSource.setURL(
+			"jdbc:h2:mem:migrator" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+	}
+
+	@Test
+	public void testMigratesOnlyThePendingVersions() throws SQLException {
+		SchemaMigrator schemaMigrator = BookstoreSchema.createSchemaMigrator(
+			_dataSource);
+
+		assertEquals(0, schemaMigrator.getVersion());
+		assertEquals(
+			BookstoreSchema.TABLES_VERSION,
+			schemaMigrator.migrate(BookstoreSchema.TABLES_VERSION));
+		assertEquals(
+			BookstoreSchema.INDEXES_VERSION, schemaMigrator.migrate());
+		assertEquals(
+			BookstoreSchema.INDEXES_VERSION, schemaMigrator.migrate());
+	}
+
+	@Test
+	public void testRefusesToMakeDuplicatedIsbnsUnique() throws SQLException {
+		SchemaMigrator schemaMigrator = BookstoreSchema.createSchemaMigrator(
+			_dataSource);
+
+		schemaMigrator.migrate(BookstoreSchema.TABLES_VERSION);
+
+		_execute(
+			"INSERT INTO BOOK (isbn, title) VALUES ('1234', 'one'), " +
+				"('1234', 'two'), ('5678', 'three')");
+
+		try {
+			schemaMigrator.migrate();
+
+			fail();
+		}
+		catch (SQLException sqle) {
+			assertTrue(sqle.getMessage(), sqle.getMessage().contains("1234"));
+		}
+
+		assertEquals(
+			BookstoreSchema.TABLES_VERSION, schemaMigrator.getVersion());
+
+		_execute("UPDATE BOOK SET isbn = '4321' WHERE title = 'two'");
+
+		assertEquals(
+			BookstoreSchema.INDEXES_VERSION, schemaMigrator.migrate());
+	}
+
+	@Test
+	public void testRerunsAMigrationThatFailedHalfway() throws SQLException {
+		SchemaMigrator schemaMigrator = new SchemaMigrator(_dataSource);
+
+		schemaMigrator.addMigration(
+			1, "Table and index",
+			"CREATE TABLE IF NOT EXISTS T(id int, name varchar)",
+			"CREATE UNIQUE INDEX IF NOT EXISTS T_NAME ON T(name)");
+
+		_execute("CREATE TABLE T(id int, name varchar)");
+		_execute("INSERT INTO T VALUES (1, 'a'), (2, 'a')");
+
+		try {
+			schemaMigrator.migrate();
+
+			fail();
+		}
+		catch (SQLException sqle) {
+		}
+
+		assertEquals(0, schemaMigrator.getVersion());
+
+		_execute("DELETE FROM T WHERE id = 2");
+
+		assertEquals(1, schemaMigrator.migrate());
+	}
+
+	private void _execute(String sql) throws SQLException {
+		try (Connection conn = _dataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			statement.execute(sql);
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.funbizmodel.bookstore.model.BookstoreSchema;
+import org.funbizmodel.bookstore.model.author.AuthorContext;
+import org.funbizmodel.bookstore.model.author.AuthorQuerier;
+import org.funbizmodel.bookstore.model.author.AuthorService;
+import org.funbizmodel.bookstore.model.book.BookContext;
+import org.funbizmodel.bookstore.model.book.BookQuerier;
+import org.funbizmodel.bookstore.model.book.BookService;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class UnitOfWorkTest {
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private BookService _bookService;
+	private PooledDataSource _pooledDataSource;
+	private UnitOfWork _unitOfWork;
+
+	@Before
+	public void setUp() throws SQLException {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL(
+			"jdbc:h2:mem:unitofwork" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 2);
+
+		BookstoreSchema.migrate(_pooledDataSource);
+
+		_bookService = new BookService(_pooledDataSource);
+		_unitOfWork = new UnitOfWork(_pooledDataSource);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testRollbackForgetsTheCreatedBook() throws SQLException {
+		BookContext bookContext = _bookService.create(
+			bb -> bb.isbn("isbn").title("title"));
+
+		Result<Object> result = _unitOfWork.execute(
+			() -> {
+				bookContext.map(BookQuerier::id).get();
+
+				throw new IllegalStateException("rolled back");
+			});
+
+		assertEquals(1, result.getErrors().size());
+		assertEquals(0, _countBooks());
+
+		long id = bookContext.map(BookQuerier::id).get();
+
+		assertEquals(1, _countBooks());
+		assertTrue(_bookExists(id));
+	}
+
+	@Test
+	public void testRollbackForgetsTheCreatedBatch() throws SQLException {
+		List<BookContext> bookContexts = _bookService.create(
+			bb -> bb.isbn("isbn1").title("title"),
+			bb -> bb.isbn("isbn2").title("title")).collect(
+				Collectors.toList());
+
+		_unitOfWork.execute(
+			() -> {
+				bookContexts.get(0).map(BookQuerier::id).get();
+
+				throw new IllegalStateException("rolled back");
+			});
+
+		assertEquals(0, _countBooks());
+
+		for (BookContext bookContext : bookContexts) {
+			assertTrue(_bookExists(bookContext.map(BookQuerier::id).get()));
+		}
+
+		assertEquals(2, _countBooks());
+	}
+
+	@Test
+	public void testFailedAuthorLinkRollsBackTheBook() throws SQLException {
+		AuthorContext authorContext = new AuthorService(
+			_pooledDataSource).create(ab -> ab.name("author"));
+
+		authorContext.map(AuthorQuerier::id).get();
+
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement()) {
+
+			statement.execute(
+				"ALTER TABLE AUTHOR_BOOK ADD CONSTRAINT NO_LINKS " +
+					"CHECK (authorId < 0)");
+		}
+
+		Result<Long> result = _unitOfWork.execute(
+			() -> _bookService.create(
+				bb -> bb.isbn("isbn").title("title").addAuthors(
+					Stream.of(authorContext))
+			).map(BookQuerier::id).get());
+
+		assertEquals(1, result.getErrors().size());
+		assertEquals(0, _countBooks());
+	}
+
+	@Test
+	public void testErrorsAreRolledBackAndRethrown() throws SQLException {
+		List<String> actions = new ArrayList<>();
+
+		try {
+			_unitOfWork.execute(
+				() -> {
+					UnitOfWork.afterCommit(() -> actions.add("commit"));
+					UnitOfWork.afterRollback(() -> actions.add("rollback"));
+
+					_bookService.create(
+						bb -> bb.isbn("isbn").title("title")).map(
+							BookQuerier::id).get();
+
+					throw new AssertionError("error");
+				});
+
+			fail();
+		}
+		catch (AssertionError ae) {
+			assertEquals("error", ae.getMessage());
+		}
+
+		assertEquals(0, _countBooks());
+		assertEquals(1, actions.size());
+		assertEquals("rollback", actions.get(0));
+		assertEquals(0, _pooledDataSource.getActiveCount());
+
+		try (Connection conn = _pooledDataSource.getConnection()) {
+			assertTrue(conn.getAutoCommit());
+		}
+	}
+
+	@Test
+	public void testAfterCommitActionsOnlyRunOnCommit() {
+		List<String> actions = new ArrayList<>();
+
+		_unitOfWork.execute(
+			() -> {
+				UnitOfWork.afterCommit(() -> actions.add("commit"));
+				UnitOfWork.afterRollback(() -> actions.add("rollback"));
+
+				assertTrue(actions.isEmpty());
+
+				return null;
+			});
+
+		assertEquals(1, actions.size());
+		assertEquals("commit", actions.get(0));
+
+		UnitOfWork.afterRollback(() -> actions.add("dropped"));
+
+		assertFalse(actions.contains("dropped"));
+	}
+
+	@Test
+	public void testAfterCommitActionsRunOnceTheConnectionIsReleased() {
+		List<Integer> activeCounts = new ArrayList<>();
+
+		_unitOfWork.execute(
+			() -> {
+				UnitOfWork.afterCommit(
+					() -> activeCounts.add(
+						_pooledDataSource.getActiveCount()));
+
+				return null;
+			});
+
+		assertEquals(1, activeCounts.size());
+		assertEquals(0, (int)activeCounts.get(0));
+	}
+
+	@Test
+	public void testCreationEvictsTheCachedBookAgainOnCommit() {
+		EntityCache<BookQuerier> entityCache = new EntityCache<>(
+			100, 0, TimeUnit.SECONDS);
+
+		_bookService.setEntityCache(entityCache);
+
+		List<Boolean> putsKept = new ArrayList<>();
+
+		long id = _unitOfWork.execute(
+			() -> {
+				BookQuerier bookQuerier = _bookService.create(
+					bb -> bb.isbn("isbn").title("title")
+				).map(bq -> bq).get();
+
+				long createdId = bookQuerier.id();
+
+				// A concurrent read caching the row before the commit
+
+				putsKept.add(
+					entityCache.put(
+						createdId, bookQuerier,
+						entityCache.stamp(createdId)));
+
+				return createdId;
+			}).get();
+
+		assertEquals(Collections.singletonList(true), putsKept);
+		assertNull(entityCache.get(id));
+	}
+
+	private boolean _bookExists(long id) throws SQLException {
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement();
+			 ResultSet resultSet = statement.executeQuery(
+				 "SELECT id FROM BOOK WHERE id = " + id)) {
+
+			return resultSet.next();
+		}
+	}
+
+	private int _countBooks() throws SQLException {
+		try (Connection conn = _pooledDataSource.getConnection();
+			 Statement statement = conn.createStatement();
+			 ResultSet resultSet = statement.executeQuery(
+				 "SELECT COUNT(*) FROM BOOK")) {
+
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+
+}
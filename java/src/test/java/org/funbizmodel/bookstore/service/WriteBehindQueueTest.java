@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2000-present Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package org.funbizmodel.bookstore.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Carlos Sierra Andrés
+ */
+public class WriteBehindQueueTest {
+
+	private static final AtomicInteger _counter = new AtomicInteger();
+
+	private PooledDataSource _pooledDataSource;
+	private UnitOfWork _unitOfWork;
+	private WriteBehindQueue _writeBehindQueue;
+
+	@Before
+	public void setUp() {
+		JdbcDataSource dataSource = new JdbcDataSource();
+
+		dataSource.setURL(
+			"jdbc:h2:mem:writebehind" + _counter.incrementAndGet() +
+				";DB_CLOSE_DELAY=-1");
+
+		_pooledDataSource = new PooledDataSource(dataSource, 2);
+		_unitOfWork = new UnitOfWork(_pooledDataSource);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		if (_writeBehindQueue != null) {
+			_writeBehindQueue.close();
+		}
+
+		_pooledDataSource.close();
+	}
+
+	@Test
+	public void testWritesAQueuedDependencyOnTheSpotOnce() throws Exception {
+		_writeBehindQueue = new WriteBehindQueue(_unitOfWork, 10, 1);
+
+		List<List<PendingWrite>> dependencyWrites =
+			Collections.synchronizedList(new ArrayList<>());
+
+		PendingWrite dependency = new PendingWrite(dependencyWrites::add);
+
+		List<Integer> states = new ArrayList<>();
+
+		PendingWrite pendingWrite = new PendingWrite(
+			pendingWrites -> {
+				states.add(dependency.state);
+
+				_writeBehindQueue.await(dependency);
+
+				states.add(dependency.state);
+			});
+
+		_writeBehindQueue.add(pendingWrite);
+		_writeBehindQueue.add(dependency);
+
+		_writeBehindQueue.await(pendingWrite);
+		_writeBehindQueue.await(dependency);
+
+		_writeBehindQueue.flush();
+
+		assertEquals(
+			Arrays.asList(PendingWrite.QUEUED, PendingWrite.WRITTEN), states);
+		assertEquals(
+			Collections.singletonList(Collections.singletonList(dependency)),
+			dependencyWrites);
+		assertEquals(PendingWrite.DONE, pendingWrite.state);
+		assertEquals(PendingWrite.DONE, dependency.state);
+	}
+
+	@Test
+	public void testWritesAClaimedDependencyOnTheSpotOnce() throws Exception {
+		_writeBehindQueue = new WriteBehindQueue(_unitOfWork);
+
+		CountDownLatch gate = _blockFlusher();
+
+		List<List<PendingWrite>> dependencyWrites =
+			Collections.synchronizedList(new ArrayList<>());
+
+		PendingWrite dependency = new PendingWrite(dependencyWrites::add);
+
+		List<Integer> states = new ArrayList<>();
+
+		PendingWrite pendingWrite = new PendingWrite(
+			pendingWrites -> {
+				states.add(dependency.state);
+
+				_writeBehindQueue.await(dependency);
+
+				states.add(dependency.state);
+			});
+
+		_writeBehindQueue.add(pendingWrite);
+		_writeBehindQueue.add(dependency);
+
+		gate.countDown();
+
+		_writeBehindQueue.await(pendingWrite);
+		_writeBehindQueue.await(dependency);
+
+		assertEquals(
+			Arrays.asList(PendingWrite.CLAIMED, PendingWrite.WRITTEN), states);
+		assertEquals(
+			Collections.singletonList(Collections.singletonList(dependency)),
+			dependencyWrites);
+		assertEquals(PendingWrite.DONE, dependency.state);
+	}
+
+	@Test
+	public void testRetriesTheWritesOfARolledBackBatchOneByOne()
+		throws Exception {
+
+		_writeBehindQueue = new WriteBehindQueue(_unitOfWork);
+
+		CountDownLatch gate = _blockFlusher();
+
+		List<List<PendingWrite>> writes = Collections.synchronizedList(
+			new ArrayList<>());
+
+		PendingWrite[] failing = new PendingWrite[1];
+
+		PendingWrite.Batcher<PendingWrite> batcher = pendingWrites -> {
+			writes.add(new ArrayList<>(pendingWrites));
+
+			if (pendingWrites.contains(failing[0])) {
+				throw new SQLException("Failing write");
+			}
+		};
+
+		PendingWrite first = new PendingWrite(batcher);
+
+		failing[0] = new PendingWrite(batcher);
+
+		PendingWrite last = new PendingWrite(batcher);
+
+		_writeBehindQueue.add(first);
+		_writeBehindQueue.add(failing[0]);
+		_writeBehindQueue.add(last);
+
+		gate.countDown();
+
+		_writeBehindQueue.await(first);
+		_writeBehindQueue.await(last);
+
+		try {
+			_writeBehindQueue.await(failing[0]);
+
+			fail();
+		}
+		catch (SQLException sqle) {
+			assertTrue(sqle.getMessage().contains("Failing write"));
+		}
+
+		assertEquals(
+			Arrays.asList(
+				Arrays.asList(first, failing[0], last),
+				Collections.singletonList(first),
+				Collections.singletonList(failing[0]),
+				Collections.singletonList(last)),
+			writes);
+	}
+
+	/**
+	 * Keeps the flusher busy until the returned latch is released, so that
+	 * the writes queued meanwhile make a single batch.
+	 */
+	private CountDownLatch _blockFlusher() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch gate = new CountDownLatch(1);
+
+		_writeBehindQueue.add(
+			new PendingWrite(
+				pendingWrites -> {
+					started.countDown();
+
+					try {
+						gate.await();
+					}
+					catch (InterruptedException ie) {
+						throw new SQLException(ie);
+					}
+				}));
+
+		started.await();
+
+		return gate;
+	}
+
+}